@@ -0,0 +1,117 @@
+/*
+ * Cryptonose
+ *
+ * Copyright © 2019-2022 Dawid Motyka
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package pl.dmotyka.cryptonoseengine;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// CryptonoseGenericEngine.requestAllPairsChanges() on engine started with FakeExchangeSpecs and initialized with random walk
+// tickers covering the longest period. Before every call tickers of updatedPairsPercent of pairs are sent to the engine
+// (outside of measured time), changes of other pairs are returned from cache. With 0 there are no new tickers between calls
+// and all PriceChanges are cached.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AllPairsChangesBenchmark {
+
+    @Param({"10", "300"})
+    public int numPairs;
+
+    // tickers per second of all pairs
+    @Param({"20"})
+    public int tradesPerSecond;
+
+    // comma separated time periods in seconds
+    @Param({"300,1800"})
+    public String periods;
+
+    // percent of pairs receiving a ticker before every call
+    @Param({"0", "10", "100"})
+    public int updatedPairsPercent;
+
+    private static final int NUM_CANDLES = 100;
+
+    private RandomWalkTickers randomWalkTickers;
+    private FakeExchangeSpecs exchangeSpecs;
+    private CryptonoseGenericEngine engine;
+    private PriceChangesBatch priceChangesBatch;
+    private int numUpdatedPairs;
+    // the first of pairs updated before the next call
+    private int nextUpdatedPairIndex = 0;
+
+    @Setup
+    public void setup() {
+        long[] timePeriods = RandomWalkTickers.parsePeriods(periods);
+        randomWalkTickers = new RandomWalkTickers(numPairs, tradesPerSecond, 1);
+        exchangeSpecs = new FakeExchangeSpecs(randomWalkTickers.getPairs());
+        engine = CryptonoseGenericEngine.withProvidedCurrencyPairs(exchangeSpecs, new EngineChangesReceiver() {
+            @Override
+            public void receiveChanges(List<PriceChanges> priceChangesList) {
+            }
+
+            @Override
+            public void receiveChanges(PriceChanges priceChanges) {
+            }
+        }, timePeriods, NUM_CANDLES, randomWalkTickers.getPairs());
+        engine.start();
+        long numTickers = Arrays.stream(timePeriods).max().getAsLong() * tradesPerSecond;
+        for (long i = 0; i < numTickers; i++)
+            exchangeSpecs.sendTicker(randomWalkTickers.next());
+        numUpdatedPairs = numPairs * updatedPairsPercent / 100;
+        priceChangesBatch = new PriceChangesBatch();
+    }
+
+    // consecutive pairs are updated before every call, so all pairs are updated in turn
+    @Setup(Level.Invocation)
+    public void sendTickers() {
+        for (int i = 0; i < numUpdatedPairs; i++) {
+            exchangeSpecs.sendTicker(randomWalkTickers.nextForPair(nextUpdatedPairIndex));
+            nextUpdatedPairIndex = (nextUpdatedPairIndex + 1) % numPairs;
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        engine.stop();
+    }
+
+    @Benchmark
+    public PriceChanges[] requestAllPairsChanges() {
+        return engine.requestAllPairsChanges();
+    }
+
+    // without creating PriceChanges
+    @Benchmark
+    public PriceChangesBatch requestAllPairsChangesBatch() {
+        return engine.requestAllPairsChanges(priceChangesBatch);
+    }
+}
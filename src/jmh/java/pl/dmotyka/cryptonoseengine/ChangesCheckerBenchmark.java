@@ -0,0 +1,82 @@
+/*
+ * Cryptonose
+ *
+ * Copyright © 2019-2022 Dawid Motyka
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package pl.dmotyka.cryptonoseengine;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Inserting tickers to CryptonoseEngineChangesChecker and checking changes, with tickers history covering the longest period.
+// Tickers are generated while benchmarking (one Ticker object per operation, as received from ticker provider).
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ChangesCheckerBenchmark {
+
+    @Param({"10", "300"})
+    public int numPairs;
+
+    // tickers per second of all pairs
+    @Param({"1", "20"})
+    public int tradesPerSecond;
+
+    // comma separated time periods in seconds
+    @Param({"300,1800"})
+    public String periods;
+
+    private RandomWalkTickers randomWalkTickers;
+    private CryptonoseEngineChangesChecker changesChecker;
+    private String[] pairs;
+    private int pairIndex = 0;
+
+    @Setup
+    public void setup() {
+        long[] timePeriods = RandomWalkTickers.parsePeriods(periods);
+        randomWalkTickers = new RandomWalkTickers(numPairs, tradesPerSecond, 1);
+        pairs = randomWalkTickers.getPairs();
+        changesChecker = new CryptonoseEngineChangesChecker(timePeriods);
+        randomWalkTickers.insertHistory(changesChecker, Arrays.stream(timePeriods).max().getAsLong());
+    }
+
+    @Benchmark
+    public void insertTicker() {
+        changesChecker.insertTicker(randomWalkTickers.next());
+    }
+
+    @Benchmark
+    public PriceChanges[] insertTickerAndCheckChanges() {
+        return changesChecker.checkChanges(randomWalkTickers.next());
+    }
+
+    // without inserting tickers
+    @Benchmark
+    public PriceChanges[] checkChanges() {
+        pairIndex = (pairIndex + 1) % pairs.length;
+        return changesChecker.checkChanges(pairs[pairIndex]);
+    }
+}
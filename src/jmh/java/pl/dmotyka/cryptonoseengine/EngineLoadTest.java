@@ -0,0 +1,275 @@
+/*
+ * Cryptonose
+ *
+ * Copyright © 2019-2022 Dawid Motyka
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package pl.dmotyka.cryptonoseengine;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import pl.dmotyka.exchangeutils.tickerprovider.Ticker;
+
+// End-to-end load test of CryptonoseGenericEngine without network, with exchange simulated by FakeExchangeSpecs: engine is
+// started with start() (getting pairs and chart data from the fake exchange), synthetic random walk tickers of numPairs pairs
+// are sent at tickersPerSecond (on one feed thread, as ticker provider does) by the fake ticker provider, up to
+// EngineChangesReceiver.
+//
+// Reports start time, sustained throughput and latency percentiles from sending the oldest not yet reported ticker of a pair
+// to receiving changes for the pair. Bursts multiply ticker rate for burstSeconds every burstEverySeconds. Connection of
+// ticker provider is lost for disconnectMillis every disconnectEverySeconds (tickers are skipped and the engine receives
+// connection states), time from restoring connection to receiving the first changes is reported as recovery time.
+// Engine is reconnected with reconnect() every reconnectEverySeconds (pairs and chart data are fetched again and a new ticker
+// provider is connected), reconnect time is reported. autoRefreshMinutes enables auto refresh of pairs data.
+//
+// Run with: mvn -P benchmarks test-compile exec:exec@load-test
+//  -Dloadtest.args="numPairs=300 tickersPerSecond=20000 ingestionThreads=4"
+// Arguments (name=value) and defaults are in DEFAULTS.
+public class EngineLoadTest {
+
+    private static final Map<String, String> DEFAULTS = Map.ofEntries(
+            Map.entry("numPairs", "100"),
+            Map.entry("tickersPerSecond", "1000"),
+            Map.entry("durationSeconds", "30"),
+            Map.entry("periods", "300,1800"),
+            Map.entry("numCandles", "100"),
+            Map.entry("burstEverySeconds", "0"),
+            Map.entry("burstSeconds", "1"),
+            Map.entry("burstMultiplier", "10"),
+            Map.entry("disconnectEverySeconds", "0"),
+            Map.entry("disconnectMillis", "1000"),
+            Map.entry("reconnectEverySeconds", "0"),
+            Map.entry("autoRefreshMinutes", "0"),
+            Map.entry("ingestionThreads", "0"),
+            Map.entry("checkChangesDelayMs", "0"),
+            Map.entry("dispatchThreads", "0"),
+            Map.entry("dispatchCapacity", "10000"),
+            Map.entry("dispatchOverflowPolicy", "BLOCK"));
+    private static final int MAX_LATENCIES = 5_000_000;
+
+    private final Map<String, String> args;
+    private final String[] pairs;
+    private final Map<String, Integer> pairIndexes = new HashMap<>();
+    // nano time of sending the oldest ticker of pair which changes weren't received yet, 0 if there isn't such ticker
+    private final AtomicLongArray pendingSinceNanos;
+    private final long[] latenciesNanos = new long[MAX_LATENCIES];
+    private final AtomicInteger numLatencies = new AtomicInteger();
+    private final AtomicLong numChangesLists = new AtomicLong();
+    private final AtomicLong numChanges = new AtomicLong();
+    // nano time of resuming after disconnect, 0 after receiving the first changes
+    private final AtomicLong resumedNanos = new AtomicLong();
+    private final List<Long> recoveryNanos = new CopyOnWriteArrayList<>();
+    private final List<Long> reconnectNanos = new CopyOnWriteArrayList<>();
+    private final RandomWalkTickers randomWalkTickers;
+    private final FakeExchangeSpecs exchangeSpecs;
+
+    private EngineLoadTest(Map<String, String> args) {
+        this.args = args;
+        randomWalkTickers = new RandomWalkTickers(intArg("numPairs"), intArg("tickersPerSecond"), 1);
+        pairs = randomWalkTickers.getPairs();
+        exchangeSpecs = new FakeExchangeSpecs(pairs);
+        for (int i = 0; i < pairs.length; i++)
+            pairIndexes.put(pairs[i], i);
+        pendingSinceNanos = new AtomicLongArray(pairs.length);
+    }
+
+    public static void main(String[] argsArray) throws InterruptedException {
+        Map<String, String> args = new HashMap<>(DEFAULTS);
+        for (String arg : argsArray) {
+            String[] nameValue = arg.split("=", 2);
+            if (nameValue.length != 2 || !DEFAULTS.containsKey(nameValue[0]))
+                throw new IllegalArgumentException("unknown argument: " + arg + ", available: " + DEFAULTS.keySet());
+            args.put(nameValue[0], nameValue[1]);
+        }
+        new EngineLoadTest(args).run();
+    }
+
+    private void run() throws InterruptedException {
+        long[] timePeriods = RandomWalkTickers.parsePeriods(args.get("periods"));
+        CryptonoseGenericEngine engine = CryptonoseGenericEngine.withProvidedCurrencyPairs(exchangeSpecs, new EngineChangesReceiver() {
+            @Override
+            public void receiveChanges(List<PriceChanges> priceChangesList) {
+                long nanos = System.nanoTime();
+                numChangesLists.incrementAndGet();
+                numChanges.addAndGet(priceChangesList.size());
+                Set<String> changesPairs = new HashSet<>();
+                for (PriceChanges priceChanges : priceChangesList) {
+                    if (changesPairs.add(priceChanges.getCurrencyPair()))
+                        pairChangesReceived(priceChanges.getCurrencyPair(), nanos);
+                }
+            }
+
+            @Override
+            public void receiveChanges(PriceChanges priceChanges) {
+                receiveChanges(List.of(priceChanges));
+            }
+        }, timePeriods, intArg("numCandles"), pairs);
+        if (intArg("ingestionThreads") > 0)
+            engine.setIngestionThreads(intArg("ingestionThreads"));
+        if (intArg("checkChangesDelayMs") > 0)
+            engine.setCheckChangesDelayMs(intArg("checkChangesDelayMs"));
+        if (intArg("dispatchThreads") > 0)
+            engine.setChangesDispatch(intArg("dispatchCapacity"),
+                    EngineChangesDispatcher.OverflowPolicy.valueOf(args.get("dispatchOverflowPolicy")),
+                    intArg("dispatchThreads"));
+        if (intArg("autoRefreshMinutes") > 0)
+            engine.autoRefreshPairData(intArg("autoRefreshMinutes"));
+        System.out.println("load test: " + new TreeMap<>(args));
+        long startNanos = System.nanoTime();
+        engine.start();
+        long startDurationNanos = System.nanoTime() - startNanos;
+        Thread reconnectThread = null;
+        if (intArg("reconnectEverySeconds") > 0) {
+            reconnectThread = new Thread(() -> reconnect(engine), "load-test-reconnect");
+            reconnectThread.setDaemon(true);
+            reconnectThread.start();
+        }
+        long sentTickers = feed();
+        if (reconnectThread != null) {
+            reconnectThread.interrupt();
+            reconnectThread.join();
+        }
+        // changes of the last tickers may be still delivered
+        Thread.sleep(Math.max(100, 2L * intArg("checkChangesDelayMs")));
+        long droppedChanges = engine.getDroppedChangesCount();
+        long coalescedChanges = engine.getCoalescedChangesCount();
+        engine.stop();
+        report(startDurationNanos, sentTickers, droppedChanges, coalescedChanges);
+    }
+
+    // reconnects engine every reconnectEverySeconds until interrupted
+    private void reconnect(CryptonoseGenericEngine engine) {
+        long reconnectEveryMillis = TimeUnit.SECONDS.toMillis(intArg("reconnectEverySeconds"));
+        while (true) {
+            try {
+                Thread.sleep(reconnectEveryMillis);
+            } catch (InterruptedException e) {
+                return;
+            }
+            long startNanos = System.nanoTime();
+            engine.reconnect();
+            reconnectNanos.add(System.nanoTime() - startNanos);
+        }
+    }
+
+    // sends tickers through fake ticker provider on calling thread, returns number of sent tickers
+    private long feed() {
+        int tickersPerSecond = intArg("tickersPerSecond");
+        long burstEveryNanos = TimeUnit.SECONDS.toNanos(intArg("burstEverySeconds"));
+        long burstNanos = TimeUnit.SECONDS.toNanos(intArg("burstSeconds"));
+        int burstMultiplier = intArg("burstMultiplier");
+        long disconnectEveryNanos = TimeUnit.SECONDS.toNanos(intArg("disconnectEverySeconds"));
+        long disconnectNanos = TimeUnit.MILLISECONDS.toNanos(intArg("disconnectMillis"));
+        long startNanos = System.nanoTime();
+        long endNanos = startNanos + TimeUnit.SECONDS.toNanos(intArg("durationSeconds"));
+        long nextTickerNanos = startNanos;
+        boolean disconnected = false;
+        long sentTickers = 0;
+        long nanos;
+        while ((nanos = System.nanoTime()) < endNanos) {
+            if (nanos < nextTickerNanos) {
+                LockSupport.parkNanos(nextTickerNanos - nanos);
+                continue;
+            }
+            long elapsedNanos = nanos - startNanos;
+            boolean burst = burstEveryNanos > 0 && elapsedNanos % burstEveryNanos >= burstEveryNanos - burstNanos;
+            nextTickerNanos += TimeUnit.SECONDS.toNanos(1) / (burst ? (long)tickersPerSecond * burstMultiplier : tickersPerSecond);
+            if (disconnectEveryNanos > 0 && elapsedNanos % disconnectEveryNanos >= disconnectEveryNanos - disconnectNanos) {
+                if (!disconnected) {
+                    disconnected = true;
+                    exchangeSpecs.connectionLost();
+                }
+            } else if (disconnected) {
+                disconnected = false;
+                exchangeSpecs.connectionRestored();
+                resumedNanos.set(System.nanoTime());
+            }
+            Ticker ticker = randomWalkTickers.next(System.currentTimeMillis() / 1000);
+            int pairIndex = pairIndexes.get(ticker.getPair());
+            long sendNanos = System.nanoTime();
+            boolean wasPending = pendingSinceNanos.compareAndSet(pairIndex, 0, sendNanos);
+            // skipped when ticker provider is disconnected
+            if (!exchangeSpecs.sendTicker(ticker)) {
+                if (wasPending)
+                    pendingSinceNanos.compareAndSet(pairIndex, sendNanos, 0);
+                continue;
+            }
+            sentTickers++;
+        }
+        return sentTickers;
+    }
+
+    private void pairChangesReceived(String pair, long nanos) {
+        Integer pairIndex = pairIndexes.get(pair);
+        if (pairIndex == null)
+            return;
+        long sentNanos = pendingSinceNanos.getAndSet(pairIndex, 0);
+        if (sentNanos != 0) {
+            int i = numLatencies.getAndIncrement();
+            if (i < MAX_LATENCIES)
+                latenciesNanos[i] = nanos - sentNanos;
+        }
+        long resumed = resumedNanos.get();
+        if (resumed != 0 && resumedNanos.compareAndSet(resumed, 0))
+            recoveryNanos.add(nanos - resumed);
+    }
+
+    private void report(long startDurationNanos, long sentTickers, long droppedChanges, long coalescedChanges) {
+        double durationSeconds = intArg("durationSeconds");
+        System.out.println(String.format("start (ms): %.1f", startDurationNanos / 1e6));
+        System.out.println(String.format("sent tickers: %d (%.0f/s)", sentTickers, sentTickers / durationSeconds));
+        System.out.println(String.format("received changes lists: %d (%.0f/s), changes: %d (%.0f/s)",
+                numChangesLists.get(), numChangesLists.get() / durationSeconds, numChanges.get(), numChanges.get() / durationSeconds));
+        System.out.println(String.format("dispatch dropped: %d, coalesced: %d", droppedChanges, coalescedChanges));
+        long[] latencies = Arrays.copyOf(latenciesNanos, Math.min(numLatencies.get(), MAX_LATENCIES));
+        Arrays.sort(latencies);
+        if (latencies.length > 0) {
+            System.out.println(String.format("latency (us) p50: %.1f, p90: %.1f, p99: %.1f, p99.9: %.1f, max: %.1f",
+                    percentileMicros(latencies, 0.5),
+                    percentileMicros(latencies, 0.9),
+                    percentileMicros(latencies, 0.99),
+                    percentileMicros(latencies, 0.999),
+                    latencies[latencies.length - 1] / 1000.0));
+        }
+        if (!recoveryNanos.isEmpty()) {
+            System.out.println(String.format("recovery after disconnect (us) avg: %.1f, max: %.1f (%d disconnects)",
+                    recoveryNanos.stream().mapToLong(Long::longValue).average().getAsDouble() / 1000,
+                    recoveryNanos.stream().mapToLong(Long::longValue).max().getAsLong() / 1000.0,
+                    recoveryNanos.size()));
+        }
+        if (!reconnectNanos.isEmpty()) {
+            System.out.println(String.format("reconnect (ms) avg: %.1f, max: %.1f (%d reconnects)",
+                    reconnectNanos.stream().mapToLong(Long::longValue).average().getAsDouble() / 1e6,
+                    reconnectNanos.stream().mapToLong(Long::longValue).max().getAsLong() / 1e6,
+                    reconnectNanos.size()));
+        }
+        System.out.println(String.format("chart data requests: %d", exchangeSpecs.getNumChartDataRequests()));
+    }
+
+    private static double percentileMicros(long[] sortedNanos, double percentile) {
+        return sortedNanos[(int)Math.min(sortedNanos.length - 1, Math.floor(percentile * sortedNanos.length))] / 1000.0;
+    }
+
+    private int intArg(String name) {
+        return Integer.parseInt(args.get(name));
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Cryptonose
+ *
+ * Copyright © 2019-2022 Dawid Motyka
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package pl.dmotyka.cryptonoseengine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import pl.dmotyka.exchangeutils.chartinfo.ChartCandle;
+import pl.dmotyka.exchangeutils.chartinfo.ChartTimePeriod;
+import pl.dmotyka.exchangeutils.chartinfo.ExchangeChartInfo;
+import pl.dmotyka.exchangeutils.exchangespecs.ExchangeSpecs;
+import pl.dmotyka.exchangeutils.pairdataprovider.PairDataProvider;
+import pl.dmotyka.exchangeutils.pairdataprovider.PairSelectionCriteria;
+import pl.dmotyka.exchangeutils.pairsymbolconverter.PairSymbolConverter;
+import pl.dmotyka.exchangeutils.tickerprovider.Ticker;
+import pl.dmotyka.exchangeutils.tickerprovider.TickerProvider;
+import pl.dmotyka.exchangeutils.tickerprovider.TickerProviderConnectionState;
+import pl.dmotyka.exchangeutils.tickerprovider.TickerProviderConnectionStateReceiver;
+import pl.dmotyka.exchangeutils.tickerprovider.TickerReceiver;
+
+// Exchange without network for load testing and benchmarks of the engine: all pairs are returned by pair data provider (also
+// for any selection criteria), chart data are random walk candles generated for requested range, ticker provider passes
+// tickers given to sendTicker() to the engine.
+// Connection loss is simulated with connectionLost() and connectionRestored(): ticker provider skips tickers and reports
+// connection state to the engine, as ticker provider of a real exchange does when connection is lost and it reconnects.
+class FakeExchangeSpecs extends ExchangeSpecs {
+
+    // standard deviation of relative price change in one second
+    private static final double VOLATILITY = 0.0005;
+
+    private final String[] pairs;
+    private final Random random = new Random(2);
+    private final AtomicLong numChartDataRequests = new AtomicLong();
+    // the last ticker provider created by the engine (a new one is created when connecting)
+    private volatile FakeTickerProvider tickerProvider = null;
+
+    FakeExchangeSpecs(String[] pairs) {
+        this.pairs = pairs;
+    }
+
+    // returns false if ticker wasn't passed to the engine (ticker provider is disconnected or wasn't created yet)
+    boolean sendTicker(Ticker ticker) {
+        FakeTickerProvider tickerProvider = this.tickerProvider;
+        return tickerProvider != null && tickerProvider.sendTicker(ticker);
+    }
+
+    void connectionLost() {
+        FakeTickerProvider tickerProvider = this.tickerProvider;
+        if (tickerProvider != null)
+            tickerProvider.connectionLost();
+    }
+
+    void connectionRestored() {
+        FakeTickerProvider tickerProvider = this.tickerProvider;
+        if (tickerProvider != null)
+            tickerProvider.connectionRestored();
+    }
+
+    // number of chart data requests for a pair and period
+    long getNumChartDataRequests() {
+        return numChartDataRequests.get();
+    }
+
+    @Override
+    public PairSymbolConverter getPairSymbolConverter() {
+        return apiSymbol -> apiSymbol;
+    }
+
+    @Override
+    public PairDataProvider getPairDataProvider() {
+        return new PairDataProvider() {
+            @Override
+            public String[] getPairsApiSymbols() {
+                return pairs.clone();
+            }
+
+            @Override
+            public String[] getPairsApiSymbols(PairSelectionCriteria[] pairSelectionCriteria) {
+                return pairs.clone();
+            }
+        };
+    }
+
+    @Override
+    public TickerProvider getTickerProvider(TickerReceiver tickerReceiver, String[] pairs) {
+        FakeTickerProvider tickerProvider = new FakeTickerProvider(tickerReceiver);
+        this.tickerProvider = tickerProvider;
+        return tickerProvider;
+    }
+
+    @Override
+    public ExchangeChartInfo getChartInfo() {
+        return new ExchangeChartInfo() {
+            // chart data of lower periods isn't used by load test
+            @Override
+            public ChartTimePeriod[] getAvailablePeriods() {
+                return new ChartTimePeriod[0];
+            }
+
+            @Override
+            public ChartCandle[] getCandlestickData(String symbol, long timePeriodSeconds, long beginTimestamp, long endTimestamp) {
+                numChartDataRequests.incrementAndGet();
+                return candles(timePeriodSeconds, beginTimestamp, endTimestamp);
+            }
+        };
+    }
+
+    // candles starting from beginTimestamp (rounded up to period) to endTimestamp
+    private synchronized ChartCandle[] candles(long timePeriodSeconds, long beginTimestamp, long endTimestamp) {
+        List<ChartCandle> candles = new ArrayList<>();
+        double periodVolatility = VOLATILITY * Math.sqrt(timePeriodSeconds);
+        double open = 1;
+        for (long timestamp = Math.floorDiv(beginTimestamp + timePeriodSeconds - 1, timePeriodSeconds) * timePeriodSeconds; timestamp <= endTimestamp; timestamp += timePeriodSeconds) {
+            double close = open * Math.exp(periodVolatility * random.nextGaussian());
+            double high = Math.max(open, close) * (1 + periodVolatility * Math.abs(random.nextGaussian()));
+            double low = Math.min(open, close) * (1 - periodVolatility * Math.abs(random.nextGaussian()) / 2);
+            candles.add(new ChartCandle(high, low, open, close, timestamp));
+            open = close;
+        }
+        return candles.toArray(new ChartCandle[0]);
+    }
+
+    private static class FakeTickerProvider implements TickerProvider {
+
+        private final TickerReceiver tickerReceiver;
+        private volatile TickerProviderConnectionStateReceiver connectionStateReceiver;
+        private volatile boolean connected = false;
+        // disconnected by the engine, connection isn't restored then
+        private volatile boolean disconnected = false;
+
+        FakeTickerProvider(TickerReceiver tickerReceiver) {
+            this.tickerReceiver = tickerReceiver;
+        }
+
+        @Override
+        public void connect(TickerProviderConnectionStateReceiver connectionStateReceiver) {
+            this.connectionStateReceiver = connectionStateReceiver;
+            connected = true;
+            connectionStateReceiver.connectionState(TickerProviderConnectionState.CONNECTED);
+        }
+
+        @Override
+        public void disconnect() {
+            disconnected = true;
+            connected = false;
+            if (connectionStateReceiver != null)
+                connectionStateReceiver.connectionState(TickerProviderConnectionState.DISCONNECTED);
+        }
+
+        boolean sendTicker(Ticker ticker) {
+            if (!connected)
+                return false;
+            tickerReceiver.receiveTicker(ticker);
+            return true;
+        }
+
+        void connectionLost() {
+            if (!connected)
+                return;
+            connected = false;
+            connectionStateReceiver.connectionState(TickerProviderConnectionState.DISCONNECTED);
+            connectionStateReceiver.connectionState(TickerProviderConnectionState.RECONNECTING);
+        }
+
+        void connectionRestored() {
+            if (connected || disconnected || connectionStateReceiver == null)
+                return;
+            connected = true;
+            connectionStateReceiver.connectionState(TickerProviderConnectionState.CONNECTED);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Cryptonose
+ *
+ * Copyright © 2019-2022 Dawid Motyka
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package pl.dmotyka.cryptonoseengine;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import pl.dmotyka.exchangeutils.chartdataprovider.CurrencyPairTimePeriod;
+import pl.dmotyka.exchangeutils.chartinfo.ChartCandle;
+import pl.dmotyka.exchangeutils.tickerprovider.Ticker;
+
+// Synthetic tickers for benchmarks: prices of pairs follow independent random walks, pair of every ticker is chosen at random
+// and every tradesPerSecond consecutive tickers (of all pairs) have the same timestamp. Tickers are the same for the same seed.
+class RandomWalkTickers {
+
+    static final long START_TIMESTAMP = 1_600_000_000;
+    // standard deviation of relative price change of one ticker
+    private static final double VOLATILITY = 0.001;
+
+    private final String[] pairs;
+    private final double[] prices;
+    private final int tradesPerSecond;
+    private final Random random;
+    private long timestampSeconds = START_TIMESTAMP;
+    private int numTickersInSecond = 0;
+
+    RandomWalkTickers(int numPairs, int tradesPerSecond, long seed) {
+        if (numPairs <= 0 || tradesPerSecond <= 0)
+            throw new IllegalArgumentException("numPairs and tradesPerSecond should be positive");
+        this.tradesPerSecond = tradesPerSecond;
+        random = new Random(seed);
+        pairs = new String[numPairs];
+        prices = new double[numPairs];
+        for (int i = 0; i < numPairs; i++) {
+            pairs[i] = String.format("BTC_P%d", i);
+            prices[i] = 0.001 + random.nextDouble();
+        }
+    }
+
+    String[] getPairs() {
+        return pairs;
+    }
+
+    Ticker next() {
+        return nextForPair(random.nextInt(pairs.length));
+    }
+
+    // ticker of given pair, timestamp is the same as for next()
+    Ticker nextForPair(int pairIndex) {
+        if (numTickersInSecond == tradesPerSecond) {
+            timestampSeconds++;
+            numTickersInSecond = 0;
+        }
+        numTickersInSecond++;
+        return next(pairIndex, timestampSeconds);
+    }
+
+    // ticker with given timestamp (e.g. current time for live tickers)
+    Ticker next(long timestampSeconds) {
+        return next(random.nextInt(pairs.length), timestampSeconds);
+    }
+
+    private Ticker next(int pairIndex, long timestampSeconds) {
+        prices[pairIndex] *= Math.exp(VOLATILITY * random.nextGaussian());
+        return new Ticker(pairs[pairIndex], prices[pairIndex], timestampSeconds);
+    }
+
+    // insert tickers of the next numSeconds to changes checker
+    void insertHistory(CryptonoseEngineChangesChecker changesChecker, long numSeconds) {
+        for (long i = 0; i < numSeconds * tradesPerSecond; i++)
+            changesChecker.insertTicker(next());
+    }
+
+    // numCandles candles of every pair and period closing before START_TIMESTAMP, with random walk prices independent of tickers
+    Map<CurrencyPairTimePeriod, ChartCandle[]> candles(long[] timePeriods, int numCandles) {
+        Map<CurrencyPairTimePeriod, ChartCandle[]> candlesMap = new LinkedHashMap<>();
+        for (long timePeriod : timePeriods) {
+            for (int pairIndex = 0; pairIndex < pairs.length; pairIndex++) {
+                ChartCandle[] candles = new ChartCandle[numCandles];
+                double close = prices[pairIndex];
+                double periodVolatility = VOLATILITY * Math.sqrt(timePeriod);
+                for (int i = numCandles - 1; i >= 0; i--) {
+                    double open = close * Math.exp(periodVolatility * random.nextGaussian());
+                    double high = Math.max(open, close) * (1 + periodVolatility * Math.abs(random.nextGaussian()));
+                    double low = Math.min(open, close) * (1 - periodVolatility * Math.abs(random.nextGaussian()) / 2);
+                    candles[i] = new ChartCandle(high, low, open, close, START_TIMESTAMP - (numCandles - i) * timePeriod);
+                    close = open;
+                }
+                candlesMap.put(new CurrencyPairTimePeriod(pairs[pairIndex], (int)timePeriod), candles);
+            }
+        }
+        return candlesMap;
+    }
+
+    // time periods from comma separated seconds, e.g. "300,1800,7200"
+    static long[] parsePeriods(String periods) {
+        return Arrays.stream(periods.split(",")).mapToLong(period -> Long.parseLong(period.trim())).toArray();
+    }
+}
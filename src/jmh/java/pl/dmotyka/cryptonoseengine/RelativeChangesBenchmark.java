@@ -0,0 +1,85 @@
+/*
+ * Cryptonose
+ *
+ * Copyright © 2019-2022 Dawid Motyka
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package pl.dmotyka.cryptonoseengine;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Setting relative changes for PriceChanges of one pair (all periods), with relative changes data of all pairs calculated
+// from random walk candles.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RelativeChangesBenchmark {
+
+    @Param({"10", "300"})
+    public int numPairs;
+
+    // tickers per second of all pairs
+    @Param({"20"})
+    public int tradesPerSecond;
+
+    // comma separated time periods in seconds
+    @Param({"300,1800"})
+    public String periods;
+
+    @Param({"100"})
+    public int numCandles;
+
+    private RelativeChangesChecker relativeChangesChecker;
+    // by pair index
+    private String[] pairs;
+    private TickersWindow[] pairsTickersWindows;
+    private PriceChanges[][] pairsPriceChanges;
+    private int pairIndex = 0;
+
+    @Setup
+    public void setup() {
+        long[] timePeriods = RandomWalkTickers.parsePeriods(periods);
+        RandomWalkTickers randomWalkTickers = new RandomWalkTickers(numPairs, tradesPerSecond, 1);
+        pairs = randomWalkTickers.getPairs();
+        relativeChangesChecker = new RelativeChangesChecker(pairs, timePeriods, numCandles);
+        relativeChangesChecker.setUseWeightedHighLowDiff();
+        relativeChangesChecker.updateCandles(randomWalkTickers.candles(timePeriods, numCandles));
+        CryptonoseEngineChangesChecker changesChecker = new CryptonoseEngineChangesChecker(timePeriods);
+        randomWalkTickers.insertHistory(changesChecker, Arrays.stream(timePeriods).max().getAsLong());
+        pairsTickersWindows = Arrays.stream(pairs).map(changesChecker::findTickersWindow).toArray(TickersWindow[]::new);
+        pairsPriceChanges = Arrays.stream(pairs).map(changesChecker::checkChanges).toArray(PriceChanges[][]::new);
+    }
+
+    // as done by engine, pair id is cached in tickers window of the pair
+    @Benchmark
+    public PriceChanges[] setRelativeChanges() {
+        pairIndex = (pairIndex + 1) % pairs.length;
+        PriceChanges[] priceChanges = pairsPriceChanges[pairIndex];
+        if (priceChanges != null)
+            relativeChangesChecker.setRelativeChanges(priceChanges, relativeChangesChecker.getPairId(pairs[pairIndex], pairsTickersWindows[pairIndex]));
+        return priceChanges;
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * Cryptonose
+ *
+ * Copyright © 2019-2022 Dawid Motyka
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package pl.dmotyka.cryptonoseengine;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import pl.dmotyka.exchangeutils.chartdataprovider.CurrencyPairTimePeriod;
+import pl.dmotyka.exchangeutils.chartinfo.ChartCandle;
+
+// Chart candles stored on disk for every exchange, pair and period, so only candles newer than stored ones have to be fetched
+// from the exchange, see CryptonoseGenericEngine.enableCandleCache().
+// Candles from chart data provider are merged with stored ones: stored candles older than the first provided candle are
+// followed by provided candles, and the last numCandles are used. Only closed candles received from chart data provider
+// subscription (mergeAndStore()) which are newer than the last stored one are appended to the file, candles merged for other
+// callers (merge()) aren't stored, so candle which isn't closed yet is never stored.
+//
+// File for pair and period: <directory>/<exchange>/<pair>_<period seconds>.candles, append-only records (big endian) of
+//  long timestamp, double high, double low, double open, double close.
+// Incomplete record at the end of the file (if writing was interrupted) is ignored, file is rewritten with the last numCandles
+// candles when it contains more than COMPACT_MULTIPLIER * numCandles candles.
+class CandleCache {
+
+    private static final Logger logger = Logger.getLogger(CandleCache.class.getName());
+
+    private static final int RECORD_BYTES = 5 * Long.BYTES;
+    private static final int COMPACT_MULTIPLIER = 4;
+
+    private final Path directory;
+    private final long[] timePeriods;
+    private final int numCandles;
+    // the last numCandles candles for pair and period, loaded from file when used for the first time
+    private final Map<CurrencyPairTimePeriod, ChartCandle[]> candlesMap = new HashMap<>();
+
+    // candles are stored only for given time periods
+    CandleCache(Path directory, String exchangeName, long[] timePeriods, int numCandles) {
+        this.directory = directory.resolve(exchangeName);
+        this.timePeriods = timePeriods;
+        this.numCandles = numCandles;
+    }
+
+    boolean isCachedPeriod(long periodSeconds) {
+        for (long timePeriod : timePeriods) {
+            if (timePeriod == periodSeconds)
+                return true;
+        }
+        return false;
+    }
+
+    // number of candles which should be fetched for all pairs in period to get numCandles after merging with stored candles
+    synchronized int numCandlesToFetch(String[] pairs, long periodSeconds, long currentTimeSeconds) {
+        long oldestLastTimestamp = Long.MAX_VALUE;
+        for (String pair : pairs) {
+            ChartCandle[] candles = getCandles(new CurrencyPairTimePeriod(pair, (int)periodSeconds));
+            if (candles.length == 0)
+                return numCandles;
+            oldestLastTimestamp = Math.min(oldestLastTimestamp, candles[candles.length - 1].getTimestampSeconds());
+        }
+        if (pairs.length == 0)
+            return numCandles;
+        // candles from the last stored one (it might have been stored before closing) to the current one
+        long numMissingCandles = Math.max(0, currentTimeSeconds - oldestLastTimestamp) / periodSeconds + 1;
+        return (int)Math.min(numCandles, numMissingCandles);
+    }
+
+    // merge candles from chart data provider subscription, closed candles (ending not later than currentTimeSeconds) newer
+    //  than stored ones are stored, candles of periods which aren't cached are returned as provided
+    synchronized Map<CurrencyPairTimePeriod, ChartCandle[]> mergeAndStore(Map<CurrencyPairTimePeriod, ChartCandle[]> chartCandlesMap, long currentTimeSeconds) {
+        Map<CurrencyPairTimePeriod, ChartCandle[]> mergedMap = new HashMap<>();
+        for (Map.Entry<CurrencyPairTimePeriod, ChartCandle[]> entry : chartCandlesMap.entrySet())
+            mergedMap.put(entry.getKey(), merge(entry.getKey(), entry.getValue(), true, currentTimeSeconds));
+        return mergedMap;
+    }
+
+    // merge candles without storing them, candles of periods which aren't cached are returned as provided
+    synchronized Map<CurrencyPairTimePeriod, ChartCandle[]> merge(Map<CurrencyPairTimePeriod, ChartCandle[]> chartCandlesMap) {
+        Map<CurrencyPairTimePeriod, ChartCandle[]> mergedMap = new HashMap<>();
+        for (Map.Entry<CurrencyPairTimePeriod, ChartCandle[]> entry : chartCandlesMap.entrySet())
+            mergedMap.put(entry.getKey(), merge(entry.getKey(), entry.getValue(), false, 0));
+        return mergedMap;
+    }
+
+    // merge candles without storing them, provided candles should be sorted by timestamp, candles of periods which aren't
+    //  cached are returned as provided
+    synchronized ChartCandle[] merge(CurrencyPairTimePeriod currencyPairTimePeriod, ChartCandle[] providedCandles) {
+        return merge(currencyPairTimePeriod, providedCandles, false, 0);
+    }
+
+    private ChartCandle[] merge(CurrencyPairTimePeriod currencyPairTimePeriod, ChartCandle[] providedCandles, boolean store, long currentTimeSeconds) {
+        if (providedCandles == null || !isCachedPeriod(currencyPairTimePeriod.getTimePeriodSeconds()))
+            return providedCandles;
+        ChartCandle[] storedCandles = getCandles(currencyPairTimePeriod);
+        if (providedCandles.length == 0)
+            return storedCandles;
+        long firstProvidedTimestamp = providedCandles[0].getTimestampSeconds();
+        int numStoredOlder = 0;
+        while (numStoredOlder < storedCandles.length && storedCandles[numStoredOlder].getTimestampSeconds() < firstProvidedTimestamp)
+            numStoredOlder++;
+        int mergedLength = Math.min(numCandles, numStoredOlder + providedCandles.length);
+        ChartCandle[] mergedCandles = new ChartCandle[mergedLength];
+        int numProvidedUsed = Math.min(mergedLength, providedCandles.length);
+        int numStoredUsed = mergedLength - numProvidedUsed;
+        System.arraycopy(storedCandles, numStoredOlder - numStoredUsed, mergedCandles, 0, numStoredUsed);
+        System.arraycopy(providedCandles, providedCandles.length - numProvidedUsed, mergedCandles, numStoredUsed, numProvidedUsed);
+        if (!store)
+            return mergedCandles;
+        // candle timestamp is its start
+        long periodSeconds = currencyPairTimePeriod.getTimePeriodSeconds();
+        int numClosed = mergedCandles.length;
+        while (numClosed > 0 && mergedCandles[numClosed - 1].getTimestampSeconds() + periodSeconds > currentTimeSeconds)
+            numClosed--;
+        long lastStoredTimestamp = storedCandles.length > 0 ? storedCandles[storedCandles.length - 1].getTimestampSeconds() : Long.MIN_VALUE;
+        List<ChartCandle> newCandles = new ArrayList<>();
+        for (int i = 0; i < numClosed; i++) {
+            if (mergedCandles[i].getTimestampSeconds() > lastStoredTimestamp)
+                newCandles.add(mergedCandles[i]);
+        }
+        if (!newCandles.isEmpty()) {
+            append(currencyPairTimePeriod, newCandles);
+            candlesMap.put(currencyPairTimePeriod, numClosed == mergedCandles.length ? mergedCandles : Arrays.copyOf(mergedCandles, numClosed));
+        }
+        return mergedCandles;
+    }
+
+    private ChartCandle[] getCandles(CurrencyPairTimePeriod currencyPairTimePeriod) {
+        ChartCandle[] candles = candlesMap.get(currencyPairTimePeriod);
+        if (candles == null) {
+            candles = load(currencyPairTimePeriod);
+            candlesMap.put(currencyPairTimePeriod, candles);
+        }
+        return candles;
+    }
+
+    private Path file(CurrencyPairTimePeriod currencyPairTimePeriod) {
+        return directory.resolve(currencyPairTimePeriod.getCurrencyPairSymbol() + "_" + currencyPairTimePeriod.getTimePeriodSeconds() + ".candles");
+    }
+
+    // the last numCandles candles from file, or empty array if there is no file or it can't be read
+    private ChartCandle[] load(CurrencyPairTimePeriod currencyPairTimePeriod) {
+        Path file = file(currencyPairTimePeriod);
+        if (!Files.exists(file))
+            return new ChartCandle[0];
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+            int numRecords = buffer.remaining() / RECORD_BYTES;
+            int numLoaded = Math.min(numRecords, numCandles);
+            buffer.position((numRecords - numLoaded) * RECORD_BYTES);
+            ChartCandle[] candles = new ChartCandle[numLoaded];
+            for (int i = 0; i < numLoaded; i++) {
+                long timestamp = buffer.getLong();
+                double high = buffer.getDouble();
+                double low = buffer.getDouble();
+                double open = buffer.getDouble();
+                double close = buffer.getDouble();
+                candles[i] = new ChartCandle(high, low, open, close, timestamp);
+            }
+            if (numRecords > COMPACT_MULTIPLIER * numCandles || numRecords * RECORD_BYTES != buffer.capacity())
+                rewrite(file, candles);
+            return candles;
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "when loading candles from " + file, e);
+            return new ChartCandle[0];
+        }
+    }
+
+    private void append(CurrencyPairTimePeriod currencyPairTimePeriod, List<ChartCandle> candles) {
+        Path file = file(currencyPairTimePeriod);
+        try {
+            Files.createDirectories(directory);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND)))) {
+                for (ChartCandle candle : candles)
+                    writeCandle(out, candle);
+            }
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "when storing candles to " + file, e);
+        }
+    }
+
+    private void rewrite(Path file, ChartCandle[] candles) throws IOException {
+        Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+            for (ChartCandle candle : candles)
+                writeCandle(out, candle);
+        }
+        Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeCandle(DataOutputStream out, ChartCandle candle) throws IOException {
+        out.writeLong(candle.getTimestampSeconds());
+        out.writeDouble(candle.getHigh());
+        out.writeDouble(candle.getLow());
+        out.writeDouble(candle.getOpen());
+        out.writeDouble(candle.getClose());
+    }
+}
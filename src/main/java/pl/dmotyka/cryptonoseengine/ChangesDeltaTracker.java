@@ -0,0 +1,93 @@
+/*
+ * Cryptonose
+ *
+ * Copyright © 2019-2022 Dawid Motyka
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package pl.dmotyka.cryptonoseengine;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Remembers the last sent price extremes for every pair and time period, to send only periods for which they changed.
+// Changes of extremes (min, max, max after min, min after max prices and their timestamps) or relative changes data
+// (high-low difference and its relative standard deviation) are always sent. Changes of last price only
+// (which also change getLastChange() and getRelativeLastPriceChange()) are sent only when sendLastPriceUpdates is set.
+class ChangesDeltaTracker {
+
+    private static final int MIN_PRICE = 0;
+    private static final int MIN_PRICE_TIMESTAMP = 1;
+    private static final int MAX_PRICE = 2;
+    private static final int MAX_PRICE_TIMESTAMP = 3;
+    private static final int MAX_AFTER_MIN_PRICE = 4;
+    private static final int MAX_AFTER_MIN_TIMESTAMP = 5;
+    private static final int MIN_AFTER_MAX_PRICE = 6;
+    private static final int MIN_AFTER_MAX_TIMESTAMP = 7;
+    private static final int HIGH_LOW_DIFF = 8;
+    private static final int HIGH_LOW_DIFF_REL_STD_DEV = 9;
+    private static final int LAST_PRICE = 10;
+    private static final int NUM_VALUES = 11;
+
+    private final int numPeriods;
+    private final boolean sendLastPriceUpdates;
+    // for every pair: values for every period index (NUM_VALUES per period), NaN when period wasn't sent yet
+    private final Map<String, double[]> sentValuesMap = new ConcurrentHashMap<>();
+
+    ChangesDeltaTracker(int numPeriods, boolean sendLastPriceUpdates) {
+        this.numPeriods = numPeriods;
+        this.sendLastPriceUpdates = sendLastPriceUpdates;
+    }
+
+    // drop state of pairs which aren't used anymore
+    void retainPairs(Set<String> pairs) {
+        sentValuesMap.keySet().retainAll(pairs);
+    }
+
+    // returns true if changes for the period should be sent, and remembers them as sent
+    boolean checkChanged(String pair, int periodIndex, PriceExtremes priceExtremes, RelativeChangesInfo relativeChangesInfo) {
+        double[] sentValues = sentValuesMap.computeIfAbsent(pair, p -> {
+            double[] values = new double[numPeriods * NUM_VALUES];
+            Arrays.fill(values, Double.NaN);
+            return values;
+        });
+        int offset = periodIndex * NUM_VALUES;
+        double highLowDiff = Double.NaN;
+        double highLowDiffRelStdDev = Double.NaN;
+        if (relativeChangesInfo != null && !relativeChangesInfo.isEmpty()) {
+            highLowDiff = relativeChangesInfo.getHighLowDiff();
+            highLowDiffRelStdDev = relativeChangesInfo.getHighLowDiffRelativeStdDeviation();
+        }
+        synchronized (sentValues) {
+            boolean changed = false;
+            changed |= update(sentValues, offset + MIN_PRICE, priceExtremes.minPrice[periodIndex]);
+            changed |= update(sentValues, offset + MIN_PRICE_TIMESTAMP, priceExtremes.minPriceTimestampSec[periodIndex]);
+            changed |= update(sentValues, offset + MAX_PRICE, priceExtremes.maxPrice[periodIndex]);
+            changed |= update(sentValues, offset + MAX_PRICE_TIMESTAMP, priceExtremes.maxPriceTimestampSec[periodIndex]);
+            changed |= update(sentValues, offset + MAX_AFTER_MIN_PRICE, priceExtremes.maxAfterMinPrice[periodIndex]);
+            changed |= update(sentValues, offset + MAX_AFTER_MIN_TIMESTAMP, priceExtremes.maxAfterMinTimestampSec[periodIndex]);
+            changed |= update(sentValues, offset + MIN_AFTER_MAX_PRICE, priceExtremes.minAfterMaxPrice[periodIndex]);
+            changed |= update(sentValues, offset + MIN_AFTER_MAX_TIMESTAMP, priceExtremes.minAfterMaxTimestampSec[periodIndex]);
+            changed |= update(sentValues, offset + HIGH_LOW_DIFF, highLowDiff);
+            changed |= update(sentValues, offset + HIGH_LOW_DIFF_REL_STD_DEV, highLowDiffRelStdDev);
+            boolean lastPriceChanged = update(sentValues, offset + LAST_PRICE, priceExtremes.lastPrice);
+            return changed || (sendLastPriceUpdates && lastPriceChanged);
+        }
+    }
+
+    // sets new value, returns true if it's different (NaN is equal to NaN)
+    private static boolean update(double[] values, int index, double value) {
+        if (Double.compare(values[index], value) == 0)
+            return false;
+        values[index] = value;
+        return true;
+    }
+}
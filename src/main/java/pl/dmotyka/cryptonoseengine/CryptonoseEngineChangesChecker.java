@@ -13,13 +13,15 @@
 
 package pl.dmotyka.cryptonoseengine;
 
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
 
 import pl.dmotyka.exchangeutils.tickerprovider.Ticker;
@@ -32,14 +34,16 @@ public class CryptonoseEngineChangesChecker {
     private static final Logger logger = Logger.getLogger(CryptonoseEngineChangesChecker.class.getName());
 
     private long timePeriods[];
-    private Integer timeframeMultipler=1;
-    private Map<String, List<Ticker>> tickersMap = new HashMap<>();
+    private volatile int timeframeMultipler=1;
+    private long downsamplingBucketSeconds = 0;
+    private long fullResolutionSeconds = 0;
+    // tickers for different pairs may be inserted and checked concurrently, TickersWindow synchronizes operations for one pair
+    private final Map<String, TickersWindow> tickersMap = new ConcurrentHashMap<>();
 
     public CryptonoseEngineChangesChecker(long[] timePeriods) {
         this.timePeriods = timePeriods;
     }
 
-    //TODO optimize searching for min max every ticker insert
     public PriceChanges[] checkChanges(Ticker ticker) {
         insertTicker(ticker);
         return checkChanges(ticker.getPair());
@@ -47,75 +51,132 @@ public class CryptonoseEngineChangesChecker {
 
     public void insertTicker(Ticker ticker) {
         logger.finest(String.format("inserting ticker for %s",ticker.getPair()));
-        List<Ticker> currentPairTickersList = tickersMap.get(ticker.getPair());
-        if (currentPairTickersList == null) {
-            currentPairTickersList = new LinkedList<>();
-            tickersMap.put(ticker.getPair(), currentPairTickersList);
-        }
-        synchronized (currentPairTickersList) {
-            currentPairTickersList.add(ticker);
+        getTickersWindow(ticker.getPair()).insert(ticker);
+    }
+
+    // insert tickers of one currency pair at once
+    public void insertPairTickers(Ticker[] tickers) {
+        if (tickers.length == 0)
+            return;
+        logger.finest(String.format("inserting %d tickers for %s", tickers.length, tickers[0].getPair()));
+        getTickersWindow(tickers[0].getPair()).insert(tickers);
+    }
+
+    // load tickers of a pair from arrays (sorted by timestamp), first numTickers elements are used
+    // tickers may be older than tickers inserted before, last price is then the price of the newest inserted ticker
+    public void loadTickers(String pair, long[] timestamps, double[] prices, int numTickers) {
+        logger.finest(String.format("loading %d tickers for %s", numTickers, pair));
+        getTickersWindow(pair).insert(timestamps, prices, numTickers);
+    }
+
+    // drop tickers of pairs not in given set
+    public void retainPairs(Set<String> pairs) {
+        tickersMap.keySet().retainAll(pairs);
+    }
+
+    // pairs with tickers
+    String[] getPairs() {
+        return tickersMap.keySet().toArray(new String[0]);
+    }
+
+    // writes number of tickers of the pair and timestamp and price of every ticker, see TickersWindow.writeTickers()
+    void writeTickers(String pair, DataOutput out) throws IOException {
+        TickersWindow tickersWindow = tickersMap.get(pair);
+        if (tickersWindow == null) {
+            out.writeInt(0);
+            return;
         }
+        tickersWindow.writeTickers(out);
+    }
+
+    // tickers grouped by currency pair in order of first occurrence, tickers of every pair are kept in the original order
+    static List<Ticker[]> groupByPair(Ticker[] tickers) {
+        if (tickers.length == 0)
+            return Collections.emptyList();
+        String firstPair = tickers[0].getPair();
+        int i = 1;
+        while (i < tickers.length && tickers[i].getPair().equals(firstPair))
+            i++;
+        if (i == tickers.length) // usually all tickers are for one pair
+            return Collections.singletonList(tickers);
+        Map<String, List<Ticker>> pairsTickers = new LinkedHashMap<>();
+        for (Ticker ticker : tickers)
+            pairsTickers.computeIfAbsent(ticker.getPair(), pair -> new ArrayList<>()).add(ticker);
+        List<Ticker[]> groups = new ArrayList<>(pairsTickers.size());
+        for (List<Ticker> pairTickers : pairsTickers.values())
+            groups.add(pairTickers.toArray(new Ticker[0]));
+        return groups;
     }
 
     public PriceChanges[] checkChanges(String pair) {
+        TickersWindow tickersWindow = tickersMap.get(pair);
+        if(tickersWindow==null)
+            return null;
+        return checkChanges(pair, tickersWindow);
+    }
+
+    // tickersWindow - returned by findTickersWindow() for the pair
+    PriceChanges[] checkChanges(String pair, TickersWindow tickersWindow) {
         logger.finest(String.format("checking changes for %s",pair));
-        List<Ticker> currentPairTickersList = tickersMap.get(pair);
-        if(currentPairTickersList==null)
+        return tickersWindow.checkChanges(pair, timeframeMultipler);
+    }
+
+    // the same as checkChanges(), but returns the same array as the last call for the pair if there were no new tickers for the pair
+    //  and timeframe multiplier didn't change, forceNew - always create new PriceChanges
+    // returned PriceChanges may be shared with other callers
+    PriceChanges[] checkChangesCached(String pair, boolean forceNew) {
+        TickersWindow tickersWindow = tickersMap.get(pair);
+        if(tickersWindow==null)
             return null;
-        synchronized (currentPairTickersList) {
-            Ticker lastTicker = currentPairTickersList.get(currentPairTickersList.size() - 1);
-            List<PriceChanges> priceChangesList = new ArrayList<>();
-            Iterator<Ticker> iterator = currentPairTickersList.iterator();
-            long currentTimeSnapshot = lastTicker.getTimestampSeconds();
-            long minValidTimestamp = currentTimeSnapshot - timePeriods[timePeriods.length - 1] * timeframeMultipler;
-            while (iterator.hasNext() && iterator.next().getTimestampSeconds() < minValidTimestamp)
-                iterator.remove();
-            for (long currentTimePeriod : timePeriods) {
-                long minValidTimestampForPeriod = currentTimeSnapshot - currentTimePeriod * timeframeMultipler;
-                Ticker minTicker = currentPairTickersList.stream().
-                        filter(t -> t.getTimestampSeconds() > minValidTimestampForPeriod).
-                        min(Comparator.comparingDouble(Ticker::getValue)).orElse(null);
-                if (minTicker == null) //valid tickers list is empty
-                    continue;
-                Ticker maxTicker = currentPairTickersList.stream().
-                        filter(t -> t.getTimestampSeconds() > minValidTimestampForPeriod).
-                        max(Comparator.comparingDouble(Ticker::getValue)).orElse(null);
-                Ticker maxAfterMinTicker;
-                if (maxTicker.getTimestampSeconds() >= minTicker.getTimestampSeconds())
-                    maxAfterMinTicker = maxTicker;
-                else
-                    maxAfterMinTicker = currentPairTickersList.stream().
-                            filter(t -> t.getTimestampSeconds() > minTicker.getTimestampSeconds()).
-                            max(Comparator.comparingDouble(Ticker::getValue)).orElse(minTicker);
-                Ticker minAfterMaxTicker;
-                if (minTicker.getTimestampSeconds() >= maxTicker.getTimestampSeconds())
-                    minAfterMaxTicker = minTicker;
-                else
-                    minAfterMaxTicker = currentPairTickersList.stream().
-                            filter(t -> t.getTimestampSeconds() > maxTicker.getTimestampSeconds()).
-                            min(Comparator.comparingDouble(Ticker::getValue)).orElse(maxTicker);
-                PriceChanges priceChanges = new PriceChanges(pair,
-                        currentTimePeriod,
-                        lastTicker.getValue(),
-                        lastTicker.getTimestampSeconds(),
-                        minTicker.getValue(),
-                        minTicker.getTimestampSeconds(),
-                        maxTicker.getValue(),
-                        maxTicker.getTimestampSeconds(),
-                        maxAfterMinTicker.getValue(),
-                        maxAfterMinTicker.getTimestampSeconds(),
-                        minAfterMaxTicker.getValue(),
-                        maxAfterMinTicker.getTimestampSeconds());
-                priceChangesList.add(priceChanges);
-            }
-            return priceChangesList.toArray(new PriceChanges[priceChangesList.size()]);
-        }
+        return checkChangesCached(pair, tickersWindow, forceNew);
+    }
+
+    PriceChanges[] checkChangesCached(String pair, TickersWindow tickersWindow, boolean forceNew) {
+        return tickersWindow.checkChangesCached(pair, timeframeMultipler, forceNew);
+    }
+
+    // fills priceExtremes (created with createPriceExtremes()) for given pair, returns false if there are no tickers for the pair
+    boolean checkExtremes(String pair, PriceExtremes priceExtremes) {
+        TickersWindow tickersWindow = tickersMap.get(pair);
+        if (tickersWindow == null)
+            return false;
+        return checkExtremes(tickersWindow, priceExtremes);
+    }
+
+    boolean checkExtremes(TickersWindow tickersWindow, PriceExtremes priceExtremes) {
+        return tickersWindow.checkExtremes(timeframeMultipler, priceExtremes);
+    }
+
+    // tickers window of the pair (to check changes and get id of the pair cached in the window, see
+    //  RelativeChangesChecker.getPairId(String, TickersWindow)), returns null if there are no tickers for the pair
+    TickersWindow findTickersWindow(String pair) {
+        return tickersMap.get(pair);
+    }
+
+    PriceExtremes createPriceExtremes() {
+        return new PriceExtremes(timePeriods);
+    }
+
+    // keep only min and max price tickers for every bucketSeconds for tickers older than fullResolutionSeconds,
+    //  timestamps of min and max prices in periods starting in downsampled part could be earlier than period start by less than bucketSeconds
+    // should be called before inserting tickers
+    public void enableDownsampling(long bucketSeconds, long fullResolutionSeconds) {
+        if (!tickersMap.isEmpty())
+            throw new IllegalStateException("Should be called before inserting tickers");
+        if (bucketSeconds <= 0 || fullResolutionSeconds < 0)
+            throw new IllegalArgumentException("bucketSeconds should be positive and fullResolutionSeconds not negative");
+        this.downsamplingBucketSeconds = bucketSeconds;
+        this.fullResolutionSeconds = fullResolutionSeconds;
     }
 
     public void setTimeframeMultipler(int multipler) {
         timeframeMultipler= multipler;
     }
 
+    private TickersWindow getTickersWindow(String pair) {
+        return tickersMap.computeIfAbsent(pair, p -> new TickersWindow(timePeriods, downsamplingBucketSeconds, fullResolutionSeconds));
+    }
+
     public boolean hasntReceivedTickersYet() {
         return tickersMap.isEmpty();
     }
@@ -13,22 +13,32 @@
 
 package pl.dmotyka.cryptonoseengine;
 
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
+import javax.management.JMException;
+import javax.management.ObjectName;
 
 import com.dawidmotyka.dmutils.runtime.RepeatTillSuccess;
 import pl.dmotyka.exchangeutils.chartdataprovider.ChartDataProvider;
@@ -55,10 +65,24 @@ public class CryptonoseGenericEngine {
     private final Logger logger = Logger.getLogger(CryptonoseGenericEngine.class.getName());
 
     public static final int GET_DATA_RETRY_INTERVAL=60000;
+    // max delay of delayed changes checks (above checkChangesDelayMs)
+    private static final int DELAYED_CHECKS_TICK_MS = 10;
+    // max number of tasks waiting for every ingestion thread by default, see setIngestionThreads()
+    private static final int DEFAULT_INGESTION_QUEUE_CAPACITY = 10000;
+    // number of pairs for which chart data is fetched at once in progressive start
+    private static final int PROGRESSIVE_START_BATCH_SIZE = 20;
+    // used in names of metrics MBeans
+    private static final AtomicInteger metricsMBeanCounter = new AtomicInteger();
 
     private final ExchangeSpecs exchangeSpecs;
     private final PairSymbolConverter pairSymbolConverter;
-    private final EngineChangesReceiver engineChangesReceiver;
+    private EngineChangesReceiver engineChangesReceiver;
+    private EngineChangesDispatcher engineChangesDispatcher;
+    private EngineChangesFilter engineChangesFilter;
+    private ChangesDeltaTracker changesDeltaTracker;
+    private final long[] timePeriods;
+    // used for checking changes with engineChangesFilter or changesDeltaTracker
+    private final ThreadLocal<PriceExtremes> priceExtremesThreadLocal;
     private EngineTransactionHeartbeatReceiver engineUpdateHeartbeatReceiver;
     private EngineMessageQueue engineMessageQueue;
     private final Set<ChartDataReceiver> chartDataSubscribers=new HashSet<>();
@@ -69,23 +93,58 @@ public class CryptonoseGenericEngine {
     private final Set<String> pairsManualSet;
     private final Set<String> pairsBlacklistSet;
     private boolean initEngineWithLowerPeriodChartData=false;
-    private int checkChangesDelayMs = 0;
+    private volatile int checkChangesDelayMs = 0;
+    private int ingestionThreads = 0;
+    private int ingestionQueueCapacity = DEFAULT_INGESTION_QUEUE_CAPACITY;
+    private EngineChangesDispatcher.OverflowPolicy ingestionOverflowPolicy = EngineChangesDispatcher.OverflowPolicy.BLOCK;
     private final AtomicBoolean useMedianRelativeChanges = new AtomicBoolean(false);
 
-    private String[] pairsAll;
+    private volatile String[] pairsAll;
 
     private TickerProvider tickerProvider;
-    private ChartDataProvider chartDataProvider;
+    private volatile ChartDataProvider chartDataProvider;
+    // provider for which chart data is being fetched, before it replaces chartDataProvider
+    private volatile ChartDataProvider fetchingChartDataProvider;
+    // set after chart data provider for new pairs replaced the previous one during refresh, until ticker provider for
+    //  new pairs connects
+    private volatile boolean chartDataProviderWaitingForTickerProvider = false;
     private ChartDataProvider chartDataProviderInitEngine;
-    private RelativeChangesChecker relativeChangesChecker;
+    private volatile RelativeChangesChecker relativeChangesChecker;
+    // PriceChanges last returned by requestAllPairsChanges() for every pair
+    private final Map<String, PairChangesCacheEntry> pairChangesCache = new ConcurrentHashMap<>();
     private final CryptonoseEngineChangesChecker cryptonoseEngineChangesChecker;
     private final ScheduledExecutorService scheduledExecutorService;
     private ScheduledFuture<?> refreshScheduledFuture;
-    private final Set<String> changesCheckingTempDisableSet = Collections.synchronizedSet(new HashSet<>());
+    private volatile DelayedChecksWheel delayedChecksWheel;
+    private CandleCache candleCache = null;
+    private boolean progressiveStart = false;
+    private boolean sendChangesAfterInit = true;
+    // set while fetching chart data in progressive start
+    private volatile boolean progressiveStartInProgress = false;
+    // in progressive start, tickers (by pair) received before chart data of their pair is fetched, they are inserted to
+    //  chart data provider after chart data of the pair is fetched, null when tickers aren't buffered
+    private Map<String, List<Ticker>> chartDataTickersBuffer = null;
+    // chart data provider for tickers of pairs for which chart data is already fetched while tickers are buffered
+    private ChartDataProvider chartDataTickersBufferProvider = null;
+    private final Object chartDataTickersBufferLock = new Object();
+    // pairs for which initial tickers from lower period chart data were inserted
+    private final Set<String> initTickersPairs = ConcurrentHashMap.newKeySet();
+    private Path snapshotFile = null;
+    private int snapshotIntervalSeconds;
+    // snapshot restored at start, used until initial pairs data is fetched
+    private volatile EngineSnapshot restoredSnapshot = null;
+    private PairStripedExecutor ingestionExecutor;
+    private volatile EngineClock clock = EngineClock.SYSTEM;
+    private Path tickerJournalDirectory = null;
+    private int tickerJournalSegmentRecords;
+    private volatile TickerJournal tickerJournal = null;
+    private EngineMetrics metrics = null;
+    private ObjectName metricsMBeanName = null;
 
 
     private final ReentrantLock fetchPairDataLock = new ReentrantLock();
     private final ReentrantLock startTickerEngineLock = new ReentrantLock();
+    private final ReentrantLock saveSnapshotLock = new ReentrantLock();
     // is refreshing (reconnecting when connection was previously active)
     private final AtomicBoolean isRefreshing = new AtomicBoolean(false);
     // ticker connection is initiated, waiting to get CONNECTED state
@@ -109,11 +168,14 @@ public class CryptonoseGenericEngine {
         if (timePeriods.length < 1)
             throw new IllegalArgumentException("empty timePeriods");
         this.exchangeSpecs = exchangeSpecs;
-        pairSymbolConverter = exchangeSpecs.getPairSymbolConverter();
+        // there are no exchange specs when replaying recorded tickers
+        pairSymbolConverter = exchangeSpecs != null ? exchangeSpecs.getPairSymbolConverter() : null;
         periodsNumCandles = Arrays.stream(timePeriods).mapToObj(timePeriod -> new PeriodNumCandles(timePeriod, relativeChangeNumCandles)).collect(Collectors.toList());
         this.relativeChangeNumCandles=relativeChangeNumCandles;
         this.engineChangesReceiver=engineChangesReceiver;
+        this.timePeriods = timePeriods;
         cryptonoseEngineChangesChecker = new CryptonoseEngineChangesChecker(timePeriods);
+        priceExtremesThreadLocal = ThreadLocal.withInitial(cryptonoseEngineChangesChecker::createPriceExtremes);
         this.pairSelectionCriteria=pairSelectionCriteria;
         if (pairs != null) {
             this.pairsManualSet = new HashSet<>(Arrays.asList(pairs));
@@ -144,11 +206,18 @@ public class CryptonoseGenericEngine {
         return new CryptonoseGenericEngine(exchangeSpecs,engineChangesReceiver,timePeriods,relativeChangeNumCandles,pairSelectionCriteria,pairs,blacklistPairs);
     }
 
+    // engine for replaying recorded tickers and candles of given pairs (without connecting to an exchange), see replay() and replayTickerJournal()
+    public static CryptonoseGenericEngine forReplay(EngineChangesReceiver engineChangesReceiver, long[] timePeriods, int relativeChangeNumCandles, String[] pairs) {
+        return new CryptonoseGenericEngine(null,engineChangesReceiver,timePeriods,relativeChangeNumCandles,null,pairs,null);
+    }
+
     public static ChartTimePeriod[] getAvailableTimePeriods(ExchangeSpecs exchangeSpecs) {
         return ChartDataProvider.getAvailableTimePeriods(exchangeSpecs);
     };
 
     public void setEngineMessageReceiver(EngineMessageReceiver engineMessageReceiver) {
+        if (engineMessageQueue != null)
+            engineMessageQueue.shutdown();
         engineMessageQueue= new EngineMessageQueue(engineMessageReceiver);
     }
 
@@ -156,8 +225,182 @@ public class CryptonoseGenericEngine {
         this.engineUpdateHeartbeatReceiver = engineUpdateHeartbeatReceiver;
     }
 
+    // check changes for a pair checkChangesDelayMs after receiving tickers (instead of immediately),
+    //  tickers received in the meantime are checked together
+    // may be called when engine is running, new delay is used for tickers received after the call (pairs waiting for
+    //  check are checked after the new delay, or immediately if it's 0)
     public void setCheckChangesDelayMs(int checkChangesDelayMs) {
         this.checkChangesDelayMs = checkChangesDelayMs;
+        if (started.get())
+            replaceDelayedChecksWheel();
+    }
+
+    // tickers received from ticker provider are inserted and checked for changes using given number of threads,
+    //  tickers for the same pair are always handled by the same thread (in order of receiving)
+    // by default (or when numThreads is 0) tickers are handled on ticker provider thread
+    // every thread has a queue of DEFAULT_INGESTION_QUEUE_CAPACITY tasks, ticker provider thread waits when it's full
+    // should be called before starting engine
+    public void setIngestionThreads(int numThreads) {
+        setIngestionThreads(numThreads, DEFAULT_INGESTION_QUEUE_CAPACITY, EngineChangesDispatcher.OverflowPolicy.BLOCK);
+    }
+
+    // the same as setIngestionThreads(int), queueCapacity is max number of tasks (tickers of a pair or delayed check)
+    //  waiting for every thread, when a queue is full: BLOCK - ticker provider thread waits, DROP_OLDEST - the oldest task is
+    //  dropped (see getDroppedIngestionCount()), LATEST_PER_PAIR isn't supported
+    // should be called before starting engine
+    public void setIngestionThreads(int numThreads, int queueCapacity, EngineChangesDispatcher.OverflowPolicy overflowPolicy) {
+        if (started.get())
+            throw new RuntimeException("Should be called before starting engine");
+        if (numThreads < 0)
+            throw new IllegalArgumentException("numThreads should not be negative");
+        if (queueCapacity < 1)
+            throw new IllegalArgumentException("queueCapacity should be positive");
+        if (overflowPolicy == EngineChangesDispatcher.OverflowPolicy.LATEST_PER_PAIR)
+            throw new IllegalArgumentException("LATEST_PER_PAIR policy isn't supported for ingestion");
+        this.ingestionThreads = numThreads;
+        this.ingestionQueueCapacity = queueCapacity;
+        this.ingestionOverflowPolicy = overflowPolicy;
+    }
+
+    // number of ingestion tasks dropped because ingestion queue was full (see setIngestionThreads())
+    public long getDroppedIngestionCount() {
+        return ingestionExecutor != null ? ingestionExecutor.getDroppedCount() : 0;
+    }
+
+    // send only price changes crossing thresholds of the filter, see EngineChangesFilter
+    // should be called before starting engine, thresholds of the filter may be set until starting engine
+    public void setChangesFilter(EngineChangesFilter engineChangesFilter) {
+        if (started.get())
+            throw new RuntimeException("Should be called before starting engine");
+        this.engineChangesFilter = engineChangesFilter;
+    }
+
+    // send only time periods for which price extremes (min, max, max after min, min after max) or relative changes data
+    //  changed since they were last sent; with sendLastPriceUpdates, periods are sent also when only last price changed
+    // should be called before starting engine
+    public void enableDeltaChanges(boolean sendLastPriceUpdates) {
+        if (started.get())
+            throw new RuntimeException("Should be called before starting engine");
+        changesDeltaTracker = new ChangesDeltaTracker(timePeriods.length, sendLastPriceUpdates);
+    }
+
+    // deliver price changes to EngineChangesReceiver on numThreads dedicated threads instead of ticker provider thread,
+    //  capacity is max number of changes lists waiting for delivery, see EngineChangesDispatcher
+    // should be called before starting engine
+    public void setChangesDispatch(int capacity, EngineChangesDispatcher.OverflowPolicy overflowPolicy, int numThreads) {
+        if (started.get())
+            throw new RuntimeException("Should be called before starting engine");
+        if (engineChangesDispatcher != null)
+            throw new IllegalStateException("Changes dispatch is already set");
+        engineChangesDispatcher = new EngineChangesDispatcher(engineChangesReceiver, capacity, overflowPolicy, numThreads);
+        engineChangesReceiver = engineChangesDispatcher;
+    }
+
+    // number of price changes lists dropped by changes dispatch (see setChangesDispatch())
+    public long getDroppedChangesCount() {
+        return engineChangesDispatcher != null ? engineChangesDispatcher.getDroppedCount() : 0;
+    }
+
+    // number of price changes lists coalesced by changes dispatch (see setChangesDispatch())
+    public long getCoalescedChangesCount() {
+        return engineChangesDispatcher != null ? engineChangesDispatcher.getCoalescedCount() : 0;
+    }
+
+    // tickers older than fullResolutionSeconds are reduced to min and max price of every bucketSeconds,
+    //  which bounds memory used for long time periods, see CryptonoseEngineChangesChecker.enableDownsampling()
+    // should be called before starting engine
+    public void enableTickersDownsampling(int bucketSeconds, int fullResolutionSeconds) {
+        if (started.get())
+            throw new RuntimeException("Should be called before starting engine");
+        cryptonoseEngineChangesChecker.enableDownsampling(bucketSeconds, fullResolutionSeconds);
+    }
+
+    // when initializing engine with lower period chart data (see enableInitEngineWithLowerPeriodChartData()),
+    //  send changes for all pairs in one list after loading initial tickers (true by default)
+    public void setSendChangesAfterInit(boolean sendChangesAfterInit) {
+        if (started.get())
+            throw new RuntimeException("Should be called before starting engine");
+        this.sendChangesAfterInit = sendChangesAfterInit;
+    }
+
+    // Connect ticker provider right after selecting pairs, before fetching chart data. Chart data is fetched in batches of
+    //  PROGRESSIVE_START_BATCH_SIZE pairs, changes for a pair are sent as soon as relative changes data for all time periods
+    //  of the pair is ready (and initial tickers if enableInitEngineWithLowerPeriodChartData() is used), tickers received
+    //  before are used for calculating changes. Tickers of a pair received before its chart data is fetched are used for
+    //  generating candles after it's fetched.
+    // CONNECTED message is sent when ticker provider connects, which is before fetching chart data is finished.
+    public void enableProgressiveStart() {
+        if (started.get())
+            throw new RuntimeException("Should be called before starting engine");
+        progressiveStart = true;
+    }
+
+    // Store chart candles of engine time periods in directory (separately for every exchange), so on start and refresh
+    //  only candles newer than stored ones are fetched from the exchange. Relative changes, getCandleData() and
+    //  requestCandlesGeneration() use stored candles merged with fetched ones. Subscribers of subscribeChartData()
+    //  receive only fetched candles (for engine time periods), use getCandleData() to get all of them.
+    public void enableCandleCache(Path directory) {
+        if (started.get())
+            throw new RuntimeException("Should be called before starting engine");
+        candleCache = new CandleCache(directory, exchangeSpecs.getClass().getSimpleName(), timePeriods, relativeChangeNumCandles);
+    }
+
+    // Periodically (and when stopping the engine) save tickers and relative changes data to snapshotFile.
+    // When starting the engine, state is restored from the file if it was saved within the longest time period,
+    //  so only chart data since saving has to be fetched to initialize tickers (see enableInitEngineWithLowerPeriodChartData())
+    //  and changes are available right after connecting.
+    public void enableSnapshots(Path snapshotFile, int intervalSeconds) {
+        if (started.get())
+            throw new RuntimeException("Should be called before starting engine");
+        if (intervalSeconds <= 0)
+            throw new IllegalArgumentException("intervalSeconds should be positive");
+        this.snapshotFile = snapshotFile;
+        this.snapshotIntervalSeconds = intervalSeconds;
+    }
+
+    // Source of current time (used for initial tickers, candle cache and snapshots), system time by default.
+    // replay() and replayTickerJournal() set the clock to replay time.
+    // should be called before starting engine
+    public void setClock(EngineClock clock) {
+        if (started.get())
+            throw new RuntimeException("Should be called before starting engine");
+        this.clock = clock;
+    }
+
+    // current time of the engine clock, see setClock(), may be used with PriceChanges.getPriceChangeAgeSeconds(long)
+    public long currentTimeSeconds() {
+        return clock.currentTimeSeconds();
+    }
+
+    // Record every ticker received from ticker provider (pair, price, exchange timestamp and receive timestamp) to append-only
+    //  journal in directory, segments of segmentRecords records are memory mapped, so writing is a few memory writes per ticker.
+    // Use TickerJournalReader to read the journal, or replayTickerJournal() to replay it.
+    // should be called before starting engine
+    public void enableTickerJournal(Path directory, int segmentRecords) {
+        if (started.get())
+            throw new RuntimeException("Should be called before starting engine");
+        if (segmentRecords <= 0)
+            throw new IllegalArgumentException("segmentRecords should be positive");
+        this.tickerJournalDirectory = directory;
+        this.tickerJournalSegmentRecords = segmentRecords;
+    }
+
+    // Measure durations of engine stages (handling received tickers, inserting tickers, checking changes, setting relative
+    //  changes, calling changes receiver, fetching chart data), tickers rates and queues sizes, see EngineMetrics.
+    // Metrics are registered as MBean (pl.dmotyka.cryptonoseengine:type=CryptonoseGenericEngine) when engine is started.
+    // should be called before starting engine
+    public void enableMetrics() {
+        if (started.get())
+            throw new RuntimeException("Should be called before starting engine");
+        metrics = new EngineMetrics(exchangeSpecs != null ? exchangeSpecs.getClass().getSimpleName() : "replay",
+                () -> engineMessageQueue != null ? engineMessageQueue.size() : 0,
+                () -> delayedChecksWheel != null ? delayedChecksWheel.getPendingCount() : 0,
+                () -> engineChangesDispatcher != null ? engineChangesDispatcher.getQueueSize() : 0);
+    }
+
+    // metrics of the engine, null if metrics aren't enabled (see enableMetrics())
+    public EngineMetrics getMetrics() {
+        return metrics;
     }
 
     // should be called before starting engine
@@ -184,23 +427,116 @@ public class CryptonoseGenericEngine {
     // start the engine
     // call only once, use reconnect() for reconnections
     public void start() {
+        if (exchangeSpecs == null)
+            throw new IllegalStateException("Engine created with forReplay() should be started with replay() or replayTickerJournal()");
         if (started.getAndSet(true))
             throw new IllegalStateException("Engine can be started once");
         if ((pairSelectionCriteria == null || pairSelectionCriteria.length==0) && pairsManualSet.size()==0) {
             engineMessage(new EngineMessage(EngineMessage.Type.NO_PAIRS, "Got 0 currency pairs"));
             return;
         }
+        if (engineChangesFilter != null)
+            engineChangesFilter.init(timePeriods);
+        if (ingestionThreads > 0)
+            ingestionExecutor = new PairStripedExecutor(ingestionThreads, ingestionQueueCapacity, ingestionOverflowPolicy);
+        if (checkChangesDelayMs > 0)
+            replaceDelayedChecksWheel();
+        if (tickerJournalDirectory != null)
+            openTickerJournal();
+        if (metrics != null)
+            registerMetricsMBean();
         engineMessage(new EngineMessage(EngineMessage.Type.CONNECTING, "Connecting..."));
-        if (fetchPairsData())
+        if (snapshotFile != null)
+            restoreSnapshot();
+        if (progressiveStart) {
+            // tickers are received (and inserted to changes checker) while chart data is fetched,
+            //  changes for pair are sent when its chart data is ready, see isPairReady()
+            progressiveStartInProgress = true;
+            if (fetchPairsData(true, false, null)) {
+                startBufferingChartDataTickers(pairsAll);
+                if (startTickerProvider())
+                    fetchPairsData(false, true, null);
+                stopBufferingChartDataTickers();
+            }
+            progressiveStartInProgress = false;
+        } else if (fetchPairsData()) {
             startTickerProvider();
+        }
+        restoredSnapshot = null;
+        if (snapshotFile != null && !stopped.get())
+            scheduledExecutorService.scheduleWithFixedDelay(this::saveSnapshot, snapshotIntervalSeconds, snapshotIntervalSeconds, TimeUnit.SECONDS);
         if (refreshIntervalMinutes != null && !stopped.get()) {
-            refreshScheduledFuture = scheduledExecutorService.scheduleWithFixedDelay(() -> {
-                engineMessage(new EngineMessage(EngineMessage.Type.AUTO_REFRESHING, "Auto refreshing paris data..."));
-                refresh(false, true);
-            }, refreshIntervalMinutes, refreshIntervalMinutes, TimeUnit.MINUTES);
+            refreshScheduledFuture = scheduledExecutorService.scheduleWithFixedDelay(this::autoRefresh, refreshIntervalMinutes, refreshIntervalMinutes, TimeUnit.MINUTES);
+        }
+    }
+
+    // Replay recorded tickers (and candles for relative changes, candlesFile may be null) on calling thread, see EngineReplay
+    //  for files format. Tickers go through the same path as tickers from ticker provider and engine clock is set to timestamp
+    //  of replayed tickers, so changes sent to receiver are the same for every replay of the same files.
+    // speed - 0 to replay as fast as possible, otherwise waiting between tickers is (difference of timestamps) / speed,
+    //  1 is real time speed
+    // Engine should be created with forReplay(). Delayed changes checks (setCheckChangesDelayMs()) depend on system time
+    //  and can't be used. Call stop() after replay to shut down dispatch threads if used.
+    public void replay(Path tickersFile, Path candlesFile, double speed) throws IOException, InterruptedException {
+        AtomicLong replayTimeMillis = startReplay(speed);
+        try (EngineReplay engineReplay = new EngineReplay(tickersFile, candlesFile)) {
+            replay(engineReplay, speed, replayTimeMillis);
         }
     }
 
+    // Replay tickers recorded by ticker journal (see enableTickerJournal()) in journalDirectory, the same as replay(), but
+    //  tickers are replayed in batches in which they were received and engine clock is set to their receive time.
+    public void replayTickerJournal(Path journalDirectory, Path candlesFile, double speed) throws IOException, InterruptedException {
+        AtomicLong replayTimeMillis = startReplay(speed);
+        try (EngineReplay engineReplay = EngineReplay.fromTickerJournal(journalDirectory, candlesFile)) {
+            replay(engineReplay, speed, replayTimeMillis);
+        }
+    }
+
+    // returns replay time used as engine clock
+    private AtomicLong startReplay(double speed) {
+        if (checkChangesDelayMs > 0)
+            throw new IllegalStateException("Delayed changes checks can't be used in replay");
+        if (speed < 0)
+            throw new IllegalArgumentException("speed should not be negative");
+        startWithoutExchange();
+        AtomicLong replayTimeMillis = new AtomicLong();
+        clock = replayTimeMillis::get;
+        return replayTimeMillis;
+    }
+
+    private void replay(EngineReplay engineReplay, double speed, AtomicLong replayTimeMillis) throws IOException, InterruptedException {
+        Ticker[] tickers;
+        long previousTimeMillis = -1;
+        while ((tickers = engineReplay.nextBatch()) != null) {
+            long timeMillis = engineReplay.getBatchTimeMillis();
+            if (speed > 0 && previousTimeMillis >= 0 && timeMillis > previousTimeMillis)
+                Thread.sleep((long)((timeMillis - previousTimeMillis) / speed));
+            previousTimeMillis = timeMillis;
+            replayTimeMillis.set(timeMillis);
+            Map<CurrencyPairTimePeriod,ChartCandle[]> closedCandles = engineReplay.closedCandles(Math.floorDiv(timeMillis, 1000));
+            if (!closedCandles.isEmpty())
+                relativeChangesChecker.updateCandles(closedCandles);
+            // as init tickers, because there is no chart data provider, and to handle them on calling thread
+            handleTickers(tickers, true);
+        }
+    }
+
+    // provided pairs are used without checking them on exchange, relative changes are calculated from candles given by caller
+    private void startWithoutExchange() {
+        if (exchangeSpecs != null)
+            throw new IllegalStateException("Engine should be created with forReplay()");
+        if (started.getAndSet(true))
+            throw new IllegalStateException("Engine can be started once");
+        setPairsAll(pairsManualSet.stream().sorted().toArray(String[]::new));
+        if (engineChangesFilter != null)
+            engineChangesFilter.init(timePeriods);
+        relativeChangesChecker = new RelativeChangesChecker(pairsAll, timePeriods, relativeChangeNumCandles);
+        relativeChangesChecker.setUseWeightedHighLowDiff();
+        if (metrics != null)
+            registerMetricsMBean();
+    }
+
     // stop the engine
     // call only once, use reconnect() for reconnections
     public void stop() {
@@ -211,6 +547,19 @@ public class CryptonoseGenericEngine {
         stopFetchPairsData();
         stopTickerEngine();
         scheduledExecutorService.shutdownNow();
+        if (snapshotFile != null && startedAndConnected.get())
+            saveSnapshot();
+        if (ingestionExecutor != null)
+            ingestionExecutor.shutdown();
+        if (tickerJournal != null)
+            tickerJournal.close();
+        if (engineChangesDispatcher != null)
+            engineChangesDispatcher.shutdown();
+        replaceDelayedChecksWheel();
+        if (engineMessageQueue != null)
+            engineMessageQueue.shutdown();
+        if (metricsMBeanName != null)
+            unregisterMetricsMBean();
     }
 
     // get all currency pairs (will return null if engine is before getting pairs data)
@@ -226,41 +575,122 @@ public class CryptonoseGenericEngine {
     // request the up-to-date chart candles for specified criteria
     public ChartCandle[] requestCandlesGeneration(CurrencyPairTimePeriod currencyPairTimePeriod) throws IllegalArgumentException {
         if(chartDataProvider!=null)
-            return chartDataProvider.requestCandlesGeneration(currencyPairTimePeriod);
+            return mergeWithCachedCandles(currencyPairTimePeriod, chartDataProvider.requestCandlesGeneration(currencyPairTimePeriod));
         else return null;
     }
 
     // get chart candles for specified criteria
     // it will not include the most recent candle which isn't closed yet
     public ChartCandle[] getCandleData(CurrencyPairTimePeriod currencyPairTimePeriod) {
-        return chartDataProvider.getCandleData(currencyPairTimePeriod);
+        return mergeWithCachedCandles(currencyPairTimePeriod, chartDataProvider.getCandleData(currencyPairTimePeriod));
+    }
+
+    // merged in memory only, candles are stored in cache only when received from chart data provider subscription
+    private ChartCandle[] mergeWithCachedCandles(CurrencyPairTimePeriod currencyPairTimePeriod, ChartCandle[] chartCandles) {
+        if (candleCache == null)
+            return chartCandles;
+        return candleCache.merge(currencyPairTimePeriod, chartCandles);
     }
 
     // get price changes for all pairs for pairs specified in engine
     // this should be called when engine is connected and working
+    // changes are calculated only for pairs with new tickers or new relative changes data since the previous call,
+    //  PriceChanges of other pairs are the same objects as returned previously (also to other callers), the engine doesn't
+    //  modify PriceChanges after they are returned
     public PriceChanges[] requestAllPairsChanges() {
-        if (pairsAll == null)
+        String[] pairs = pairsAll;
+        if (pairs == null)
             return new PriceChanges[] {};
-        ArrayList<PriceChanges> changesArrayList = new ArrayList<>(pairsAll.length*periodsNumCandles.size());
-        for(String pair : pairsAll) {
-            PriceChanges[] priceChanges = cryptonoseEngineChangesChecker.checkChanges(pair);
-            if(priceChanges==null)
+        RelativeChangesChecker relativeChangesChecker = this.relativeChangesChecker;
+        ArrayList<PriceChanges> changesArrayList = new ArrayList<>(pairs.length*periodsNumCandles.size());
+        for(String pair : pairs) {
+            TickersWindow tickersWindow = cryptonoseEngineChangesChecker.findTickersWindow(pair);
+            if (tickersWindow == null)
                 continue;
-            if(relativeChangesChecker!=null)
-                relativeChangesChecker.setRelativeChanges(priceChanges);
-            changesArrayList.addAll(Arrays.asList(priceChanges));
+            // changes of a pair are created and their relative changes are set by one caller at a time, before they are
+            //  returned
+            PairChangesCacheEntry cacheEntry = pairChangesCache.compute(pair, (p, entry) -> pairChangesCacheEntry(pair, tickersWindow, relativeChangesChecker, entry));
+            if (cacheEntry != null)
+                changesArrayList.addAll(Arrays.asList(cacheEntry.priceChanges));
         }
         return changesArrayList.toArray(new PriceChanges[0]);
     }
 
+    // returns cacheEntry if there are no new tickers and relative changes data for the pair, otherwise new entry with new
+    //  PriceChanges (PriceChanges cached in tickers window may be already returned for the previous entry)
+    private PairChangesCacheEntry pairChangesCacheEntry(String pair, TickersWindow tickersWindow, RelativeChangesChecker relativeChangesChecker, PairChangesCacheEntry cacheEntry) {
+        int pairId = relativeChangesChecker != null ? relativeChangesChecker.getPairId(pair, tickersWindow) : -1;
+        boolean forceNew = cacheEntry == null || !cacheEntry.sameRelativeChangesInfo(relativeChangesChecker, pairId);
+        PriceChanges[] priceChanges = cryptonoseEngineChangesChecker.checkChangesCached(pair, tickersWindow, forceNew);
+        if (priceChanges == null)
+            return null;
+        if (!forceNew && cacheEntry.priceChanges == priceChanges)
+            return cacheEntry;
+        PairChangesCacheEntry newCacheEntry = new PairChangesCacheEntry(priceChanges, relativeChangesChecker, pairId, timePeriods.length);
+        newCacheEntry.setRelativeChanges();
+        return newCacheEntry;
+    }
+
+    // fill batch with price changes for all pairs, the same as returned by requestAllPairsChanges(),
+    //  batch is cleared first and may be reused for consecutive calls to avoid creating objects for every pair and period
+    // this should be called when engine is connected and working
+    public PriceChangesBatch requestAllPairsChanges(PriceChangesBatch batch) {
+        String[] pairs = pairsAll;
+        batch.clear(pairs != null ? pairs : new String[0]);
+        if (pairs == null)
+            return batch;
+        RelativeChangesChecker relativeChangesChecker = this.relativeChangesChecker;
+        PriceExtremes priceExtremes = priceExtremesThreadLocal.get();
+        for (int pairId = 0; pairId < pairs.length; pairId++) {
+            TickersWindow tickersWindow = cryptonoseEngineChangesChecker.findTickersWindow(pairs[pairId]);
+            if (tickersWindow == null || !cryptonoseEngineChangesChecker.checkExtremes(tickersWindow, priceExtremes))
+                continue;
+            int relativeChangesPairId = relativeChangesChecker != null ? relativeChangesChecker.getPairId(pairs[pairId], tickersWindow) : -1;
+            for (int i = 0; i < priceExtremes.numPeriods(); i++) {
+                if (!priceExtremes.valid[i])
+                    continue;
+                RelativeChangesInfo relativeChangesInfo = relativeChangesChecker != null ? relativeChangesChecker.getRelativeChangesInfo(relativeChangesPairId, i) : null;
+                batch.add(pairId, priceExtremes, i, relativeChangesInfo);
+            }
+        }
+        return batch;
+    }
+
+    // Refresh only if selected pairs changed, otherwise ticker provider, chart data and tickers are kept.
+    // When refreshing, the selected pairs are used (they aren't selected again). Tickers of pairs which are still selected are
+    //  kept, state of removed pairs is dropped. Refresh isn't incremental, see refresh().
+    private void autoRefresh() {
+        String[] selectedPairs = null;
+        if (pairSelectionCriteria != null && pairsAll != null) {
+            try {
+                Set<String> currentPairs = new HashSet<>(Arrays.asList(pairsAll));
+                selectedPairs = selectPairs();
+                Set<String> selectedPairsSet = new HashSet<>(Arrays.asList(selectedPairs));
+                if (selectedPairsSet.equals(currentPairs)) {
+                    logger.info("selected pairs didn't change, skipping auto refresh");
+                    return;
+                }
+                long numAdded = selectedPairsSet.stream().filter(pair -> !currentPairs.contains(pair)).count();
+                long numRemoved = currentPairs.stream().filter(pair -> !selectedPairsSet.contains(pair)).count();
+                logger.info(String.format("selected pairs changed (%d added, %d removed)", numAdded, numRemoved));
+            } catch (ExchangeCommunicationException | ConnectionProblemException e) {
+                logger.log(Level.WARNING, "when checking selected pairs for auto refresh", e);
+                return;
+            }
+        }
+        engineMessage(new EngineMessage(EngineMessage.Type.AUTO_REFRESHING, "Auto refreshing paris data..."));
+        refresh(false, true, selectedPairs);
+    }
+
     // reconnect the engine
     public void reconnect() {
-        refresh(true, false);
+        refresh(true, false, null);
     }
 
     // stopTickerFirst - stop ticker connection before getting initial pairs data
     // silent - don't send engine "connected" message
-    private void refresh(boolean stopTickerFirst, boolean silent) {
+    // selectedPairs - pairs to use, or null to select pairs
+    private void refresh(boolean stopTickerFirst, boolean silent, String[] selectedPairs) {
         if (!startedAndConnected.get()) {
             logger.warning("engine should be started and connected before reconnecting");
             return;
@@ -274,9 +704,15 @@ public class CryptonoseGenericEngine {
         if (stopTickerFirst)
             stopTickerEngine();
         stopFetchPairsData();
-        if (fetchPairsData()) {
+        // Ticker provider and chart data provider (exchangeutils) take fixed pairs when created, pairs can't be added to or
+        //  removed from them. So also when only some pairs were added, chart data is fetched for all pairs (only missing
+        //  candles if candle cache is enabled) and ticker provider is reconnected for the new pairs. The previous chart data
+        //  provider and relative changes data are used until chart data is fetched.
+        if (fetchPairsData(true, true, selectedPairs)) {
             if (!stopTickerFirst)
                 stopTickerEngine();
+            // after stopping ticker provider, so tickers of removed pairs aren't inserted again
+            retainPairs(new HashSet<>(Arrays.asList(pairsAll)));
             if (!startTickerProvider())
                 isRefreshing.set(false);
         } else {
@@ -287,12 +723,18 @@ public class CryptonoseGenericEngine {
     // get pairs data - pair names and chart candles for them
     // when fetching data is already in progress, method does nothing
     private boolean fetchPairsData() {
+        return fetchPairsData(true, true, null);
+    }
+
+    // selectPairs - get pair names, fetchChartData - get chart data for selected pairs
+    // selectedPairs - pairs already selected by caller (used instead of selecting pairs), may be null
+    private boolean fetchPairsData(boolean selectPairs, boolean fetchChartData, String[] selectedPairs) {
         if (!fetchPairDataLock.tryLock()) {
             logger.warning("fetching pairs data already in progress");
             return false;
         }
         logger.info("getting pairs data");
-        if (pairsManualSet != null && pairsManualSet.size() > 0) {
+        if (selectPairs && selectedPairs == null && pairsManualSet != null && pairsManualSet.size() > 0) {
             logger.info(String.format("checking %d provided pairs", pairsManualSet.size()));
             RepeatTillSuccess.planTask(() -> {
                         Set<String> availableSymbolsSet = new HashSet<>(Arrays.asList(exchangeSpecs.getPairDataProvider().getPairsApiSymbols()));
@@ -303,9 +745,12 @@ public class CryptonoseGenericEngine {
             logger.info(String.format("%d provided pairs left after filtering", pairsManualSet.size()));
         }
         try {
-            if (pairSelectionCriteria != null) {
+            if (selectPairs && pairSelectionCriteria != null) {
                 engineMessage(new EngineMessage(EngineMessage.Type.INFO, "Getting currency pairs..."));
-                RepeatTillSuccess.planTask(this::getPairs, (e) -> logger.log(Level.WARNING, "when getting currency pairs", e), GET_DATA_RETRY_INTERVAL);
+                if (selectedPairs != null)
+                    setPairsAll(selectedPairs);
+                else
+                    RepeatTillSuccess.planTask(this::getPairs, (e) -> logger.log(Level.WARNING, "when getting currency pairs", e), GET_DATA_RETRY_INTERVAL);
                 if (pairsAll.length > 0)
                     engineMessage(new EngineMessage(EngineMessage.Type.INFO, "Got currency pairs"));
                 else {
@@ -313,76 +758,119 @@ public class CryptonoseGenericEngine {
                     return false;
                 }
             }
-            engineMessage(
-                    new EngineMessageSelectedPairs(
-                            EngineMessage.Type.INFO,
-                            String.format("Selected %d pairs: %s",
-                                    pairsAll.length,
-                                    Arrays.stream(pairsAll).
-                                            map(pairSymbolConverter::toFormattedString).
-                                                  collect(Collectors.joining(", "))
-                            ),
-                            pairsAll.length
-                    )
-            );
+            // only provided pairs (filtered above)
+            if (selectPairs && pairSelectionCriteria == null)
+                setPairsAll(pairsManualSet.stream().sorted().toArray(String[]::new));
+            if (selectPairs) {
+                engineMessage(
+                        new EngineMessageSelectedPairs(
+                                EngineMessage.Type.INFO,
+                                String.format("Selected %d pairs: %s",
+                                        pairsAll.length,
+                                        Arrays.stream(pairsAll).
+                                                map(pairSymbolConverter::toFormattedString).
+                                                      collect(Collectors.joining(", "))
+                                ),
+                                pairsAll.length
+                        )
+                );
+            }
             if (stopped.get())
                 return false;
+            if (!fetchChartData)
+                return true;
             engineMessage(new EngineMessage(EngineMessage.Type.INFO, "Getting chart data..."));
-            chartDataProvider = new ChartDataProvider(exchangeSpecs, pairsAll, periodsNumCandles.toArray(new PeriodNumCandles[0]));
-            chartDataProvider.enableCandlesGenerator();
+            // the previous chart data provider and relative changes checker are used until data for new pairs is fetched
+            ChartDataProvider newChartDataProvider = new ChartDataProvider(exchangeSpecs, pairsAll, candleCache != null ? cachedPeriodsNumCandles() : periodsNumCandles.toArray(new PeriodNumCandles[0]));
+            fetchingChartDataProvider = newChartDataProvider;
+            newChartDataProvider.enableCandlesGenerator();
             for (ChartDataReceiver currentChartDataSubscriber : chartDataSubscribers) {
-                chartDataProvider.subscribeChartCandles(currentChartDataSubscriber);
+                newChartDataProvider.subscribeChartCandles(currentChartDataSubscriber);
             }
-            relativeChangesChecker = new RelativeChangesChecker(chartDataProvider, relativeChangeNumCandles);
-            relativeChangesChecker.setUseWeightedHighLowDiff();
-            boolean gettingAdditionalData = false;
-            if (initEngineWithLowerPeriodChartData) {
-                PeriodNumCandles additionalPeriodNumCandles = checkGenTickersFromChartData();
-                if (additionalPeriodNumCandles != null) {
-                    gettingAdditionalData = true;
-                }
+            RelativeChangesChecker newRelativeChangesChecker;
+            if (candleCache == null) {
+                newRelativeChangesChecker = new RelativeChangesChecker(newChartDataProvider, pairsAll, timePeriods, relativeChangeNumCandles);
+            } else {
+                newRelativeChangesChecker = new RelativeChangesChecker(pairsAll, timePeriods, relativeChangeNumCandles);
+                newChartDataProvider.subscribeChartCandles(chartCandlesMap -> newRelativeChangesChecker.updateCandles(candleCache.mergeAndStore(chartCandlesMap, clock.currentTimeSeconds())));
             }
-            boolean finalGettingAdditionalData = gettingAdditionalData;
-            ChartDataProvider.RefreshDataProgressReceiver progressReceiver = progress -> {
-                // getting additional data is included in progress calculation
-                if (finalGettingAdditionalData) {
-                    progress = progress * periodsNumCandles.size() / (periodsNumCandles.size() + 1);
-                }
-                engineMessage(new EngineMessageConnectionProgress(EngineMessage.Type.INFO, String.format("Connection progress: %.1f", progress), progress));
-            };
-            RepeatTillSuccess.planTask(() -> chartDataProvider.refreshData(pairsAll, progressReceiver), (e) -> {
-                engineMessage(new EngineMessage(EngineMessage.Type.INFO, "Error getting chart data"));
-                logger.log(Level.WARNING, "when getting chart data", e);
-            }, GET_DATA_RETRY_INTERVAL);
-            if (stopped.get())
-                return false;
-            engineMessage(new EngineMessage(EngineMessage.Type.INFO, "Successfully fetched chart data"));
-            if (initEngineWithLowerPeriodChartData) {
-                PeriodNumCandles additionalPeriodNumCandles = checkGenTickersFromChartData();
+            if (restoredSnapshot != null)
+                restoredSnapshot.restoreRelativeChangesInfo(newRelativeChangesChecker);
+            newRelativeChangesChecker.setUseWeightedHighLowDiff();
+            // in progressive start changes of a pair are sent as soon as its relative changes data is fetched
+            if (progressiveStartInProgress) {
+                relativeChangesChecker = newRelativeChangesChecker;
+                pairChangesCache.clear();
+            }
+            initTickersPairs.clear();
+            PeriodNumCandles additionalPeriodNumCandles = initEngineWithLowerPeriodChartData ? checkGenTickersFromChartData() : null;
+            if (additionalPeriodNumCandles != null) {
+                chartDataProviderInitEngine = new ChartDataProvider(exchangeSpecs, pairsAll, new PeriodNumCandles[] {additionalPeriodNumCandles});
+                chartDataProviderInitEngine.subscribeChartCandles(this::handleAdditionalChartData);
+            } else if (initEngineWithLowerPeriodChartData) {
+                logger.fine("using lowest period chart data as tickers");
+            }
+            // in progressive start chart data is fetched in batches of pairs, changes of pairs from a batch are sent when
+            //  data of the batch is fetched
+            String[][] pairsBatches = progressiveStartInProgress ? batches(pairsAll, PROGRESSIVE_START_BATCH_SIZE) : new String[][] {pairsAll};
+            // getting additional data is included in progress calculation
+            int progressParts = periodsNumCandles.size() + (additionalPeriodNumCandles != null ? 1 : 0);
+            long chartRefreshNanos = 0;
+            for (int i = 0; i < pairsBatches.length; i++) {
+                String[] pairsBatch = pairsBatches[i];
+                double batchProgressStart = 100.0 * i / pairsBatches.length;
+                double batchProgressLength = 100.0 / pairsBatches.length;
+                ChartDataProvider.RefreshDataProgressReceiver progressReceiver = progress -> {
+                    progress = batchProgressStart + progress * batchProgressLength / 100 * periodsNumCandles.size() / progressParts;
+                    engineMessage(new EngineMessageConnectionProgress(EngineMessage.Type.INFO, String.format("Connection progress: %.1f", progress), progress));
+                };
+                long chartRefreshStartNanos = System.nanoTime();
+                RepeatTillSuccess.planTask(() -> newChartDataProvider.refreshData(pairsBatch, progressReceiver), (e) -> {
+                    engineMessage(new EngineMessage(EngineMessage.Type.INFO, "Error getting chart data"));
+                    logger.log(Level.WARNING, "when getting chart data", e);
+                }, GET_DATA_RETRY_INTERVAL);
+                chartRefreshNanos += System.nanoTime() - chartRefreshStartNanos;
+                if (stopped.get())
+                    return false;
+                if (progressiveStartInProgress)
+                    insertBufferedChartDataTickers(newChartDataProvider, pairsBatch);
+                if (i == pairsBatches.length - 1)
+                    engineMessage(new EngineMessage(EngineMessage.Type.INFO, "Successfully fetched chart data"));
                 if (additionalPeriodNumCandles != null) {
                     ChartDataProvider.RefreshDataProgressReceiver additionalProgressReceiver = progress -> {
                         // progress from getting standard data is summed with progress for additional data
-                        progress = progress / (periodsNumCandles.size() + 1) + 100 * ((double)periodsNumCandles.size() / (periodsNumCandles.size() + 1));
+                        progress = batchProgressStart + batchProgressLength * (progress / 100 + periodsNumCandles.size()) / progressParts;
                         engineMessage(new EngineMessageConnectionProgress(EngineMessage.Type.INFO, String.format("Connection progress: %.1f", progress), progress));
                     };
-                    engineMessage(new EngineMessage(EngineMessage.Type.INFO, "Getting additional chart data..."));
-                    chartDataProviderInitEngine = new ChartDataProvider(exchangeSpecs, pairsAll, new PeriodNumCandles[] {additionalPeriodNumCandles});
-                    chartDataProviderInitEngine.subscribeChartCandles(this::handleAdditionalChartData);
-                    RepeatTillSuccess.planTask(() -> chartDataProviderInitEngine.refreshData(additionalProgressReceiver), (e) -> {
+                    if (i == 0)
+                        engineMessage(new EngineMessage(EngineMessage.Type.INFO, "Getting additional chart data..."));
+                    RepeatTillSuccess.planTask(() -> chartDataProviderInitEngine.refreshData(pairsBatch, additionalProgressReceiver), (e) -> {
                         engineMessage(new EngineMessage(EngineMessage.Type.INFO, "Error getting additional chart data"));
                         logger.log(Level.WARNING, "when getting chart data", e);
                     }, GET_DATA_RETRY_INTERVAL);
-                } else {
-                    logger.fine("using lowest period chart data as tickers");
-                    useLowestPeriodCandlesAsTickers();
+                } else if (initEngineWithLowerPeriodChartData) {
+                    useLowestPeriodCandlesAsTickers(newChartDataProvider, pairsBatch);
                 }
                 if (stopped.get())
                     return false;
+            }
+            if (metrics != null)
+                metrics.chartRefresh.record(chartRefreshNanos);
+            // tickers from ticker provider for the previous pairs aren't inserted to the new chart data provider (until
+            //  ticker provider for new pairs is connected)
+            if (isRefreshing.get())
+                chartDataProviderWaitingForTickerProvider = true;
+            chartDataProvider = newChartDataProvider;
+            relativeChangesChecker = newRelativeChangesChecker;
+            pairChangesCache.clear();
+            if (initEngineWithLowerPeriodChartData) {
+                sendChangesAfterInit();
                 engineMessage(new EngineMessage(EngineMessage.Type.INFO, "Successfully fetched additional chart data"));
             }
             return true;
         }
         finally {
+            fetchingChartDataProvider = null;
             fetchPairDataLock.unlock();
         }
     }
@@ -404,12 +892,12 @@ public class CryptonoseGenericEngine {
             tickerProvider = exchangeSpecs.getTickerProvider(new TickerReceiver() {
                 @Override
                 public void receiveTicker(Ticker ticker) {
-                    handleTicker(ticker, false);
+                    handleProviderTicker(ticker);
                 }
 
                 @Override
                 public void receiveTickers(Ticker[] tickers) {
-                    handleTickers(tickers, false);
+                    handleProviderTickers(tickers);
                 }
 
                 @Override
@@ -423,6 +911,7 @@ public class CryptonoseGenericEngine {
                         case CONNECTED:
                             logger.info("ticker provider state: CONNECTED");
                             logger.fine(String.format("state: refreshing: %b, waiting ticker: %b", isRefreshing.get(), isWaitingForTickerConnection.get()));
+                            chartDataProviderWaitingForTickerProvider = false;
                             if (isRefreshing.get() && isWaitingForTickerConnection.get()) {
                                 isRefreshing.set(false);
                                 engineMessage(new EngineMessage(EngineMessage.Type.AUTO_REFRESHING_DONE, "Engine refresh done"));
@@ -456,9 +945,10 @@ public class CryptonoseGenericEngine {
 
     private void stopFetchPairsData() {
         logger.info("stopping fetching pairs data");
-        if (chartDataProvider != null) {
+        ChartDataProvider fetchingChartDataProvider = this.fetchingChartDataProvider;
+        if (fetchingChartDataProvider != null) {
             logger.fine("aborting ChartDataProvider");
-            chartDataProvider.abort();
+            fetchingChartDataProvider.abort();
         }
         if (chartDataProviderInitEngine != null) {
             logger.fine("aborting ChartDataProviderInitEngine");
@@ -488,13 +978,17 @@ public class CryptonoseGenericEngine {
 
     // get pair names according to criteria specified in pairSelectionCriteria
     private void getPairs() throws ExchangeCommunicationException, ConnectionProblemException {
+        setPairsAll(selectPairs());
+    }
+
+    private String[] selectPairs() throws ExchangeCommunicationException, ConnectionProblemException {
         Set<String> pairsArraySet = new HashSet<>();
         if(pairsManualSet!=null && pairsManualSet.size()>0)
             pairsArraySet.addAll(pairsManualSet);
         PairDataProvider pairDataProvider = exchangeSpecs.getPairDataProvider();
         pairsArraySet.addAll(Arrays.asList(pairDataProvider.getPairsApiSymbols(pairSelectionCriteria)));
         pairsArraySet.removeAll(pairsBlacklistSet);
-        pairsAll=pairsArraySet.toArray(new String[pairsArraySet.size()]);
+        return pairsArraySet.toArray(new String[pairsArraySet.size()]);
     }
 
     // check if for used exchange, lower period chart data (than engine time periods) could be used to generate "tickers"
@@ -509,6 +1003,12 @@ public class CryptonoseGenericEngine {
         double MAX_MULTIPLIER = 1440;
         if(((double)minPeriod)/minAvailableExchangePeriod < MAX_MULTIPLIER && minPeriod!=minAvailableExchangePeriod) {
             int numCandles = (int)(maxPeriod/minAvailableExchangePeriod);
+            // tickers restored from snapshot are used, only candles since saving the snapshot are needed
+            EngineSnapshot snapshot = restoredSnapshot;
+            if (snapshot != null) {
+                long gapSeconds = clock.currentTimeSeconds() - snapshot.getTimestampSeconds();
+                numCandles = (int)Math.min(numCandles, gapSeconds/minAvailableExchangePeriod + 2);
+            }
             return new PeriodNumCandles(minAvailableExchangePeriod,numCandles);
         }
         return null;
@@ -516,30 +1016,92 @@ public class CryptonoseGenericEngine {
 
     // if multiple time intervals are used, use lower intervals chart data to generate "tickers"
     // see handleAdditionalChartData()
-    private void useLowestPeriodCandlesAsTickers() {
+    private void useLowestPeriodCandlesAsTickers(ChartDataProvider chartDataProvider, String[] pairs) {
         long minTimePeriod = periodsNumCandles.stream().mapToLong(PeriodNumCandles::getPeriodSeconds).min().getAsLong();
-        handleAdditionalChartData(chartDataProvider.getAllCandleDataForPeriod(minTimePeriod));
+        Map<CurrencyPairTimePeriod,ChartCandle[]> chartCandlesMap = chartDataProvider.getAllCandleDataForPeriod(minTimePeriod);
+        if (pairs.length < pairsAll.length) {
+            Set<String> pairsSet = new HashSet<>(Arrays.asList(pairs));
+            chartCandlesMap = chartCandlesMap.entrySet().stream().
+                    filter(entry -> pairsSet.contains(entry.getKey().getCurrencyPairSymbol())).
+                    collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+        }
+        handleAdditionalChartData(candleCache != null ? candleCache.merge(chartCandlesMap) : chartCandlesMap);
+    }
+
+    // pairs split to batches of batchSize pairs (the last one may be smaller)
+    private static String[][] batches(String[] pairs, int batchSize) {
+        String[][] batches = new String[(pairs.length + batchSize - 1) / batchSize][];
+        for (int i = 0; i < batches.length; i++)
+            batches[i] = Arrays.copyOfRange(pairs, i * batchSize, Math.min(pairs.length, (i + 1) * batchSize));
+        return batches;
     }
 
     // Uses chart candles of lower periods than engine periods,
-    // converts close prices from lower periods to "tickers" and use them to calculate price changes.
+    // converts open and close prices from lower periods to "tickers" and loads them to changes checker (without checking changes,
+    // see sendChangesAfterInit()).
     // Should be used before starting ticker engine.
     private void handleAdditionalChartData(Map<CurrencyPairTimePeriod,ChartCandle[]> chartCandlesMap) {
         long maxTimePeriod = periodsNumCandles.stream().mapToLong(PeriodNumCandles::getPeriodSeconds).max().getAsLong();
-        chartCandlesMap.entrySet().stream().forEach(entry-> {
+        long minValidTimestamp = clock.currentTimeSeconds() - maxTimePeriod;
+        long[] timestamps = new long[0];
+        double[] prices = new double[0];
+        for (Map.Entry<CurrencyPairTimePeriod,ChartCandle[]> entry : chartCandlesMap.entrySet()) {
             CurrencyPairTimePeriod currencyPairTimePeriod = entry.getKey();
             ChartCandle[] chartCandles = entry.getValue();
-            List<Ticker> tickersList = new ArrayList<>(2 * chartCandles.length);
-            Arrays.stream(chartCandles).forEach(chartCandle -> {
-                int currentTimestampSeconds=(int)(System.currentTimeMillis()/1000);
-                if(chartCandle.getTimestampSeconds()>currentTimestampSeconds-maxTimePeriod) {
-                    tickersList.add(new Ticker(currencyPairTimePeriod.getCurrencyPairSymbol(), chartCandle.getOpen(), chartCandle.getTimestampSeconds()));
-                    tickersList.add(new Ticker(currencyPairTimePeriod.getCurrencyPairSymbol(), chartCandle.getClose(), chartCandle.getTimestampSeconds() + currencyPairTimePeriod.getTimePeriodSeconds()));
+            if (timestamps.length < 2 * chartCandles.length) {
+                timestamps = new long[2 * chartCandles.length];
+                prices = new double[2 * chartCandles.length];
+            }
+            int numTickers = 0;
+            for (ChartCandle chartCandle : chartCandles) {
+                if (chartCandle.getTimestampSeconds() > minValidTimestamp) {
+                    timestamps[numTickers] = chartCandle.getTimestampSeconds();
+                    prices[numTickers++] = chartCandle.getOpen();
+                    timestamps[numTickers] = chartCandle.getTimestampSeconds() + currencyPairTimePeriod.getTimePeriodSeconds();
+                    prices[numTickers++] = chartCandle.getClose();
                 }
-            });
-            if (tickersList.size() > 0)
-                handleTickers(tickersList.toArray(new Ticker[0]), true);
-        });
+            }
+            if (numTickers > 0)
+                cryptonoseEngineChangesChecker.loadTickers(currencyPairTimePeriod.getCurrencyPairSymbol(), timestamps, prices, numTickers);
+            initTickersPairs.add(currencyPairTimePeriod.getCurrencyPairSymbol());
+        }
+    }
+
+    // changes for all pairs are sent in one list after loading initial tickers (if sendChangesAfterInit is set)
+    private void sendChangesAfterInit() {
+        if (!sendChangesAfterInit || pairsAll == null)
+            return;
+        List<PriceChanges> priceChangesList = new ArrayList<>();
+        for (String pair : pairsAll)
+            addChangesForPair(pair, priceChangesList);
+        if (!priceChangesList.isEmpty())
+            sendChanges(priceChangesList);
+    }
+
+    // ticker received from ticker provider
+    private void handleProviderTicker(Ticker ticker) {
+        EngineMetrics metrics = this.metrics;
+        if (metrics == null) {
+            handleTicker(ticker, false);
+            return;
+        }
+        long startNanos = System.nanoTime();
+        metrics.tickerReceived(ticker);
+        handleTicker(ticker, false);
+        metrics.tickerReceive.recordSince(startNanos);
+    }
+
+    // tickers received from ticker provider
+    private void handleProviderTickers(Ticker[] tickers) {
+        EngineMetrics metrics = this.metrics;
+        if (metrics == null) {
+            handleTickers(tickers, false);
+            return;
+        }
+        long startNanos = System.nanoTime();
+        metrics.tickersReceived(tickers);
+        handleTickers(tickers, false);
+        metrics.tickerReceive.recordSince(startNanos);
     }
 
     // isInitTicker - set true for tickers created at initialization (not send by ticker provider),
@@ -547,51 +1109,346 @@ public class CryptonoseGenericEngine {
     private void handleTicker(Ticker ticker, boolean isInitTicker) {
         logger.finest(String.format("received ticker %s",ticker.getPair()));
         if (!isInitTicker) { // chart data provider already has this data
-            if (!isRefreshing.get()) // because provider could have different pairs data during refresh
-                chartDataProvider.insertTicker(ticker);
+            insertTickerToChartData(ticker);
             if (engineUpdateHeartbeatReceiver != null)
                 engineUpdateHeartbeatReceiver.receiveTransactionHeartbeat();
+            if (tickerJournal != null)
+                journalTickers(new Ticker[] {ticker});
+            if (ingestionExecutor != null) {
+                ingestTickersAsync(new Ticker[] {ticker});
+                return;
+            }
         }
-        cryptonoseEngineChangesChecker.insertTicker(ticker);
-        if (checkChangesDelayMs > 0 && !changesCheckingTempDisableSet.contains(ticker.getPair())) {
-            changesCheckingTempDisableSet.add(ticker.getPair());
-            scheduledExecutorService.schedule(() -> {
-                changesCheckingTempDisableSet.remove(ticker.getPair());
-                checkChangesForPair(ticker.getPair());
-            }, checkChangesDelayMs, TimeUnit.MILLISECONDS);
-        } else
-            checkChangesForPair(ticker.getPair());
+        ingestTickers(Collections.singletonList(new Ticker[] {ticker}));
     }
 
-    // Checking changes after inserting multiple tickers FOR ONE CURRENCY PAIR. This is for checking changes after big buys/sells that get split to multiple exchange transactions.
+    // Checking changes after inserting multiple tickers. This is for checking changes after big buys/sells that get split to multiple exchange transactions.
+    // Tickers are grouped by currency pair, changes are checked once for every pair.
     //
     // areInitTickers - set true for tickers created at initialization (not send by ticker provider),
     //  engine update heartbeat wouldn't be sent and tickers wouldn't be sent to chart data provider
     private void handleTickers(Ticker[] tickers, boolean areInitTickers) {
         logger.finest(String.format("received %d tickers",tickers.length));
+        if (tickers.length == 0)
+            return;
+        List<Ticker[]> pairsTickers = CryptonoseEngineChangesChecker.groupByPair(tickers);
         if (!areInitTickers) { // chart data provider already has this data
             for (Ticker ticker : tickers)
-                if (!isRefreshing.get()) // because provider could have different pairs data during refresh
-                    chartDataProvider.insertTicker(ticker);
+                insertTickerToChartData(ticker);
             if (engineUpdateHeartbeatReceiver != null)
                 engineUpdateHeartbeatReceiver.receiveTransactionHeartbeat();
+            if (tickerJournal != null)
+                journalTickers(tickers);
+            if (ingestionExecutor != null) {
+                for (Ticker[] pairTickers : pairsTickers)
+                    ingestTickersAsync(pairTickers);
+                return;
+            }
+        }
+        ingestTickers(pairsTickers);
+    }
+
+    // ticker is used for generating candles of chart data provider
+    private void insertTickerToChartData(Ticker ticker) {
+        ChartDataProvider chartDataProvider = this.chartDataProvider;
+        // there is no chart data provider until chart data is fetched
+        if (chartDataProvider == null)
+            chartDataProvider = bufferChartDataTicker(ticker);
+        if (chartDataProvider != null && !chartDataProviderWaitingForTickerProvider)
+            chartDataProvider.insertTicker(ticker);
+    }
+
+    // in progressive start, ticker is buffered if chart data of its pair isn't fetched yet
+    // returns chart data provider to insert the ticker to, or null if the ticker was buffered or there is no provider
+    private ChartDataProvider bufferChartDataTicker(Ticker ticker) {
+        synchronized (chartDataTickersBufferLock) {
+            // chart data provider is set before buffering is stopped
+            if (chartDataTickersBuffer == null)
+                return chartDataProvider;
+            List<Ticker> pairTickers = chartDataTickersBuffer.get(ticker.getPair());
+            if (pairTickers == null)
+                return chartDataTickersBufferProvider;
+            pairTickers.add(ticker);
+            return null;
+        }
+    }
+
+    // buffer tickers of given pairs until their chart data is fetched, see insertBufferedChartDataTickers()
+    private void startBufferingChartDataTickers(String[] pairs) {
+        synchronized (chartDataTickersBufferLock) {
+            chartDataTickersBuffer = new HashMap<>();
+            for (String pair : pairs)
+                chartDataTickersBuffer.put(pair, new ArrayList<>());
+        }
+    }
+
+    // called after chart data of pairs is fetched by chartDataProvider, buffered tickers of the pairs are inserted to it
+    //  and following tickers of the pairs are inserted without buffering
+    private void insertBufferedChartDataTickers(ChartDataProvider chartDataProvider, String[] pairs) {
+        synchronized (chartDataTickersBufferLock) {
+            if (chartDataTickersBuffer == null)
+                return;
+            chartDataTickersBufferProvider = chartDataProvider;
+            for (String pair : pairs) {
+                List<Ticker> pairTickers = chartDataTickersBuffer.remove(pair);
+                if (pairTickers == null)
+                    continue;
+                for (Ticker ticker : pairTickers)
+                    chartDataProvider.insertTicker(ticker);
+            }
+        }
+    }
+
+    private void stopBufferingChartDataTickers() {
+        synchronized (chartDataTickersBufferLock) {
+            chartDataTickersBuffer = null;
+            chartDataTickersBufferProvider = null;
+        }
+    }
+
+    // insert tickers (grouped by pair) to changes checker and check changes for every pair (now or after checkChangesDelayMs),
+    //  changes of all pairs checked now are sent to receiver in one list
+    private void ingestTickers(List<Ticker[]> pairsTickers) {
+        EngineMetrics metrics = this.metrics;
+        for (Ticker[] pairTickers : pairsTickers) {
+            long startNanos = metrics != null ? System.nanoTime() : 0;
+            cryptonoseEngineChangesChecker.insertPairTickers(pairTickers);
+            if (metrics != null)
+                metrics.insertTicker.recordSince(startNanos);
+        }
+        DelayedChecksWheel wheel = delayedChecksWheel;
+        // backing array isn't allocated until changes are added (changes filter may select none)
+        List<PriceChanges> priceChangesList = new ArrayList<>();
+        for (Ticker[] pairTickers : pairsTickers) {
+            // wheel is shut down when it's replaced after changing checkChangesDelayMs, pair is checked now then
+            if (wheel == null || !wheel.schedule(pairTickers[0].getPair()))
+                addChangesForPair(pairTickers[0].getPair(), priceChangesList);
+        }
+        if (!priceChangesList.isEmpty())
+            sendChanges(priceChangesList);
+    }
+
+    // delayed checks wheel for current checkChangesDelayMs (none after stopping engine), pairs waiting for check in the
+    //  previous wheel are scheduled in the new one (or checked now if there is no new wheel)
+    private synchronized void replaceDelayedChecksWheel() {
+        int delayMs = stopped.get() ? 0 : checkChangesDelayMs;
+        DelayedChecksWheel previousWheel = delayedChecksWheel;
+        DelayedChecksWheel wheel = null;
+        if (delayMs > 0 && exchangeSpecs == null) {
+            logger.warning("delayed changes checks can't be used in replay, checkChangesDelayMs is ignored");
+        } else if (delayMs > 0) {
+            wheel = new DelayedChecksWheel(delayMs, Math.min(delayMs, DELAYED_CHECKS_TICK_MS), this::delayedCheckChangesForPair);
+        }
+        delayedChecksWheel = wheel;
+        if (previousWheel == null)
+            return;
+        previousWheel.shutdown();
+        if (stopped.get())
+            return;
+        for (String pair : previousWheel.getPendingPairs()) {
+            if (wheel != null)
+                wheel.schedule(pair);
+            else
+                delayedCheckChangesForPair(pair);
         }
-        Arrays.stream(tickers).forEach(cryptonoseEngineChangesChecker::insertTicker);
-        if (checkChangesDelayMs > 0 && !changesCheckingTempDisableSet.contains(tickers[0].getPair())) {
-            changesCheckingTempDisableSet.add(tickers[0].getPair());
-            scheduledExecutorService.schedule(() -> {
-                changesCheckingTempDisableSet.remove(tickers[0].getPair());
-                checkChangesForPair(tickers[0].getPair());
-            }, checkChangesDelayMs, TimeUnit.MILLISECONDS);
-        } else
-            checkChangesForPair(tickers[0].getPair());
+    }
+
+    // called by delayedChecksWheel, check is done on ingestion thread of the pair if ingestion threads are used
+    private void delayedCheckChangesForPair(String pair) {
+        if (ingestionExecutor != null)
+            ingestionExecutor.execute(pair, () -> checkChangesForPair(pair));
+        else
+            checkChangesForPair(pair);
+    }
+
+    // ingestTickers() on ingestion thread of tickers pair, tickers should be for one pair
+    private void ingestTickersAsync(Ticker[] tickers) {
+        ingestionExecutor.execute(tickers[0].getPair(), () -> {
+            try {
+                ingestTickers(Collections.singletonList(tickers));
+            } catch (Exception e) {
+                logger.log(Level.WARNING, "when handling tickers", e);
+            }
+        });
     }
 
     private void checkChangesForPair(String pair) {
-        PriceChanges[] priceChanges = cryptonoseEngineChangesChecker.checkChanges(pair);
-        if(relativeChangesChecker!=null)
-            relativeChangesChecker.setRelativeChanges(priceChanges);
-        engineChangesReceiver.receiveChanges(Arrays.asList(priceChanges));
+        List<PriceChanges> priceChangesList = new ArrayList<>();
+        addChangesForPair(pair, priceChangesList);
+        if (!priceChangesList.isEmpty())
+            sendChanges(priceChangesList);
+    }
+
+    private void addChangesForPair(String pair, List<PriceChanges> priceChangesList) {
+        if (progressiveStartInProgress && !isPairReady(pair))
+            return;
+        EngineMetrics metrics = this.metrics;
+        long startNanos = metrics != null ? System.nanoTime() : 0;
+        TickersWindow tickersWindow = cryptonoseEngineChangesChecker.findTickersWindow(pair);
+        if (tickersWindow == null)
+            return;
+        RelativeChangesChecker relativeChangesChecker = this.relativeChangesChecker;
+        if (engineChangesFilter != null || changesDeltaTracker != null) {
+            addSelectedChangesForPair(pair, tickersWindow, relativeChangesChecker, priceChangesList);
+            if (metrics != null)
+                metrics.checkChanges.recordSince(startNanos);
+            return;
+        }
+        PriceChanges[] priceChanges = cryptonoseEngineChangesChecker.checkChanges(pair, tickersWindow);
+        if (metrics != null)
+            metrics.checkChanges.recordSince(startNanos);
+        if (priceChanges == null)
+            return;
+        if(relativeChangesChecker!=null) {
+            startNanos = metrics != null ? System.nanoTime() : 0;
+            relativeChangesChecker.setRelativeChanges(priceChanges, relativeChangesChecker.getPairId(pair, tickersWindow));
+            if (metrics != null)
+                metrics.setRelativeChanges.recordSince(startNanos);
+        }
+        priceChangesList.addAll(Arrays.asList(priceChanges));
+    }
+
+    private void sendChanges(List<PriceChanges> priceChangesList) {
+        EngineMetrics metrics = this.metrics;
+        if (metrics == null) {
+            engineChangesReceiver.receiveChanges(priceChangesList);
+            return;
+        }
+        long startNanos = System.nanoTime();
+        engineChangesReceiver.receiveChanges(priceChangesList);
+        metrics.receiverCallback.recordSince(startNanos);
+    }
+
+    // PriceChanges are created only for periods crossing thresholds of engineChangesFilter (if set)
+    //  and changed since they were last sent (if changesDeltaTracker is set)
+    private void addSelectedChangesForPair(String pair, TickersWindow tickersWindow, RelativeChangesChecker relativeChangesChecker, List<PriceChanges> priceChangesList) {
+        PriceExtremes priceExtremes = priceExtremesThreadLocal.get();
+        if (!cryptonoseEngineChangesChecker.checkExtremes(tickersWindow, priceExtremes))
+            return;
+        int pairId = relativeChangesChecker != null ? relativeChangesChecker.getPairId(pair, tickersWindow) : -1;
+        for (int i = 0; i < priceExtremes.numPeriods(); i++) {
+            if (!priceExtremes.valid[i])
+                continue;
+            RelativeChangesInfo relativeChangesInfo = relativeChangesChecker != null ? relativeChangesChecker.getRelativeChangesInfo(pairId, i) : null;
+            if (engineChangesFilter != null && !engineChangesFilter.checkCrossing(pair, i, priceExtremes, relativeChangesInfo))
+                continue;
+            if (changesDeltaTracker != null && !changesDeltaTracker.checkChanged(pair, i, priceExtremes, relativeChangesInfo))
+                continue;
+            PriceChanges priceChanges = priceExtremes.toPriceChanges(pair, i);
+            if (relativeChangesChecker != null)
+                relativeChangesChecker.setRelativeChange(priceChanges, relativeChangesInfo);
+            priceChangesList.add(priceChanges);
+        }
+    }
+
+    // for engine time periods only candles which aren't stored in candleCache are fetched
+    private PeriodNumCandles[] cachedPeriodsNumCandles() {
+        long currentTimeSeconds = clock.currentTimeSeconds();
+        PeriodNumCandles[] periodNumCandlesArray = new PeriodNumCandles[periodsNumCandles.size()];
+        for (int i = 0; i < periodsNumCandles.size(); i++) {
+            PeriodNumCandles periodNumCandles = periodsNumCandles.get(i);
+            // periods added by requestAdditionalChartData() aren't cached
+            if (i < timePeriods.length && candleCache.isCachedPeriod(periodNumCandles.getPeriodSeconds())) {
+                int numCandles = candleCache.numCandlesToFetch(pairsAll, periodNumCandles.getPeriodSeconds(), currentTimeSeconds);
+                periodNumCandles = new PeriodNumCandles(periodNumCandles.getPeriodSeconds(), numCandles);
+            }
+            periodNumCandlesArray[i] = periodNumCandles;
+        }
+        return periodNumCandlesArray;
+    }
+
+    // cached changes of pairs which aren't used anymore are dropped
+    private void setPairsAll(String[] pairs) {
+        pairsAll = pairs;
+        pairChangesCache.keySet().retainAll(new HashSet<>(Arrays.asList(pairs)));
+    }
+
+    // drop state of pairs which aren't selected anymore
+    private void retainPairs(Set<String> pairs) {
+        pairChangesCache.keySet().retainAll(pairs);
+        cryptonoseEngineChangesChecker.retainPairs(pairs);
+        if (engineChangesFilter != null)
+            engineChangesFilter.retainPairs(pairs);
+        if (changesDeltaTracker != null)
+            changesDeltaTracker.retainPairs(pairs);
+    }
+
+    // in progressive start, changes for pair are sent after its chart data is ready
+    private boolean isPairReady(String pair) {
+        RelativeChangesChecker relativeChangesChecker = this.relativeChangesChecker;
+        if (relativeChangesChecker == null || !relativeChangesChecker.hasRelativeChangesInfo(pair))
+            return false;
+        return !initEngineWithLowerPeriodChartData || initTickersPairs.contains(pair);
+    }
+
+    // restore tickers and relative changes data from snapshot file if it's not older than the longest time period
+    private void restoreSnapshot() {
+        if (!Files.exists(snapshotFile))
+            return;
+        long maxTimePeriod = Arrays.stream(timePeriods).max().getAsLong();
+        try {
+            restoredSnapshot = EngineSnapshot.read(snapshotFile, timePeriods, clock.currentTimeSeconds() - maxTimePeriod, cryptonoseEngineChangesChecker);
+            if (restoredSnapshot != null)
+                logger.info(String.format("restored engine state from snapshot saved at %d", restoredSnapshot.getTimestampSeconds()));
+            else
+                logger.info("snapshot is too old, not restoring engine state");
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "when restoring engine state from snapshot", e);
+        }
+    }
+
+    // periodic saving may be in progress when saving on stop
+    private void saveSnapshot() {
+        saveSnapshotLock.lock();
+        try {
+            EngineSnapshot.write(snapshotFile, clock.currentTimeSeconds(), timePeriods, cryptonoseEngineChangesChecker, relativeChangesChecker);
+            logger.fine("engine state saved to snapshot");
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "when saving engine state to snapshot", e);
+        } finally {
+            saveSnapshotLock.unlock();
+        }
+    }
+
+    private void openTickerJournal() {
+        try {
+            tickerJournal = new TickerJournal(tickerJournalDirectory, tickerJournalSegmentRecords);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "when opening ticker journal, tickers won't be recorded", e);
+        }
+    }
+
+    // journal is closed after write error, so errors aren't repeated for every ticker
+    private void journalTickers(Ticker[] tickers) {
+        TickerJournal tickerJournal = this.tickerJournal;
+        if (tickerJournal == null)
+            return;
+        try {
+            tickerJournal.append(tickers, clock.currentTimeMillis());
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "when writing ticker journal, tickers won't be recorded", e);
+            tickerJournal.close();
+            this.tickerJournal = null;
+        }
+    }
+
+    private void registerMetricsMBean() {
+        try {
+            ObjectName name = new ObjectName(String.format("pl.dmotyka.cryptonoseengine:type=CryptonoseGenericEngine,exchange=%s,id=%d",
+                    ObjectName.quote(metrics.getExchange()), metricsMBeanCounter.incrementAndGet()));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, name);
+            metricsMBeanName = name;
+        } catch (JMException e) {
+            logger.log(Level.WARNING, "when registering metrics MBean", e);
+        }
+    }
+
+    private void unregisterMetricsMBean() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(metricsMBeanName);
+        } catch (JMException e) {
+            logger.log(Level.WARNING, "when unregistering metrics MBean", e);
+        }
     }
 
     private void handleError(Throwable error) {
@@ -607,4 +1464,45 @@ public class CryptonoseGenericEngine {
     public void useMedianRelativeChanges() {
         useMedianRelativeChanges.set(true);
     }
+
+    // PriceChanges of a pair with relative changes data used for them
+    private static class PairChangesCacheEntry {
+
+        private final PriceChanges[] priceChanges;
+        private final RelativeChangesChecker relativeChangesChecker;
+        // by period index
+        private final RelativeChangesInfo[] relativeChangesInfos;
+
+        PairChangesCacheEntry(PriceChanges[] priceChanges, RelativeChangesChecker relativeChangesChecker, int pairId, int numPeriods) {
+            this.priceChanges = priceChanges;
+            this.relativeChangesChecker = relativeChangesChecker;
+            relativeChangesInfos = new RelativeChangesInfo[numPeriods];
+            if (relativeChangesChecker != null) {
+                for (int i = 0; i < numPeriods; i++)
+                    relativeChangesInfos[i] = relativeChangesChecker.getRelativeChangesInfo(pairId, i);
+            }
+        }
+
+        // set relative changes using the same relative changes info which is kept for comparison
+        // called only for new PriceChanges, before they are returned
+        void setRelativeChanges() {
+            if (relativeChangesChecker == null)
+                return;
+            for (PriceChanges priceChange : priceChanges)
+                relativeChangesChecker.setRelativeChange(priceChange, relativeChangesInfos[relativeChangesChecker.getPeriodIndex(priceChange.getTimePeriodSeconds())]);
+        }
+
+        // relative changes info objects are replaced when data is updated
+        boolean sameRelativeChangesInfo(RelativeChangesChecker relativeChangesChecker, int pairId) {
+            if (relativeChangesChecker != this.relativeChangesChecker)
+                return false;
+            if (relativeChangesChecker == null)
+                return true;
+            for (int i = 0; i < relativeChangesInfos.length; i++) {
+                if (relativeChangesChecker.getRelativeChangesInfo(pairId, i) != relativeChangesInfos[i])
+                    return false;
+            }
+            return true;
+        }
+    }
 }
@@ -0,0 +1,142 @@
+/*
+ * Cryptonose
+ *
+ * Copyright © 2019-2022 Dawid Motyka
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package pl.dmotyka.cryptonoseengine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Hashed timer wheel for delayed changes checks (see CryptonoseGenericEngine.setCheckChangesDelayMs()).
+// A pair scheduled for check is put to the wheel slot due after delayMs, until it's checked, scheduling it again does nothing.
+// Dedicated thread advances the wheel every tickMs and checks all pairs from the due slot in a batch, so checks are done
+// after delayMs with jitter lower than tickMs. Scheduling a pair which isn't pending doesn't create objects (except the first
+// time for a pair and growing slot lists).
+class DelayedChecksWheel {
+
+    private static final Logger logger = Logger.getLogger(DelayedChecksWheel.class.getName());
+
+    private final long tickNanos;
+    private final int delayTicks;
+    private final int mask;
+    private final List<String>[] slots;
+    private final Object[] slotLocks;
+    private final Map<String, AtomicBoolean> pendingMap = new ConcurrentHashMap<>();
+    private final Consumer<String> checkChangesConsumer;
+    private final Thread thread;
+    // the last tick processed by wheel thread
+    private volatile long currentTick = 0;
+    // list swapped with the due slot list when processing slot
+    private List<String> spareList = new ArrayList<>();
+    private volatile boolean isShutdown = false;
+
+    @SuppressWarnings("unchecked")
+    DelayedChecksWheel(int delayMs, int tickMs, Consumer<String> checkChangesConsumer) {
+        if (delayMs < 1 || tickMs < 1)
+            throw new IllegalArgumentException("delayMs and tickMs should be positive");
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMs);
+        this.delayTicks = (delayMs + tickMs - 1) / tickMs;
+        this.checkChangesConsumer = checkChangesConsumer;
+        int numSlots = Integer.highestOneBit(delayTicks + 1) << 1;
+        mask = numSlots - 1;
+        slots = new List[numSlots];
+        slotLocks = new Object[numSlots];
+        for (int i = 0; i < numSlots; i++) {
+            slots[i] = new ArrayList<>();
+            slotLocks[i] = new Object();
+        }
+        thread = new Thread(this::run, "engine-delayed-checks");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // schedule changes check for the pair, unless it's already scheduled
+    // returns false if the wheel is shut down, the pair may be returned by getPendingPairs() then
+    boolean schedule(String pair) {
+        AtomicBoolean pending = pendingMap.computeIfAbsent(pair, p -> new AtomicBoolean(false));
+        if (!pending.compareAndSet(false, true))
+            return true;
+        // checked after setting pending, so pair scheduled during shutdown is either returned by getPendingPairs() or
+        //  the caller checks it
+        if (isShutdown)
+            return false;
+        int slot = (int)(currentTick + delayTicks + 1) & mask;
+        synchronized (slotLocks[slot]) {
+            slots[slot].add(pair);
+        }
+        return true;
+    }
+
+    // number of pairs waiting for check
+    int getPendingCount() {
+        int count = 0;
+        for (AtomicBoolean pending : pendingMap.values()) {
+            if (pending.get())
+                count++;
+        }
+        return count;
+    }
+
+    // pairs scheduled for check which weren't checked yet, use after shutdown() to check them elsewhere
+    List<String> getPendingPairs() {
+        List<String> pendingPairs = new ArrayList<>();
+        for (Map.Entry<String, AtomicBoolean> entry : pendingMap.entrySet()) {
+            if (entry.getValue().get())
+                pendingPairs.add(entry.getKey());
+        }
+        return pendingPairs;
+    }
+
+    void shutdown() {
+        isShutdown = true;
+        thread.interrupt();
+    }
+
+    private void run() {
+        long nextTickNanos = System.nanoTime() + tickNanos;
+        while (!Thread.currentThread().isInterrupted()) {
+            long sleepNanos = nextTickNanos - System.nanoTime();
+            if (sleepNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+            nextTickNanos += tickNanos;
+            int slot = (int)(currentTick + 1) & mask;
+            List<String> duePairs;
+            synchronized (slotLocks[slot]) {
+                duePairs = slots[slot];
+                slots[slot] = spareList;
+            }
+            currentTick++;
+            for (String pair : duePairs) {
+                pendingMap.get(pair).set(false);
+                try {
+                    checkChangesConsumer.accept(pair);
+                } catch (Exception e) {
+                    logger.log(Level.WARNING, "when checking changes", e);
+                }
+            }
+            duePairs.clear();
+            spareList = duePairs;
+        }
+    }
+}
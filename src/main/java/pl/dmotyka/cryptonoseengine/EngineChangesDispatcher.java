@@ -0,0 +1,268 @@
+/*
+ * Cryptonose
+ *
+ * Copyright © 2019-2022 Dawid Motyka
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package pl.dmotyka.cryptonoseengine;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Delivers price changes to EngineChangesReceiver on dedicated threads, so slow receiver doesn't stop tickers ingestion.
+// Changes are put to bounded queues (one queue and one delivery thread per lane), all changes for a pair go to the same
+// lane, so they are delivered in order. When a queue is full, changes are handled according to OverflowPolicy.
+public class EngineChangesDispatcher implements EngineChangesReceiver {
+
+    private static final Logger logger = Logger.getLogger(EngineChangesDispatcher.class.getName());
+
+    public enum OverflowPolicy {
+        // wait until there is space in the queue (ingestion is stopped until receiver catches up)
+        BLOCK,
+        // remove the oldest changes from the queue
+        DROP_OLDEST,
+        // changes waiting for delivery are replaced with the new ones for the same pair and time period,
+        //  when queue is full of other pairs changes, the oldest are removed
+        LATEST_PER_PAIR
+    }
+
+    private final EngineChangesReceiver engineChangesReceiver;
+    private final OverflowPolicy overflowPolicy;
+    private final Lane[] lanes;
+    private final AtomicLong droppedCount = new AtomicLong(0);
+    private final AtomicLong coalescedCount = new AtomicLong(0);
+
+    // capacity - max number of changes lists waiting for delivery (in all lanes)
+    public EngineChangesDispatcher(EngineChangesReceiver engineChangesReceiver, int capacity, OverflowPolicy overflowPolicy, int numThreads) {
+        if (capacity < 1 || numThreads < 1)
+            throw new IllegalArgumentException("capacity and numThreads should be positive");
+        this.engineChangesReceiver = engineChangesReceiver;
+        this.overflowPolicy = overflowPolicy;
+        lanes = new Lane[numThreads];
+        for (int i = 0; i < numThreads; i++) {
+            lanes[i] = new Lane(Math.max(1, capacity / numThreads));
+            Thread thread = new Thread(lanes[i]::deliver, "engine-changes-dispatcher-" + i);
+            thread.setDaemon(true);
+            lanes[i].thread = thread;
+            thread.start();
+        }
+    }
+
+    @Override
+    public void receiveChanges(List<PriceChanges> priceChangesList) {
+        if (priceChangesList.isEmpty())
+            return;
+        String pair = priceChangesList.get(0).getCurrencyPair();
+        int i = 1;
+        while (i < priceChangesList.size() && priceChangesList.get(i).getCurrencyPair().equals(pair))
+            i++;
+        if (i == priceChangesList.size()) {
+            laneForPair(pair).put(pair, priceChangesList, false);
+            return;
+        }
+        // list with multiple pairs (e.g. changes after init or ingested tickers) is split, so every pair keeps its lane
+        // and pending changes are replaced per pair
+        Map<String, List<PriceChanges>> pairsChanges = new LinkedHashMap<>();
+        for (PriceChanges priceChanges : priceChangesList)
+            pairsChanges.computeIfAbsent(priceChanges.getCurrencyPair(), k -> new ArrayList<>()).add(priceChanges);
+        for (Map.Entry<String, List<PriceChanges>> entry : pairsChanges.entrySet())
+            laneForPair(entry.getKey()).put(entry.getKey(), entry.getValue(), false);
+    }
+
+    @Override
+    public void receiveChanges(PriceChanges priceChanges) {
+        laneForPair(priceChanges.getCurrencyPair()).put(priceChanges.getCurrencyPair(), Collections.singletonList(priceChanges), true);
+    }
+
+    // number of changes lists that were removed from queues without delivery (list with multiple pairs is counted once
+    //  for every pair)
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    // number of changes lists that were merged with changes waiting for delivery (LATEST_PER_PAIR policy)
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    // number of changes lists waiting for delivery
+    public int getQueueSize() {
+        int size = 0;
+        for (Lane lane : lanes)
+            size += lane.size();
+        return size;
+    }
+
+    // stop delivery threads, changes waiting for delivery are discarded, producers waiting for space in a queue
+    //  (BLOCK policy) return and their changes are counted as dropped, changes received after shutdown are dropped
+    public void shutdown() {
+        for (Lane lane : lanes) {
+            lane.shutdown();
+            lane.thread.interrupt();
+        }
+    }
+
+    private Lane laneForPair(String pair) {
+        return lanes[(pair.hashCode() & Integer.MAX_VALUE) % lanes.length];
+    }
+
+    private static class PendingChanges {
+        private final String pair;
+        private final boolean single;
+        private List<PriceChanges> priceChangesList;
+
+        private PendingChanges(String pair, List<PriceChanges> priceChangesList, boolean single) {
+            this.pair = pair;
+            this.priceChangesList = priceChangesList;
+            this.single = single;
+        }
+
+        // replace pending changes with changes for the same time periods, returns false if nothing was replaced
+        private boolean merge(List<PriceChanges> newChangesList) {
+            List<PriceChanges> merged = new ArrayList<>(priceChangesList);
+            boolean replaced = false;
+            for (PriceChanges newChanges : newChangesList) {
+                int i = 0;
+                while (i < merged.size() && merged.get(i).getTimePeriodSeconds() != newChanges.getTimePeriodSeconds())
+                    i++;
+                if (i < merged.size()) {
+                    merged.set(i, newChanges);
+                    replaced = true;
+                } else {
+                    merged.add(newChanges);
+                }
+            }
+            priceChangesList = merged;
+            return replaced;
+        }
+    }
+
+    private class Lane {
+
+        private final int capacity;
+        private final ArrayDeque<PendingChanges> queue = new ArrayDeque<>();
+        // pending changes for pairs, used with LATEST_PER_PAIR policy
+        private final Map<String, PendingChanges> pendingMap = new HashMap<>();
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition notEmpty = lock.newCondition();
+        private final Condition notFull = lock.newCondition();
+        private Thread thread;
+        private boolean isShutdown = false;
+
+        private Lane(int capacity) {
+            this.capacity = capacity;
+        }
+
+        private void put(String pair, List<PriceChanges> priceChangesList, boolean single) {
+            lock.lock();
+            try {
+                if (isShutdown) {
+                    droppedCount.incrementAndGet();
+                    return;
+                }
+                if (overflowPolicy == OverflowPolicy.LATEST_PER_PAIR && !single) {
+                    PendingChanges pendingChanges = pendingMap.get(pair);
+                    if (pendingChanges != null) {
+                        if (pendingChanges.merge(priceChangesList))
+                            coalescedCount.incrementAndGet();
+                        return;
+                    }
+                }
+                while (queue.size() >= capacity) {
+                    if (overflowPolicy == OverflowPolicy.BLOCK) {
+                        notFull.await();
+                        if (isShutdown) {
+                            droppedCount.incrementAndGet();
+                            return;
+                        }
+                    } else {
+                        PendingChanges removed = queue.pollFirst();
+                        if (pendingMap.get(removed.pair) == removed)
+                            pendingMap.remove(removed.pair);
+                        droppedCount.incrementAndGet();
+                    }
+                }
+                PendingChanges pendingChanges = new PendingChanges(pair, priceChangesList, single);
+                queue.addLast(pendingChanges);
+                if (overflowPolicy == OverflowPolicy.LATEST_PER_PAIR && !single)
+                    pendingMap.put(pair, pendingChanges);
+                notEmpty.signal();
+            } catch (InterruptedException e) {
+                droppedCount.incrementAndGet();
+                Thread.currentThread().interrupt();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void shutdown() {
+            lock.lock();
+            try {
+                isShutdown = true;
+                notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private PendingChanges take() throws InterruptedException {
+            lock.lock();
+            try {
+                while (queue.isEmpty())
+                    notEmpty.await();
+                PendingChanges pendingChanges = queue.pollFirst();
+                if (pendingMap.get(pendingChanges.pair) == pendingChanges)
+                    pendingMap.remove(pendingChanges.pair);
+                notFull.signal();
+                return pendingChanges;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private int size() {
+            lock.lock();
+            try {
+                return queue.size();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void deliver() {
+            while (!Thread.currentThread().isInterrupted()) {
+                PendingChanges pendingChanges;
+                try {
+                    pendingChanges = take();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                try {
+                    if (pendingChanges.single)
+                        engineChangesReceiver.receiveChanges(pendingChanges.priceChangesList.get(0));
+                    else
+                        engineChangesReceiver.receiveChanges(pendingChanges.priceChangesList);
+                } catch (Exception e) {
+                    logger.log(Level.WARNING, "when delivering price changes", e);
+                }
+            }
+        }
+    }
+}
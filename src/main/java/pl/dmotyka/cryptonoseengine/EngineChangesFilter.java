@@ -0,0 +1,139 @@
+/*
+ * Cryptonose
+ *
+ * Copyright © 2019-2022 Dawid Motyka
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package pl.dmotyka.cryptonoseengine;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Filter for price changes sent by the engine, see CryptonoseGenericEngine.setChangesFilter().
+// Price changes for a pair and time period are sent only when they cross a threshold: any of absolute values of change types
+// with threshold set for the period gets at least the threshold value, while before all of them were below threshold.
+// To be sent again, all values have to drop below threshold multiplied by (1 - hysteresis) first.
+// Time periods without thresholds are never sent. Relative changes are treated as below threshold when relative data isn't available.
+// Values are checked before creating PriceChanges, so filtered out periods don't create any objects.
+public class EngineChangesFilter {
+
+    public enum ChangeType {
+        // PriceChanges.getPercentChange()
+        PERCENT_CHANGE,
+        // PriceChanges.getLastPercentChange()
+        LAST_PERCENT_CHANGE,
+        // PriceChanges.getRelativePriceChange()
+        RELATIVE_CHANGE,
+        // PriceChanges.getRelativeLastPriceChange()
+        RELATIVE_LAST_CHANGE,
+        // PriceChanges.getRelativeDropPriceChange()
+        RELATIVE_DROP_CHANGE,
+        // PriceChanges.getRelativeRisePriceChange()
+        RELATIVE_RISE_CHANGE
+    }
+
+    private final double hysteresis;
+    private final Map<Long, double[]> thresholdsMap = new HashMap<>();
+    // thresholds for engine time periods, by period index and change type ordinal, NaN if not set
+    private double[][] thresholds;
+    // for every pair: for every period index, true when changes are above thresholds
+    private final Map<String, boolean[]> aboveThresholdsMap = new ConcurrentHashMap<>();
+
+    // hysteresis - fraction of threshold (0 - 1)
+    public EngineChangesFilter(double hysteresis) {
+        if (hysteresis < 0 || hysteresis >= 1)
+            throw new IllegalArgumentException("hysteresis should be from 0 (inclusive) to 1 (exclusive)");
+        this.hysteresis = hysteresis;
+    }
+
+    // set threshold for absolute value of given change type in given time period, thresholds should be set before starting engine
+    public EngineChangesFilter setThreshold(long timePeriodSeconds, ChangeType changeType, double threshold) {
+        if (threshold <= 0)
+            throw new IllegalArgumentException("threshold should be positive");
+        double[] periodThresholds = thresholdsMap.computeIfAbsent(timePeriodSeconds, period -> {
+            double[] empty = new double[ChangeType.values().length];
+            Arrays.fill(empty, Double.NaN);
+            return empty;
+        });
+        periodThresholds[changeType.ordinal()] = threshold;
+        return this;
+    }
+
+    // prepare thresholds for engine time periods, called when engine is started
+    void init(long[] timePeriods) {
+        thresholds = new double[timePeriods.length][];
+        for (int i = 0; i < timePeriods.length; i++)
+            thresholds[i] = thresholdsMap.get(timePeriods[i]);
+    }
+
+    // drop state of pairs which aren't used anymore
+    void retainPairs(Set<String> pairs) {
+        aboveThresholdsMap.keySet().retainAll(pairs);
+    }
+
+    // returns true if changes for period crossed thresholds
+    boolean checkCrossing(String pair, int periodIndex, PriceExtremes priceExtremes, RelativeChangesInfo relativeChangesInfo) {
+        double[] periodThresholds = thresholds[periodIndex];
+        if (periodThresholds == null)
+            return false;
+        Double highLowDiff = relativeChangesInfo != null ? relativeChangesInfo.getHighLowDiff() : null;
+        double level = 0;
+        for (ChangeType changeType : ChangeType.values()) {
+            double threshold = periodThresholds[changeType.ordinal()];
+            if (Double.isNaN(threshold))
+                continue;
+            double value;
+            switch (changeType) {
+                case PERCENT_CHANGE:
+                    value = priceExtremes.percentChange(periodIndex);
+                    break;
+                case LAST_PERCENT_CHANGE:
+                    value = priceExtremes.lastPercentChange(periodIndex);
+                    break;
+                default:
+                    if (highLowDiff == null)
+                        continue;
+                    value = relativeChange(changeType, periodIndex, priceExtremes) / highLowDiff;
+            }
+            level = Math.max(level, Math.abs(value) / threshold);
+        }
+        boolean[] aboveThresholds = aboveThresholdsMap.computeIfAbsent(pair, p -> new boolean[thresholds.length]);
+        synchronized (aboveThresholds) {
+            if (aboveThresholds[periodIndex]) {
+                if (level < 1 - hysteresis)
+                    aboveThresholds[periodIndex] = false;
+                return false;
+            }
+            if (level >= 1) {
+                aboveThresholds[periodIndex] = true;
+                return true;
+            }
+            return false;
+        }
+    }
+
+    private static double relativeChange(ChangeType changeType, int periodIndex, PriceExtremes priceExtremes) {
+        switch (changeType) {
+            case RELATIVE_CHANGE:
+                return priceExtremes.change(periodIndex);
+            case RELATIVE_LAST_CHANGE:
+                return priceExtremes.lastChange(periodIndex);
+            case RELATIVE_DROP_CHANGE:
+                return priceExtremes.dropChange(periodIndex);
+            case RELATIVE_RISE_CHANGE:
+                return priceExtremes.riseChange(periodIndex);
+            default:
+                throw new IllegalArgumentException("not a relative change type: " + changeType);
+        }
+    }
+}
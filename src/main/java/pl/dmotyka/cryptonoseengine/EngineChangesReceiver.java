@@ -19,6 +19,11 @@ import java.util.List;
  * Created by dawid on 7/14/17.
  */
 public interface EngineChangesReceiver {
+    /**
+     * Receives changes of checked pairs. By default the list contains changes of all pairs in one batch of tickers.
+     * When ingestion threads, delayed checks or changes dispatch are enabled, changes of one batch are split into
+     * separate lists, one for each pair. All time periods of one pair check are always in the same list.
+     */
     void receiveChanges(List<PriceChanges> priceChangesList);
     void receiveChanges(PriceChanges priceChanges);
 }
@@ -13,40 +13,129 @@
 
 package pl.dmotyka.cryptonoseengine;
 
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+// Delivers engine messages to EngineMessageReceiver on a dedicated thread, as soon as they are added.
+// Consecutive connection progress messages and consecutive plain INFO messages waiting for delivery are coalesced
+// (only the latest is delivered). When the queue is full, the oldest message is dropped.
 public class EngineMessageQueue {
 
     public static final Logger logger = Logger.getLogger(EngineMessageQueue.class.getName());
 
-    private static final int MESSAGE_FREQUENCY_MS = 100;
+    private static final int MAX_QUEUE_SIZE = 1000;
+    // max time of delivering messages waiting for delivery on shutdown
+    private static final long SHUTDOWN_TIMEOUT_MS = 1000;
 
-    private final ScheduledExecutorService executorService = Executors.newSingleThreadScheduledExecutor();
-    private final BlockingQueue<EngineMessage> messagesQueue = new LinkedBlockingQueue<>();
+    private final Deque<EngineMessage> messagesQueue = new ArrayDeque<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
     private final EngineMessageReceiver engineMessageReceiver;
+    private final Thread thread;
+    private boolean isShutdown = false;
 
     public EngineMessageQueue(EngineMessageReceiver engineMessageReceiver) {
         this.engineMessageReceiver = engineMessageReceiver;
-        executorService.scheduleWithFixedDelay(this::sendMessages, MESSAGE_FREQUENCY_MS, MESSAGE_FREQUENCY_MS, TimeUnit.MILLISECONDS);
+        thread = new Thread(this::sendMessages, "engine-messages");
+        thread.setDaemon(true);
+        thread.start();
     }
 
     public void addMessage(EngineMessage engineMessage) {
-        messagesQueue.add(engineMessage);
+        lock.lock();
+        try {
+            if (isShutdown) {
+                logger.fine("engine message added after shutdown is discarded");
+                return;
+            }
+            EngineMessage lastMessage = messagesQueue.peekLast();
+            if (lastMessage != null && isCoalescable(lastMessage, engineMessage)) {
+                messagesQueue.pollLast();
+            } else if (messagesQueue.size() >= MAX_QUEUE_SIZE) {
+                logger.warning("engine messages queue is full, dropping the oldest message");
+                messagesQueue.pollFirst();
+            }
+            messagesQueue.addLast(engineMessage);
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
     }
 
-    private void sendMessages() {
+    // number of messages waiting for delivery
+    public int size() {
+        lock.lock();
+        try {
+            return messagesQueue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // stop delivering messages, messages waiting for delivery are delivered first (for at most SHUTDOWN_TIMEOUT_MS, then
+    //  the rest is discarded), messages added after shutdown are discarded
+    public void shutdown() {
+        lock.lock();
         try {
-            while (messagesQueue.size() > 0) {
-                engineMessageReceiver.message(messagesQueue.poll());
+            isShutdown = true;
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+        // called by the receiver, delivery ends after the remaining messages
+        if (Thread.currentThread() == thread)
+            return;
+        try {
+            thread.join(SHUTDOWN_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        thread.interrupt();
+    }
+
+    // new message replaces the previous one waiting for delivery
+    private static boolean isCoalescable(EngineMessage previousMessage, EngineMessage message) {
+        if (previousMessage.getClass() != message.getClass() || previousMessage.getCode() != message.getCode())
+            return false;
+        if (message instanceof EngineMessageConnectionProgress)
+            return true;
+        return message.getClass() == EngineMessage.class && message.getCode() == EngineMessage.Type.INFO;
+    }
+
+    // returns null when queue is shut down and empty
+    private EngineMessage takeMessage() throws InterruptedException {
+        lock.lock();
+        try {
+            while (messagesQueue.isEmpty()) {
+                if (isShutdown)
+                    return null;
+                notEmpty.await();
+            }
+            return messagesQueue.pollFirst();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void sendMessages() {
+        while (!Thread.currentThread().isInterrupted()) {
+            EngineMessage engineMessage;
+            try {
+                engineMessage = takeMessage();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (engineMessage == null)
+                return;
+            try {
+                engineMessageReceiver.message(engineMessage);
+            } catch (Exception e) {
+                logger.log(Level.WARNING, "", e);
             }
-        } catch (Exception e) {
-            logger.log(Level.WARNING, "", e);
         }
     }
 }
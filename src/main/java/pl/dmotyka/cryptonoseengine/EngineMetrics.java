@@ -0,0 +1,172 @@
+/*
+ * Cryptonose
+ *
+ * Copyright © 2019-2022 Dawid Motyka
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package pl.dmotyka.cryptonoseengine;
+
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+import pl.dmotyka.exchangeutils.tickerprovider.Ticker;
+
+// Latencies of engine stages and tickers counters, updated by the engine without locks. Getters return current values
+// (LatencyStats are snapshots of histograms). Registered as MBean when engine starts, see CryptonoseGenericEngine.enableMetrics().
+public class EngineMetrics implements EngineMetricsMXBean {
+
+    private static final int NUM_HOT_PAIRS = 10;
+    private static final int RATE_SECONDS = 60;
+
+    private final String exchange;
+    final LatencyHistogram tickerReceive = new LatencyHistogram();
+    final LatencyHistogram insertTicker = new LatencyHistogram();
+    final LatencyHistogram checkChanges = new LatencyHistogram();
+    final LatencyHistogram setRelativeChanges = new LatencyHistogram();
+    final LatencyHistogram receiverCallback = new LatencyHistogram();
+    final LatencyHistogram chartRefresh = new LatencyHistogram();
+    private final LongAdder tickersCount = new LongAdder();
+    private final Map<String, LongAdder> pairsTickersCounts = new ConcurrentHashMap<>();
+    // tickers counts of the last RATE_SECONDS seconds, at index second % RATE_SECONDS
+    private final AtomicLongArray secondsTickersCounts = new AtomicLongArray(RATE_SECONDS);
+    private final AtomicLongArray secondsOfCounts = new AtomicLongArray(RATE_SECONDS);
+    private final IntSupplier messageQueueDepth;
+    private final IntSupplier delayedChecksBacklog;
+    private final IntSupplier changesDispatchQueueDepth;
+
+    EngineMetrics(String exchange, IntSupplier messageQueueDepth, IntSupplier delayedChecksBacklog, IntSupplier changesDispatchQueueDepth) {
+        this.exchange = exchange;
+        this.messageQueueDepth = messageQueueDepth;
+        this.delayedChecksBacklog = delayedChecksBacklog;
+        this.changesDispatchQueueDepth = changesDispatchQueueDepth;
+    }
+
+    // called for tickers received from ticker provider
+    void tickerReceived(Ticker ticker) {
+        pairsTickersCounts.computeIfAbsent(ticker.getPair(), pair -> new LongAdder()).increment();
+        countTickers(1);
+    }
+
+    // called for tickers received from ticker provider
+    void tickersReceived(Ticker[] tickers) {
+        for (Ticker ticker : tickers)
+            pairsTickersCounts.computeIfAbsent(ticker.getPair(), pair -> new LongAdder()).increment();
+        countTickers(tickers.length);
+    }
+
+    private void countTickers(int numTickers) {
+        tickersCount.add(numTickers);
+        long second = System.currentTimeMillis() / 1000;
+        int index = (int)(second % RATE_SECONDS);
+        long secondOfCount = secondsOfCounts.get(index);
+        // count of this second is started by one thread, counts of other threads at the same time may be lost
+        if (secondOfCount != second && secondsOfCounts.compareAndSet(index, secondOfCount, second))
+            secondsTickersCounts.set(index, 0);
+        secondsTickersCounts.addAndGet(index, numTickers);
+    }
+
+    @Override
+    public String getExchange() {
+        return exchange;
+    }
+
+    @Override
+    public long getTickersCount() {
+        return tickersCount.sum();
+    }
+
+    @Override
+    public double getTickersPerSecond() {
+        long second = System.currentTimeMillis() / 1000;
+        long count = 0;
+        // the current second is not complete
+        for (int i = 0; i < RATE_SECONDS; i++) {
+            long secondOfCount = secondsOfCounts.get(i);
+            if (secondOfCount < second && secondOfCount >= second - RATE_SECONDS)
+                count += secondsTickersCounts.get(i);
+        }
+        return (double)count / RATE_SECONDS;
+    }
+
+    @Override
+    public Map<String, Long> getHotPairs() {
+        Map<String, Long> hotPairs = new LinkedHashMap<>();
+        pairsTickersCounts.entrySet().stream().
+                map(entry -> Map.entry(entry.getKey(), entry.getValue().sum())).
+                sorted(Map.Entry.<String, Long>comparingByValue(Comparator.reverseOrder())).
+                limit(NUM_HOT_PAIRS).
+                forEach(entry -> hotPairs.put(entry.getKey(), entry.getValue()));
+        return hotPairs;
+    }
+
+    @Override
+    public LatencyStats getTickerReceiveLatency() {
+        return tickerReceive.stats();
+    }
+
+    @Override
+    public LatencyStats getInsertTickerLatency() {
+        return insertTicker.stats();
+    }
+
+    @Override
+    public LatencyStats getCheckChangesLatency() {
+        return checkChanges.stats();
+    }
+
+    @Override
+    public LatencyStats getSetRelativeChangesLatency() {
+        return setRelativeChanges.stats();
+    }
+
+    @Override
+    public LatencyStats getReceiverCallbackLatency() {
+        return receiverCallback.stats();
+    }
+
+    @Override
+    public LatencyStats getChartRefreshDuration() {
+        return chartRefresh.stats();
+    }
+
+    @Override
+    public int getMessageQueueDepth() {
+        return messageQueueDepth.getAsInt();
+    }
+
+    @Override
+    public int getDelayedChecksBacklog() {
+        return delayedChecksBacklog.getAsInt();
+    }
+
+    @Override
+    public int getChangesDispatchQueueDepth() {
+        return changesDispatchQueueDepth.getAsInt();
+    }
+
+    @Override
+    public void reset() {
+        tickerReceive.reset();
+        insertTicker.reset();
+        checkChanges.reset();
+        setRelativeChanges.reset();
+        receiverCallback.reset();
+        chartRefresh.reset();
+        tickersCount.reset();
+        pairsTickersCounts.clear();
+        for (int i = 0; i < RATE_SECONDS; i++)
+            secondsTickersCounts.set(i, 0);
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Cryptonose
+ *
+ * Copyright © 2019-2022 Dawid Motyka
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package pl.dmotyka.cryptonoseengine;
+
+import java.util.Map;
+
+// Engine metrics published via JMX, see CryptonoseGenericEngine.enableMetrics()
+public interface EngineMetricsMXBean {
+
+    // exchange of the engine
+    String getExchange();
+
+    // number of tickers received from ticker provider
+    long getTickersCount();
+
+    // tickers received from ticker provider per second, average of the last minute
+    double getTickersPerSecond();
+
+    // pairs with the most received tickers and their tickers counts
+    Map<String, Long> getHotPairs();
+
+    // handling tickers received from ticker provider (including the stages below when tickers are handled on ticker provider thread)
+    LatencyStats getTickerReceiveLatency();
+
+    // inserting tickers of a pair to changes checker
+    LatencyStats getInsertTickerLatency();
+
+    // checking changes of a pair (with changes filter or delta changes, this includes setting relative changes)
+    LatencyStats getCheckChangesLatency();
+
+    // setting relative changes for PriceChanges of a pair
+    LatencyStats getSetRelativeChangesLatency();
+
+    // calling EngineChangesReceiver (with changes dispatch, only adding changes to dispatch queue)
+    LatencyStats getReceiverCallbackLatency();
+
+    // fetching chart data (including retries)
+    LatencyStats getChartRefreshDuration();
+
+    // engine messages waiting for delivery to EngineMessageReceiver
+    int getMessageQueueDepth();
+
+    // pairs waiting for delayed changes check
+    int getDelayedChecksBacklog();
+
+    // changes lists waiting for delivery by changes dispatch
+    int getChangesDispatchQueueDepth();
+
+    // clear histograms and counters
+    void reset();
+}
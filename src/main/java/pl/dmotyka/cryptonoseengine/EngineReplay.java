@@ -0,0 +1,199 @@
+/*
+ * Cryptonose
+ *
+ * Copyright © 2019-2022 Dawid Motyka
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package pl.dmotyka.cryptonoseengine;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import pl.dmotyka.exchangeutils.chartdataprovider.CurrencyPairTimePeriod;
+import pl.dmotyka.exchangeutils.chartinfo.ChartCandle;
+import pl.dmotyka.exchangeutils.tickerprovider.Ticker;
+
+// Recorded tickers and chart candles read for CryptonoseGenericEngine.replay() and replayTickerJournal().
+//
+// Tickers file: lines "timestamp seconds,pair,price" sorted by timestamp. Consecutive tickers with the same timestamp are
+//  replayed as one batch (like tickers received by TickerReceiver.receiveTickers()). Tickers file is read while replaying.
+// Ticker journal (see TickerJournal) may be used instead of tickers file. Tickers are replayed at receive time, consecutive
+//  tickers with the same receive time are replayed as one batch (tickers received together).
+// Candles file: lines "pair,period seconds,timestamp seconds,open,high,low,close" in any order. Candle is used for relative
+//  changes when replay time reaches its close time (timestamp + period).
+// Empty lines and lines starting with # are ignored.
+class EngineReplay implements Closeable {
+
+    // tickers are read from tickers file or ticker journal, the other reader is null
+    private final BufferedReader tickersReader;
+    private final TickerJournalReader journalReader;
+    // line of tickers file or record of journal
+    private int tickersLineNumber = 0;
+    // replay time of the last read ticker
+    private long readTickerTimeMillis;
+    // the first ticker of the next batch (already read)
+    private Ticker nextTicker;
+    private long nextTickerTimeMillis;
+    // replay time of tickers returned by the last nextBatch() call
+    private long batchTimeMillis;
+    // candles sorted by timestamp
+    private final Map<CurrencyPairTimePeriod, ChartCandle[]> candlesMap;
+    // number of candles of pair and period which are already closed at current replay time
+    private final Map<CurrencyPairTimePeriod, Integer> numClosedCandlesMap = new LinkedHashMap<>();
+
+    // candlesFile may be null
+    EngineReplay(Path tickersFile, Path candlesFile) throws IOException {
+        this(Files.newBufferedReader(tickersFile, StandardCharsets.UTF_8), null, candlesFile);
+    }
+
+    private EngineReplay(BufferedReader tickersReader, TickerJournalReader journalReader, Path candlesFile) throws IOException {
+        this.tickersReader = tickersReader;
+        this.journalReader = journalReader;
+        try {
+            candlesMap = candlesFile != null ? readCandles(candlesFile) : new LinkedHashMap<>();
+            nextTicker = readTicker();
+            nextTickerTimeMillis = readTickerTimeMillis;
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    // tickers from ticker journal in journalDirectory, candlesFile may be null
+    static EngineReplay fromTickerJournal(Path journalDirectory, Path candlesFile) throws IOException {
+        return new EngineReplay(null, new TickerJournalReader(journalDirectory), candlesFile);
+    }
+
+    // next batch of tickers with the same replay time, null when there are no more tickers
+    Ticker[] nextBatch() throws IOException {
+        if (nextTicker == null)
+            return null;
+        List<Ticker> batch = new ArrayList<>();
+        batch.add(nextTicker);
+        batchTimeMillis = nextTickerTimeMillis;
+        Ticker ticker;
+        while ((ticker = readTicker()) != null && readTickerTimeMillis == batchTimeMillis)
+            batch.add(ticker);
+        if (ticker != null && readTickerTimeMillis < batchTimeMillis)
+            throw new IOException(String.format("tickers aren't sorted by %s (%s %d)",
+                    journalReader != null ? "receive time" : "timestamp",
+                    journalReader != null ? "record" : "line",
+                    tickersLineNumber));
+        nextTicker = ticker;
+        nextTickerTimeMillis = readTickerTimeMillis;
+        return batch.toArray(new Ticker[0]);
+    }
+
+    // replay time of tickers returned by the last nextBatch() call: timestamp of tickers from tickers file, receive time of
+    //  tickers from journal
+    long getBatchTimeMillis() {
+        return batchTimeMillis;
+    }
+
+    // candles closed until timestampSeconds for pairs and periods with new closed candles since the previous call
+    //  (empty map if there are none), the same as chart data provider would send
+    Map<CurrencyPairTimePeriod, ChartCandle[]> closedCandles(long timestampSeconds) {
+        Map<CurrencyPairTimePeriod, ChartCandle[]> closedCandlesMap = new LinkedHashMap<>();
+        for (Map.Entry<CurrencyPairTimePeriod, ChartCandle[]> entry : candlesMap.entrySet()) {
+            CurrencyPairTimePeriod currencyPairTimePeriod = entry.getKey();
+            ChartCandle[] candles = entry.getValue();
+            int previousNumClosed = numClosedCandlesMap.getOrDefault(currencyPairTimePeriod, 0);
+            int numClosed = previousNumClosed;
+            while (numClosed < candles.length && candles[numClosed].getTimestampSeconds() + currencyPairTimePeriod.getTimePeriodSeconds() <= timestampSeconds)
+                numClosed++;
+            if (numClosed == previousNumClosed)
+                continue;
+            numClosedCandlesMap.put(currencyPairTimePeriod, numClosed);
+            ChartCandle[] closedCandles = new ChartCandle[numClosed];
+            System.arraycopy(candles, 0, closedCandles, 0, numClosed);
+            closedCandlesMap.put(currencyPairTimePeriod, closedCandles);
+        }
+        return closedCandlesMap;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (tickersReader != null)
+            tickersReader.close();
+        if (journalReader != null)
+            journalReader.close();
+    }
+
+    private Ticker readTicker() throws IOException {
+        if (journalReader != null) {
+            if (!journalReader.next())
+                return null;
+            tickersLineNumber++;
+            readTickerTimeMillis = journalReader.getReceiveTimestampMillis();
+            return new Ticker(journalReader.getPair(), journalReader.getPrice(), journalReader.getExchangeTimestampSeconds());
+        }
+        String line;
+        while ((line = tickersReader.readLine()) != null) {
+            tickersLineNumber++;
+            if (isSkipped(line))
+                continue;
+            String[] fields = line.split(",");
+            if (fields.length != 3)
+                throw new IOException(String.format("invalid ticker at line %d: %s", tickersLineNumber, line));
+            try {
+                Ticker ticker = new Ticker(fields[1].trim(), Double.parseDouble(fields[2]), Long.parseLong(fields[0].trim()));
+                readTickerTimeMillis = ticker.getTimestampSeconds() * 1000;
+                return ticker;
+            } catch (NumberFormatException e) {
+                throw new IOException(String.format("invalid ticker at line %d: %s", tickersLineNumber, line), e);
+            }
+        }
+        return null;
+    }
+
+    private static Map<CurrencyPairTimePeriod, ChartCandle[]> readCandles(Path candlesFile) throws IOException {
+        Map<CurrencyPairTimePeriod, List<ChartCandle>> candlesListsMap = new LinkedHashMap<>();
+        int lineNumber = 0;
+        for (String line : Files.readAllLines(candlesFile, StandardCharsets.UTF_8)) {
+            lineNumber++;
+            if (isSkipped(line))
+                continue;
+            String[] fields = line.split(",");
+            if (fields.length != 7)
+                throw new IOException(String.format("invalid candle at line %d: %s", lineNumber, line));
+            try {
+                CurrencyPairTimePeriod currencyPairTimePeriod = new CurrencyPairTimePeriod(fields[0].trim(), Integer.parseInt(fields[1].trim()));
+                ChartCandle chartCandle = new ChartCandle(Double.parseDouble(fields[4]),
+                        Double.parseDouble(fields[5]),
+                        Double.parseDouble(fields[3]),
+                        Double.parseDouble(fields[6]),
+                        Long.parseLong(fields[2].trim()));
+                candlesListsMap.computeIfAbsent(currencyPairTimePeriod, key -> new ArrayList<>()).add(chartCandle);
+            } catch (NumberFormatException e) {
+                throw new IOException(String.format("invalid candle at line %d: %s", lineNumber, line), e);
+            }
+        }
+        Map<CurrencyPairTimePeriod, ChartCandle[]> candlesMap = new LinkedHashMap<>();
+        for (Map.Entry<CurrencyPairTimePeriod, List<ChartCandle>> entry : candlesListsMap.entrySet()) {
+            entry.getValue().sort(Comparator.comparingLong(ChartCandle::getTimestampSeconds));
+            candlesMap.put(entry.getKey(), entry.getValue().toArray(new ChartCandle[0]));
+        }
+        return candlesMap;
+    }
+
+    private static boolean isSkipped(String line) {
+        String trimmed = line.trim();
+        return trimmed.isEmpty() || trimmed.startsWith("#");
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Cryptonose
+ *
+ * Copyright © 2019-2022 Dawid Motyka
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package pl.dmotyka.cryptonoseengine;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Binary snapshot of engine state: tickers of every pair and relative changes info, used to restore the engine after restart
+// without fetching all data again, see CryptonoseGenericEngine.enableSnapshots().
+//
+// File format (big endian):
+//  int magic, int format version, long snapshot timestamp (seconds), int number of time periods, long time periods,
+//  int number of pairs, for every pair:
+//   short pair name length, pair name (UTF-8), int number of tickers, (long timestamp, double price) for every ticker,
+//   for every time period: byte 1 if relative changes info is present, then double high-low diff, double relative std deviation
+//   (NaN for null values).
+// Snapshot is written to temporary file which then replaces the previous snapshot, so a partially written file is never read.
+// Snapshot file is memory mapped when reading.
+class EngineSnapshot {
+
+    private static final int MAGIC = 0x434E5353;
+    private static final int FORMAT_VERSION = 1;
+
+    private final long timestampSeconds;
+    // relative changes info for every pair, by period index
+    private final Map<String, RelativeChangesInfo[]> relativeChangesInfoMap;
+
+    private EngineSnapshot(long timestampSeconds, Map<String, RelativeChangesInfo[]> relativeChangesInfoMap) {
+        this.timestampSeconds = timestampSeconds;
+        this.relativeChangesInfoMap = relativeChangesInfoMap;
+    }
+
+    // time of writing the snapshot
+    long getTimestampSeconds() {
+        return timestampSeconds;
+    }
+
+    // set relative changes info from the snapshot for pairs and periods which don't have it yet
+    void restoreRelativeChangesInfo(RelativeChangesChecker relativeChangesChecker) {
+        for (Map.Entry<String, RelativeChangesInfo[]> entry : relativeChangesInfoMap.entrySet()) {
+            int pairId = relativeChangesChecker.getPairId(entry.getKey());
+            if (pairId < 0)
+                continue;
+            RelativeChangesInfo[] relativeChangesInfos = entry.getValue();
+            for (int i = 0; i < relativeChangesInfos.length; i++) {
+                if (relativeChangesInfos[i] != null)
+                    relativeChangesChecker.restoreRelativeChangesInfo(pairId, i, relativeChangesInfos[i]);
+            }
+        }
+    }
+
+    // relativeChangesChecker may be null
+    static void write(Path file,
+                      long timestampSeconds,
+                      long[] timePeriods,
+                      CryptonoseEngineChangesChecker changesChecker,
+                      RelativeChangesChecker relativeChangesChecker) throws IOException {
+        Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(timestampSeconds);
+            out.writeInt(timePeriods.length);
+            for (long timePeriod : timePeriods)
+                out.writeLong(timePeriod);
+            String[] pairs = changesChecker.getPairs();
+            out.writeInt(pairs.length);
+            for (String pair : pairs) {
+                byte[] pairBytes = pair.getBytes(StandardCharsets.UTF_8);
+                out.writeShort(pairBytes.length);
+                out.write(pairBytes);
+                changesChecker.writeTickers(pair, out);
+                int pairId = relativeChangesChecker != null ? relativeChangesChecker.getPairId(pair) : -1;
+                for (int i = 0; i < timePeriods.length; i++) {
+                    RelativeChangesInfo relativeChangesInfo = relativeChangesChecker != null ? relativeChangesChecker.getRelativeChangesInfo(pairId, i) : null;
+                    if (relativeChangesInfo == null) {
+                        out.writeByte(0);
+                        continue;
+                    }
+                    out.writeByte(1);
+                    out.writeDouble(relativeChangesInfo.getHighLowDiff() != null ? relativeChangesInfo.getHighLowDiff() : Double.NaN);
+                    out.writeDouble(relativeChangesInfo.getHighLowDiffRelativeStdDeviation() != null ? relativeChangesInfo.getHighLowDiffRelativeStdDeviation() : Double.NaN);
+                }
+            }
+        }
+        Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // inserts tickers from the snapshot to changes checker, returns snapshot with relative changes info,
+    //  or null (without inserting tickers) if snapshot is older than minTimestampSeconds
+    // throws IOException (without inserting tickers) if file can't be read, is invalid or was created for different time periods,
+    //  tickers are inserted after the whole file is read
+    static EngineSnapshot read(Path file, long[] timePeriods, long minTimestampSeconds, CryptonoseEngineChangesChecker changesChecker) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            try {
+                if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION)
+                    throw new IOException("not a snapshot file or unsupported format version: " + file);
+                long timestampSeconds = buffer.getLong();
+                if (timestampSeconds < minTimestampSeconds)
+                    return null;
+                long[] snapshotTimePeriods = new long[buffer.getInt()];
+                for (int i = 0; i < snapshotTimePeriods.length; i++)
+                    snapshotTimePeriods[i] = buffer.getLong();
+                if (!Arrays.equals(timePeriods, snapshotTimePeriods))
+                    throw new IOException("snapshot was created for different time periods: " + Arrays.toString(snapshotTimePeriods));
+                int numPairs = buffer.getInt();
+                Map<String, RelativeChangesInfo[]> relativeChangesInfoMap = new HashMap<>();
+                List<PairTickers> pairTickersList = new ArrayList<>();
+                for (int i = 0; i < numPairs; i++) {
+                    byte[] pairBytes = new byte[buffer.getShort()];
+                    buffer.get(pairBytes);
+                    String pair = new String(pairBytes, StandardCharsets.UTF_8);
+                    int numTickers = buffer.getInt();
+                    // 16 bytes per ticker, checked before allocating arrays
+                    if (numTickers < 0 || numTickers > buffer.remaining() / 16)
+                        throw new IOException("invalid number of tickers in snapshot file: " + file);
+                    PairTickers pairTickers = new PairTickers(pair, numTickers);
+                    for (int j = 0; j < numTickers; j++) {
+                        pairTickers.timestamps[j] = buffer.getLong();
+                        pairTickers.prices[j] = buffer.getDouble();
+                    }
+                    pairTickersList.add(pairTickers);
+                    RelativeChangesInfo[] relativeChangesInfos = new RelativeChangesInfo[timePeriods.length];
+                    for (int j = 0; j < timePeriods.length; j++) {
+                        if (buffer.get() == 0)
+                            continue;
+                        double highLowDiff = buffer.getDouble();
+                        double highLowDiffRelativeStdDeviation = buffer.getDouble();
+                        relativeChangesInfos[j] = new RelativeChangesInfo(Double.isNaN(highLowDiff) ? null : highLowDiff,
+                                Double.isNaN(highLowDiffRelativeStdDeviation) ? null : highLowDiffRelativeStdDeviation);
+                    }
+                    relativeChangesInfoMap.put(pair, relativeChangesInfos);
+                }
+                for (PairTickers pairTickers : pairTickersList)
+                    changesChecker.loadTickers(pairTickers.pair, pairTickers.timestamps, pairTickers.prices, pairTickers.timestamps.length);
+                return new EngineSnapshot(timestampSeconds, relativeChangesInfoMap);
+            } catch (RuntimeException e) { // BufferUnderflowException for truncated file
+                throw new IOException("invalid snapshot file: " + file, e);
+            }
+        }
+    }
+
+    // tickers of a pair read from snapshot file, inserted to changes checker after reading the whole file
+    private static class PairTickers {
+
+        private final String pair;
+        private final long[] timestamps;
+        private final double[] prices;
+
+        PairTickers(String pair, int numTickers) {
+            this.pair = pair;
+            timestamps = new long[numTickers];
+            prices = new double[numTickers];
+        }
+    }
+}
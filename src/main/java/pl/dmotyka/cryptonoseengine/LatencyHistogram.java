@@ -0,0 +1,98 @@
+/*
+ * Cryptonose
+ *
+ * Copyright © 2019-2022 Dawid Motyka
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package pl.dmotyka.cryptonoseengine;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Lock-free histogram of durations in nanoseconds with fixed buckets: every power of two range is divided into 4 buckets,
+// so values are recorded with at most 25% error (percentiles are reported as upper bounds of buckets).
+class LatencyHistogram {
+
+    private static final int SUB_BUCKETS = 4;
+    private static final int NUM_BUCKETS = 62 * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(NUM_BUCKETS);
+    private final AtomicLong sumNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    void record(long nanos) {
+        if (nanos < 0)
+            nanos = 0;
+        counts.incrementAndGet(bucket(nanos));
+        sumNanos.addAndGet(nanos);
+        if (nanos > maxNanos.get())
+            maxNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    // record time since startNanos (from System.nanoTime())
+    void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    // values recorded concurrently with creating stats may be included partially (e.g. in count but not in sum)
+    LatencyStats stats() {
+        long[] bucketCounts = new long[NUM_BUCKETS];
+        long count = 0;
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            bucketCounts[i] = counts.get(i);
+            count += bucketCounts[i];
+        }
+        if (count == 0)
+            return new LatencyStats(0, 0, 0, 0, 0, 0, 0);
+        return new LatencyStats(count,
+                sumNanos.get() / 1000.0 / count,
+                percentile(bucketCounts, count, 0.5) / 1000.0,
+                percentile(bucketCounts, count, 0.9) / 1000.0,
+                percentile(bucketCounts, count, 0.99) / 1000.0,
+                percentile(bucketCounts, count, 0.999) / 1000.0,
+                maxNanos.get() / 1000.0);
+    }
+
+    void reset() {
+        for (int i = 0; i < NUM_BUCKETS; i++)
+            counts.set(i, 0);
+        sumNanos.set(0);
+        maxNanos.set(0);
+    }
+
+    // values 0-3 have own buckets, then bucket is selected by the highest bit and two following bits
+    static int bucket(long nanos) {
+        if (nanos < SUB_BUCKETS)
+            return (int)nanos;
+        int highestBit = 63 - Long.numberOfLeadingZeros(nanos);
+        int subBucket = (int)(nanos >>> (highestBit - 2)) & (SUB_BUCKETS - 1);
+        return (highestBit - 1) * SUB_BUCKETS + subBucket;
+    }
+
+    // the highest value of bucket
+    static long bucketUpperBound(int bucket) {
+        if (bucket < SUB_BUCKETS)
+            return bucket;
+        int highestBit = bucket / SUB_BUCKETS + 1;
+        int subBucket = bucket % SUB_BUCKETS;
+        return ((long)(SUB_BUCKETS + subBucket + 1) << (highestBit - 2)) - 1;
+    }
+
+    private static long percentile(long[] bucketCounts, long count, double percentile) {
+        long rank = (long)Math.ceil(percentile * count);
+        long cumulativeCount = 0;
+        for (int i = 0; i < bucketCounts.length; i++) {
+            cumulativeCount += bucketCounts[i];
+            if (cumulativeCount >= rank)
+                return bucketUpperBound(i);
+        }
+        return bucketUpperBound(bucketCounts.length - 1);
+    }
+}
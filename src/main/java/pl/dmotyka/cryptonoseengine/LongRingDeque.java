@@ -0,0 +1,94 @@
+/*
+ * Cryptonose
+ *
+ * Copyright © 2019-2022 Dawid Motyka
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package pl.dmotyka.cryptonoseengine;
+
+// Growable double-ended queue of primitive longs, backed by ring array.
+class LongRingDeque {
+
+    private static final int MIN_CAPACITY = 8;
+
+    private long[] elements = new long[MIN_CAPACITY];
+    private int mask = MIN_CAPACITY - 1;
+    private int head = 0;
+    private int size = 0;
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    void clear() {
+        head = 0;
+        size = 0;
+    }
+
+    // element at given position from the beginning of the queue
+    long get(int i) {
+        return elements[(head + i) & mask];
+    }
+
+    long peekFirst() {
+        return elements[head];
+    }
+
+    long peekLast() {
+        return elements[(head + size - 1) & mask];
+    }
+
+    void addLast(long element) {
+        if (size == elements.length)
+            resize(elements.length * 2);
+        elements[(head + size) & mask] = element;
+        size++;
+    }
+
+    long pollFirst() {
+        long element = elements[head];
+        head = (head + 1) & mask;
+        size--;
+        return element;
+    }
+
+    long pollLast() {
+        size--;
+        return elements[(head + size) & mask];
+    }
+
+    // for queue with ascending elements: position of the first element not lower than given value,
+    // or size() if there is no such element
+    int firstIndexNotLowerThan(long value) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (get(mid) >= value)
+                high = mid;
+            else
+                low = mid + 1;
+        }
+        return low;
+    }
+
+    private void resize(int capacity) {
+        long[] newElements = new long[capacity];
+        for (int i = 0; i < size; i++)
+            newElements[i] = get(i);
+        elements = newElements;
+        mask = capacity - 1;
+        head = 0;
+    }
+}
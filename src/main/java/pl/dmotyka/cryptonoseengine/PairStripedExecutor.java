@@ -0,0 +1,96 @@
+/*
+ * Cryptonose
+ *
+ * Copyright © 2019-2022 Dawid Motyka
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package pl.dmotyka.cryptonoseengine;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+// Executes tasks for currency pairs on a fixed number of single thread executors. Tasks for the same pair are
+// always executed by the same executor, so they are executed in order of submission, while tasks for different
+// pairs may be executed in parallel.
+// Every executor has a queue of queueCapacity tasks, when it's full, new task is handled according to overflowPolicy (see
+// EngineChangesDispatcher.OverflowPolicy): BLOCK - submitting thread waits for space in the queue, DROP_OLDEST - the oldest
+// task in the queue is removed. LATEST_PER_PAIR isn't supported (tasks can't be merged). Tasks submitted after shutdown
+// are ignored.
+class PairStripedExecutor {
+
+    private static final Logger logger = Logger.getLogger(PairStripedExecutor.class.getName());
+    // how often waiting for space in a queue checks if executor is shut down
+    private static final long SHUTDOWN_CHECK_MS = 100;
+
+    private final ThreadPoolExecutor[] executors;
+    private final EngineChangesDispatcher.OverflowPolicy overflowPolicy;
+    private final AtomicLong droppedCount = new AtomicLong(0);
+
+    PairStripedExecutor(int numThreads, int queueCapacity, EngineChangesDispatcher.OverflowPolicy overflowPolicy) {
+        if (numThreads < 1 || queueCapacity < 1)
+            throw new IllegalArgumentException("numThreads and queueCapacity should be positive");
+        if (overflowPolicy == EngineChangesDispatcher.OverflowPolicy.LATEST_PER_PAIR)
+            throw new IllegalArgumentException("LATEST_PER_PAIR policy isn't supported");
+        this.overflowPolicy = overflowPolicy;
+        executors = new ThreadPoolExecutor[numThreads];
+        for (int i = 0; i < numThreads; i++) {
+            String threadName = "engine-ingestion-" + i;
+            executors[i] = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                Thread thread = new Thread(runnable, threadName);
+                thread.setDaemon(true);
+                return thread;
+            }, this::handleFullQueue);
+        }
+    }
+
+    void execute(String pair, Runnable task) {
+        executors[(pair.hashCode() & Integer.MAX_VALUE) % executors.length].execute(task);
+    }
+
+    // number of tasks removed from queues without executing (DROP_OLDEST policy, or interrupted waiting for space)
+    long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    // tasks waiting for execution are discarded
+    void shutdown() {
+        for (ThreadPoolExecutor executor : executors)
+            executor.shutdownNow();
+    }
+
+    // called by executor when its queue is full or it's shut down
+    private void handleFullQueue(Runnable task, ThreadPoolExecutor executor) {
+        if (executor.isShutdown()) {
+            logger.fine("task submitted after shutdown is ignored");
+            return;
+        }
+        if (overflowPolicy == EngineChangesDispatcher.OverflowPolicy.DROP_OLDEST) {
+            while (!executor.getQueue().offer(task)) {
+                if (executor.getQueue().poll() != null)
+                    droppedCount.incrementAndGet();
+            }
+            return;
+        }
+        try {
+            while (!executor.getQueue().offer(task, SHUTDOWN_CHECK_MS, TimeUnit.MILLISECONDS)) {
+                if (executor.isShutdown()) {
+                    logger.fine("task submitted after shutdown is ignored");
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            droppedCount.incrementAndGet();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -53,65 +53,43 @@ public class PriceChanges {
     // if maximum price is more recent: 100*(maxPrice-minPrice)/minPrice
     // otherwise: 100*(minPrice-maxPrice)/maxPrice
     public double getPercentChange() {
-        //price risin
-        if (maxPriceTimestampSec > minPriceTimestampSec) {
-            return 100*(maxPrice-minPrice)/minPrice;
-        }
-        //price droppin
-        else {
-            return 100*(minPrice-maxPrice)/maxPrice;
-        }
+        return percentChange(minPrice, minPriceTimestampSec, maxPrice, maxPriceTimestampSec);
     }
 
     // if maximum price is more recent: maxPrice-minPrice
     // otherwise: minPrice-maxPrice
     public double getChange() {
-        //price risin
-        if (maxPriceTimestampSec > minPriceTimestampSec) {
-            return maxPrice-minPrice;
-        }
-        //price droppin
-        else {
-            return minPrice-maxPrice;
-        }
+        return change(minPrice, minPriceTimestampSec, maxPrice, maxPriceTimestampSec);
     }
 
     // get change between maximum price and the lowest consecutive price, reversed
     public double getDropChange() {
-        return minAfterMaxPrice-maxPrice;
+        return dropChange(maxPrice, minAfterMaxPrice);
     }
 
     // get percent change between maximum price and the lowest consecutive price, reversed
     public double getDropPercentChange() {
-        return 100*(minAfterMaxPrice-maxPrice)/maxPrice;
+        return dropPercentChange(maxPrice, minAfterMaxPrice);
     }
 
     // get change between minimum price and the highest consecutive price
     public double getRiseChange() {
-        return minPrice-maxAfterMinPrice;
+        return riseChange(minPrice, maxAfterMinPrice);
     }
 
     // get percent change between minimum price and the highest consecutive price
     public double getRisePercentChange() {
-        return 100*(minPrice-maxAfterMinPrice)/maxAfterMinPrice;
+        return risePercentChange(minPrice, maxAfterMinPrice);
     }
 
     // get change between last price and highest/lowest price, depending which one has bigger absolute value
     public double getLastChange() {
-        double riseChange=lastPrice-minPrice;
-        double dropChange=maxPrice-lastPrice;
-        if(riseChange>dropChange)
-            return riseChange;
-        return -dropChange;
+        return lastChange(lastPrice, minPrice, maxPrice);
     }
 
     // get percent change between last price and highest/lowest price, depending which one has bigger absolute value
     public double getLastPercentChange() {
-        double riseChange=lastPrice-minPrice;
-        double dropChange=maxPrice-lastPrice;
-        if(riseChange>dropChange)
-            return 100*riseChange/minPrice;
-        return -100*dropChange/maxPrice;
+        return lastPercentChange(lastPrice, minPrice, maxPrice);
     }
 
     // get time of change for getChange() in seconds
@@ -131,7 +109,12 @@ public class PriceChanges {
 
     // time (seconds) difference between current timestamp and the higher of the two: min price timestamp, max price timestamp
     public long getPriceChangeAgeSeconds() {
-        return System.currentTimeMillis()/1000-Math.max(minPriceTimestampSec, maxPriceTimestampSec);
+        return getPriceChangeAgeSeconds(System.currentTimeMillis()/1000);
+    }
+
+    // the same as getPriceChangeAgeSeconds() for given current timestamp (e.g. from EngineClock when replaying tickers)
+    public long getPriceChangeAgeSeconds(long currentTimeSeconds) {
+        return currentTimeSeconds-Math.max(minPriceTimestampSec, maxPriceTimestampSec);
     }
 
     // the most recent price
@@ -245,4 +228,60 @@ public class PriceChanges {
     public void setHighLowDiffRelativeStdDev(Double highLowDiffRelativeStdDev) {
         this.highLowDiffRelativeStdDev = highLowDiffRelativeStdDev;
     }
+
+    // calculations of changes for getters above, used also for checking changes before creating PriceChanges
+
+    static double percentChange(double minPrice, long minPriceTimestampSec, double maxPrice, long maxPriceTimestampSec) {
+        //price risin
+        if (maxPriceTimestampSec > minPriceTimestampSec) {
+            return 100*(maxPrice-minPrice)/minPrice;
+        }
+        //price droppin
+        else {
+            return 100*(minPrice-maxPrice)/maxPrice;
+        }
+    }
+
+    static double change(double minPrice, long minPriceTimestampSec, double maxPrice, long maxPriceTimestampSec) {
+        //price risin
+        if (maxPriceTimestampSec > minPriceTimestampSec) {
+            return maxPrice-minPrice;
+        }
+        //price droppin
+        else {
+            return minPrice-maxPrice;
+        }
+    }
+
+    static double dropChange(double maxPrice, double minAfterMaxPrice) {
+        return minAfterMaxPrice-maxPrice;
+    }
+
+    static double dropPercentChange(double maxPrice, double minAfterMaxPrice) {
+        return 100*(minAfterMaxPrice-maxPrice)/maxPrice;
+    }
+
+    static double riseChange(double minPrice, double maxAfterMinPrice) {
+        return minPrice-maxAfterMinPrice;
+    }
+
+    static double risePercentChange(double minPrice, double maxAfterMinPrice) {
+        return 100*(minPrice-maxAfterMinPrice)/maxAfterMinPrice;
+    }
+
+    static double lastChange(double lastPrice, double minPrice, double maxPrice) {
+        double riseChange=lastPrice-minPrice;
+        double dropChange=maxPrice-lastPrice;
+        if(riseChange>dropChange)
+            return riseChange;
+        return -dropChange;
+    }
+
+    static double lastPercentChange(double lastPrice, double minPrice, double maxPrice) {
+        double riseChange=lastPrice-minPrice;
+        double dropChange=maxPrice-lastPrice;
+        if(riseChange>dropChange)
+            return 100*riseChange/minPrice;
+        return -100*dropChange/maxPrice;
+    }
 }
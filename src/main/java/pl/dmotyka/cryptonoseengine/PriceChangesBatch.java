@@ -0,0 +1,266 @@
+/*
+ * Cryptonose
+ *
+ * Copyright © 2019-2022 Dawid Motyka
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package pl.dmotyka.cryptonoseengine;
+
+import java.util.Arrays;
+
+// Price changes for many pairs and time periods stored in columns (array per field), one row for a pair and time period.
+// Values are the same as returned by PriceChanges getters, relative values are NaN when relative data isn't available.
+// Filled by CryptonoseGenericEngine.requestAllPairsChanges(PriceChangesBatch), the batch may be reused for consecutive calls,
+// arrays are reallocated only when more rows are needed.
+public class PriceChangesBatch {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private String[] pairs = new String[0];
+    private int size = 0;
+    private int[] pairId;
+    private long[] timePeriodSeconds;
+    private double[] lastPrice;
+    private long[] lastPriceTimestampSec;
+    private double[] minPrice;
+    private long[] minPriceTimestampSec;
+    private double[] maxPrice;
+    private long[] maxPriceTimestampSec;
+    private double[] maxAfterMinPrice;
+    private long[] maxAfterMinTimestampSec;
+    private double[] minAfterMaxPrice;
+    private long[] minAfterMaxTimestampSec;
+    private double[] relativePriceChange;
+    private double[] relativeLastPriceChange;
+    private double[] relativeDropPriceChange;
+    private double[] relativeRisePriceChange;
+    private double[] highLowDiffRelativeStdDev;
+
+    public PriceChangesBatch() {
+        this(INITIAL_CAPACITY);
+    }
+
+    public PriceChangesBatch(int capacity) {
+        allocate(Math.max(1, capacity));
+    }
+
+    // number of rows
+    public int size() {
+        return size;
+    }
+
+    // pair ids are indices in this array
+    public String[] getPairs() {
+        return pairs;
+    }
+
+    public int getPairId(int row) {
+        return pairId[checkRow(row)];
+    }
+
+    public String getCurrencyPair(int row) {
+        return pairs[pairId[checkRow(row)]];
+    }
+
+    public long getTimePeriodSeconds(int row) {
+        return timePeriodSeconds[checkRow(row)];
+    }
+
+    public double getLastPrice(int row) {
+        return lastPrice[checkRow(row)];
+    }
+
+    public long getLastPriceTimestampSec(int row) {
+        return lastPriceTimestampSec[checkRow(row)];
+    }
+
+    public double getMinPrice(int row) {
+        return minPrice[checkRow(row)];
+    }
+
+    public long getMinPriceTimestampSec(int row) {
+        return minPriceTimestampSec[checkRow(row)];
+    }
+
+    public double getMaxPrice(int row) {
+        return maxPrice[checkRow(row)];
+    }
+
+    public long getMaxPriceTimestampSec(int row) {
+        return maxPriceTimestampSec[checkRow(row)];
+    }
+
+    public double getMaxAfterMinPrice(int row) {
+        return maxAfterMinPrice[checkRow(row)];
+    }
+
+    public double getMinAfterMaxPrice(int row) {
+        return minAfterMaxPrice[checkRow(row)];
+    }
+
+    // see PriceChanges.getPercentChange()
+    public double getPercentChange(int row) {
+        checkRow(row);
+        return PriceChanges.percentChange(minPrice[row], minPriceTimestampSec[row], maxPrice[row], maxPriceTimestampSec[row]);
+    }
+
+    // see PriceChanges.getChange()
+    public double getChange(int row) {
+        checkRow(row);
+        return PriceChanges.change(minPrice[row], minPriceTimestampSec[row], maxPrice[row], maxPriceTimestampSec[row]);
+    }
+
+    // see PriceChanges.getDropPercentChange()
+    public double getDropPercentChange(int row) {
+        checkRow(row);
+        return PriceChanges.dropPercentChange(maxPrice[row], minAfterMaxPrice[row]);
+    }
+
+    // see PriceChanges.getRisePercentChange()
+    public double getRisePercentChange(int row) {
+        checkRow(row);
+        return PriceChanges.risePercentChange(minPrice[row], maxAfterMinPrice[row]);
+    }
+
+    // see PriceChanges.getLastPercentChange()
+    public double getLastPercentChange(int row) {
+        checkRow(row);
+        return PriceChanges.lastPercentChange(lastPrice[row], minPrice[row], maxPrice[row]);
+    }
+
+    // see PriceChanges.getLastChange()
+    public double getLastChange(int row) {
+        checkRow(row);
+        return PriceChanges.lastChange(lastPrice[row], minPrice[row], maxPrice[row]);
+    }
+
+    // NaN if relative data isn't available
+    public double getRelativePriceChange(int row) {
+        return relativePriceChange[checkRow(row)];
+    }
+
+    // NaN if relative data isn't available
+    public double getRelativeLastPriceChange(int row) {
+        return relativeLastPriceChange[checkRow(row)];
+    }
+
+    // NaN if relative data isn't available
+    public double getRelativeDropPriceChange(int row) {
+        return relativeDropPriceChange[checkRow(row)];
+    }
+
+    // NaN if relative data isn't available
+    public double getRelativeRisePriceChange(int row) {
+        return relativeRisePriceChange[checkRow(row)];
+    }
+
+    // NaN if relative data isn't available
+    public double getHighLowDiffRelativeStdDev(int row) {
+        return highLowDiffRelativeStdDev[checkRow(row)];
+    }
+
+    // PriceChanges object for the row, the same as returned by CryptonoseGenericEngine.requestAllPairsChanges()
+    public PriceChanges toPriceChanges(int row) {
+        checkRow(row);
+        PriceChanges priceChanges = new PriceChanges(pairs[pairId[row]],
+                timePeriodSeconds[row],
+                lastPrice[row],
+                lastPriceTimestampSec[row],
+                minPrice[row],
+                minPriceTimestampSec[row],
+                maxPrice[row],
+                maxPriceTimestampSec[row],
+                maxAfterMinPrice[row],
+                maxAfterMinTimestampSec[row],
+                minAfterMaxPrice[row],
+                minAfterMaxTimestampSec[row]);
+        if (!Double.isNaN(relativePriceChange[row])) {
+            priceChanges.setRelativePriceChange(relativePriceChange[row]);
+            priceChanges.setRelativeLastPriceChange(relativeLastPriceChange[row]);
+            priceChanges.setRelativeDropPriceChange(relativeDropPriceChange[row]);
+            priceChanges.setRelativeRisePriceChange(relativeRisePriceChange[row]);
+            priceChanges.setHighLowDiffRelativeStdDev(highLowDiffRelativeStdDev[row]);
+        }
+        return priceChanges;
+    }
+
+    // remove all rows and set pairs for pair ids of new rows
+    void clear(String[] pairs) {
+        this.pairs = pairs;
+        size = 0;
+    }
+
+    // add row for period of priceExtremes, relativeChangesInfo may be null
+    void add(int pairId, PriceExtremes priceExtremes, int periodIndex, RelativeChangesInfo relativeChangesInfo) {
+        if (size == this.pairId.length)
+            allocate(2 * size);
+        int row = size++;
+        this.pairId[row] = pairId;
+        timePeriodSeconds[row] = priceExtremes.timePeriods[periodIndex];
+        lastPrice[row] = priceExtremes.lastPrice;
+        lastPriceTimestampSec[row] = priceExtremes.lastPriceTimestampSec;
+        minPrice[row] = priceExtremes.minPrice[periodIndex];
+        minPriceTimestampSec[row] = priceExtremes.minPriceTimestampSec[periodIndex];
+        maxPrice[row] = priceExtremes.maxPrice[periodIndex];
+        maxPriceTimestampSec[row] = priceExtremes.maxPriceTimestampSec[periodIndex];
+        maxAfterMinPrice[row] = priceExtremes.maxAfterMinPrice[periodIndex];
+        maxAfterMinTimestampSec[row] = priceExtremes.maxAfterMinTimestampSec[periodIndex];
+        minAfterMaxPrice[row] = priceExtremes.minAfterMaxPrice[periodIndex];
+        minAfterMaxTimestampSec[row] = priceExtremes.minAfterMaxTimestampSec[periodIndex];
+        if (relativeChangesInfo != null && !relativeChangesInfo.isEmpty()) {
+            double highLowDiff = relativeChangesInfo.getHighLowDiff();
+            relativePriceChange[row] = priceExtremes.change(periodIndex) / highLowDiff;
+            relativeLastPriceChange[row] = priceExtremes.lastChange(periodIndex) / highLowDiff;
+            relativeDropPriceChange[row] = priceExtremes.dropChange(periodIndex) / highLowDiff;
+            relativeRisePriceChange[row] = priceExtremes.riseChange(periodIndex) / highLowDiff;
+            highLowDiffRelativeStdDev[row] = relativeChangesInfo.getHighLowDiffRelativeStdDeviation();
+        } else {
+            relativePriceChange[row] = Double.NaN;
+            relativeLastPriceChange[row] = Double.NaN;
+            relativeDropPriceChange[row] = Double.NaN;
+            relativeRisePriceChange[row] = Double.NaN;
+            highLowDiffRelativeStdDev[row] = Double.NaN;
+        }
+    }
+
+    private int checkRow(int row) {
+        if (row < 0 || row >= size)
+            throw new IndexOutOfBoundsException("row " + row + ", size " + size);
+        return row;
+    }
+
+    private void allocate(int capacity) {
+        pairId = pairId == null ? new int[capacity] : Arrays.copyOf(pairId, capacity);
+        timePeriodSeconds = copyOf(timePeriodSeconds, capacity);
+        lastPrice = copyOf(lastPrice, capacity);
+        lastPriceTimestampSec = copyOf(lastPriceTimestampSec, capacity);
+        minPrice = copyOf(minPrice, capacity);
+        minPriceTimestampSec = copyOf(minPriceTimestampSec, capacity);
+        maxPrice = copyOf(maxPrice, capacity);
+        maxPriceTimestampSec = copyOf(maxPriceTimestampSec, capacity);
+        maxAfterMinPrice = copyOf(maxAfterMinPrice, capacity);
+        maxAfterMinTimestampSec = copyOf(maxAfterMinTimestampSec, capacity);
+        minAfterMaxPrice = copyOf(minAfterMaxPrice, capacity);
+        minAfterMaxTimestampSec = copyOf(minAfterMaxTimestampSec, capacity);
+        relativePriceChange = copyOf(relativePriceChange, capacity);
+        relativeLastPriceChange = copyOf(relativeLastPriceChange, capacity);
+        relativeDropPriceChange = copyOf(relativeDropPriceChange, capacity);
+        relativeRisePriceChange = copyOf(relativeRisePriceChange, capacity);
+        highLowDiffRelativeStdDev = copyOf(highLowDiffRelativeStdDev, capacity);
+    }
+
+    private static double[] copyOf(double[] array, int capacity) {
+        return array == null ? new double[capacity] : Arrays.copyOf(array, capacity);
+    }
+
+    private static long[] copyOf(long[] array, int capacity) {
+        return array == null ? new long[capacity] : Arrays.copyOf(array, capacity);
+    }
+}
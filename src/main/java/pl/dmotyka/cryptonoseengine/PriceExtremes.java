@@ -0,0 +1,90 @@
+/*
+ * Cryptonose
+ *
+ * Copyright © 2019-2022 Dawid Motyka
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package pl.dmotyka.cryptonoseengine;
+
+// Prices and timestamps needed to create PriceChanges for all time periods of a currency pair.
+// Filled by CryptonoseEngineChangesChecker, may be reused for consecutive checks to avoid creating objects
+// for periods which don't need PriceChanges.
+class PriceExtremes {
+
+    final long[] timePeriods;
+    // true if there is at least one ticker in the period
+    final boolean[] valid;
+    double lastPrice;
+    long lastPriceTimestampSec;
+    final double[] minPrice;
+    final long[] minPriceTimestampSec;
+    final double[] maxPrice;
+    final long[] maxPriceTimestampSec;
+    final double[] maxAfterMinPrice;
+    final long[] maxAfterMinTimestampSec;
+    final double[] minAfterMaxPrice;
+    final long[] minAfterMaxTimestampSec;
+
+    PriceExtremes(long[] timePeriods) {
+        this.timePeriods = timePeriods;
+        valid = new boolean[timePeriods.length];
+        minPrice = new double[timePeriods.length];
+        minPriceTimestampSec = new long[timePeriods.length];
+        maxPrice = new double[timePeriods.length];
+        maxPriceTimestampSec = new long[timePeriods.length];
+        maxAfterMinPrice = new double[timePeriods.length];
+        maxAfterMinTimestampSec = new long[timePeriods.length];
+        minAfterMaxPrice = new double[timePeriods.length];
+        minAfterMaxTimestampSec = new long[timePeriods.length];
+    }
+
+    int numPeriods() {
+        return timePeriods.length;
+    }
+
+    double percentChange(int periodIndex) {
+        return PriceChanges.percentChange(minPrice[periodIndex], minPriceTimestampSec[periodIndex], maxPrice[periodIndex], maxPriceTimestampSec[periodIndex]);
+    }
+
+    double change(int periodIndex) {
+        return PriceChanges.change(minPrice[periodIndex], minPriceTimestampSec[periodIndex], maxPrice[periodIndex], maxPriceTimestampSec[periodIndex]);
+    }
+
+    double lastPercentChange(int periodIndex) {
+        return PriceChanges.lastPercentChange(lastPrice, minPrice[periodIndex], maxPrice[periodIndex]);
+    }
+
+    double lastChange(int periodIndex) {
+        return PriceChanges.lastChange(lastPrice, minPrice[periodIndex], maxPrice[periodIndex]);
+    }
+
+    double dropChange(int periodIndex) {
+        return PriceChanges.dropChange(maxPrice[periodIndex], minAfterMaxPrice[periodIndex]);
+    }
+
+    double riseChange(int periodIndex) {
+        return PriceChanges.riseChange(minPrice[periodIndex], maxAfterMinPrice[periodIndex]);
+    }
+
+    PriceChanges toPriceChanges(String pair, int periodIndex) {
+        return new PriceChanges(pair,
+                timePeriods[periodIndex],
+                lastPrice,
+                lastPriceTimestampSec,
+                minPrice[periodIndex],
+                minPriceTimestampSec[periodIndex],
+                maxPrice[periodIndex],
+                maxPriceTimestampSec[periodIndex],
+                maxAfterMinPrice[periodIndex],
+                maxAfterMinTimestampSec[periodIndex],
+                minAfterMaxPrice[periodIndex],
+                minAfterMaxTimestampSec[periodIndex]);
+    }
+}
@@ -13,9 +13,11 @@
 
 package pl.dmotyka.cryptonoseengine;
 
-import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.logging.Logger;
 
 import pl.dmotyka.exchangeutils.chartdataprovider.ChartDataProvider;
@@ -23,7 +25,6 @@ import pl.dmotyka.exchangeutils.chartdataprovider.CurrencyPairTimePeriod;
 import pl.dmotyka.exchangeutils.chartinfo.ChartCandle;
 import pl.dmotyka.exchangeutils.chartutils.AvgHiLo;
 import pl.dmotyka.exchangeutils.chartutils.MedianHiLo;
-import pl.dmotyka.exchangeutils.chartutils.RelativeStdDeviation;
 import pl.dmotyka.exchangeutils.chartutils.SingleValueIndicator;
 import pl.dmotyka.exchangeutils.chartutils.WeightedAvgHiLo;
 
@@ -39,47 +40,178 @@ public class RelativeChangesChecker {
     // chart candle is used for calculation only if its price change if higher than last price multiplied by this value
     public static final double MIN_CANDLE_CHANGE = 0.0001;
 
-    private SingleValueIndicator hiLoDiffIndicator = new AvgHiLo();
-    private final Map<CurrencyPairTimePeriod,RelativeChangesInfo> relativeChangesInfoMap=new HashMap<>();
+    // used to tell pair ids of different checkers apart when cached in TickersWindow
+    private static final AtomicInteger generationCounter = new AtomicInteger(0);
 
+    private volatile SingleValueIndicator hiLoDiffIndicator = new AvgHiLo();
+    private final int numCandles;
+    private final long[] timePeriods;
+    // dense ids of pairs, info for pair and period is at index pairId * timePeriods.length + periodIndex
+    private final Map<String,Integer> pairIds = new HashMap<>();
+    private final AtomicReferenceArray<RelativeChangesInfo> relativeChangesInfos;
+    // high-low differences statistics of candles window for every pair and period, updated only for new or changed candles
+    private final RollingHiLoDiffStats[] hiLoDiffStats;
+    // info and statistics for pairs and periods not given in constructor (e.g. additional chart data periods)
+    private final Map<CurrencyPairTimePeriod,RelativeChangesInfo> otherRelativeChangesInfos = new ConcurrentHashMap<>();
+    private final Map<CurrencyPairTimePeriod,RollingHiLoDiffStats> otherHiLoDiffStats = new ConcurrentHashMap<>();
+    private final int generation = generationCounter.incrementAndGet();
+
+    // relative changes for all pairs and periods received from chart data provider are kept in a map,
+    //  use the constructor with pairs and time periods for lookups without hashing
     public RelativeChangesChecker(ChartDataProvider chartDataProvider, int numCandles) {
-       chartDataProvider.subscribeChartCandles((chartCandlesMap) -> {
-           logger.fine("updating relative changes data");
-           for(Map.Entry<CurrencyPairTimePeriod,ChartCandle[]> currentEntry : chartCandlesMap.entrySet()) {
-               CurrencyPairTimePeriod currencyPairTimePeriod = currentEntry.getKey();
-               ChartCandle[] allCandles = currentEntry.getValue();
-               ChartCandle[] chartCandles = Arrays.copyOfRange(allCandles, Math.max(0,allCandles.length-numCandles), allCandles.length);
-               if (chartCandles.length == 0)
-                   continue;
-               double lastClosePrice = chartCandles[chartCandles.length-1].getClose();
-               chartCandles = Arrays.stream(chartCandles).filter(c -> Math.abs(c.getHigh()-c.getLow()) > lastClosePrice * MIN_CANDLE_CHANGE).toArray(ChartCandle[]::new);
-               if (chartCandles.length == 0)
-                   continue;
-               double highLowDiff = hiLoDiffIndicator.calcValue(chartCandles, chartCandles.length);
-               double highLowDiffRelativeStdDeviation = new RelativeStdDeviation().calcValue(chartCandles, chartCandles.length);
-               relativeChangesInfoMap.put(currencyPairTimePeriod,new RelativeChangesInfo(highLowDiff, highLowDiffRelativeStdDeviation));
-           }
-       });
+        this(chartDataProvider, new String[0], new long[0], numCandles);
+    }
+
+    public RelativeChangesChecker(ChartDataProvider chartDataProvider, String[] pairs, long[] timePeriods, int numCandles) {
+        this(pairs, timePeriods, numCandles);
+        chartDataProvider.subscribeChartCandles(this::updateCandles);
+    }
+
+    RelativeChangesChecker(String[] pairs, long[] timePeriods, int numCandles) {
+        this.numCandles = numCandles;
+        this.timePeriods = timePeriods;
+        for (String pair : pairs)
+            pairIds.putIfAbsent(pair, pairIds.size());
+        relativeChangesInfos = new AtomicReferenceArray<>(pairIds.size() * timePeriods.length);
+        hiLoDiffStats = new RollingHiLoDiffStats[pairIds.size() * timePeriods.length];
+    }
+
+    // returns -1 for unknown pair
+    int getPairId(String pair) {
+        Integer pairId = pairIds.get(pair);
+        return pairId != null ? pairId : -1;
+    }
+
+    // the same as getPairId(pair), the id is cached in tickers window of the pair, so it's resolved once per pair
+    int getPairId(String pair, TickersWindow tickersWindow) {
+        long cached = tickersWindow.relativeChangesPairId;
+        if ((int)(cached >>> 32) == generation)
+            return (int)cached;
+        int pairId = getPairId(pair);
+        tickersWindow.relativeChangesPairId = ((long)generation << 32) | (pairId & 0xFFFFFFFFL);
+        return pairId;
+    }
+
+    // returns -1 for unknown period
+    int getPeriodIndex(long timePeriodSeconds) {
+        for (int i = 0; i < timePeriods.length; i++) {
+            if (timePeriods[i] == timePeriodSeconds)
+                return i;
+        }
+        return -1;
+    }
+
+    // chart data provider sends candles of all pairs and periods, statistics are updated only for new or changed candles
+    //  (usually the last one), see RollingHiLoDiffStats
+    void updateCandles(Map<CurrencyPairTimePeriod,ChartCandle[]> chartCandlesMap) {
+        logger.fine("updating relative changes data");
+        SingleValueIndicator hiLoDiffIndicator = this.hiLoDiffIndicator;
+        for(Map.Entry<CurrencyPairTimePeriod,ChartCandle[]> currentEntry : chartCandlesMap.entrySet()) {
+            CurrencyPairTimePeriod currencyPairTimePeriod = currentEntry.getKey();
+            int index = index(getPairId(currencyPairTimePeriod.getCurrencyPairSymbol()), getPeriodIndex(currencyPairTimePeriod.getTimePeriodSeconds()));
+            ChartCandle[] allCandles = currentEntry.getValue();
+            RollingHiLoDiffStats stats;
+            if (index >= 0) {
+                if (hiLoDiffStats[index] == null)
+                    hiLoDiffStats[index] = new RollingHiLoDiffStats(numCandles, MIN_CANDLE_CHANGE);
+                stats = hiLoDiffStats[index];
+            } else {
+                stats = otherHiLoDiffStats.computeIfAbsent(currencyPairTimePeriod, k -> new RollingHiLoDiffStats(numCandles, MIN_CANDLE_CHANGE));
+            }
+            if (!stats.update(allCandles) || stats.count() == 0)
+                continue;
+            double highLowDiff;
+            if (hiLoDiffIndicator instanceof WeightedAvgHiLo) {
+                highLowDiff = stats.weightedAverage();
+            } else if (hiLoDiffIndicator instanceof AvgHiLo) {
+                highLowDiff = stats.average();
+            } else {
+                // median can't be updated incrementally, it's calculated for the whole window
+                int fromIndex = Math.max(0,allCandles.length-numCandles);
+                double lastClosePrice = allCandles[allCandles.length-1].getClose();
+                ChartCandle[] chartCandles = filterCandles(allCandles, fromIndex, lastClosePrice * MIN_CANDLE_CHANGE);
+                if (chartCandles.length == 0)
+                    continue;
+                highLowDiff = hiLoDiffIndicator.calcValue(chartCandles, chartCandles.length);
+            }
+            RelativeChangesInfo relativeChangesInfo = new RelativeChangesInfo(highLowDiff, stats.relativeStdDeviation());
+            if (index >= 0)
+                relativeChangesInfos.set(index, relativeChangesInfo);
+            else
+                otherRelativeChangesInfos.put(currencyPairTimePeriod, relativeChangesInfo);
+        }
+    }
+
+    // candles starting from fromIndex with high-low difference higher than minChange
+    private static ChartCandle[] filterCandles(ChartCandle[] allCandles, int fromIndex, double minChange) {
+        int count = 0;
+        for (int i = fromIndex; i < allCandles.length; i++) {
+            if (Math.abs(allCandles[i].getHigh()-allCandles[i].getLow()) > minChange)
+                count++;
+        }
+        ChartCandle[] chartCandles = new ChartCandle[count];
+        int j = 0;
+        for (int i = fromIndex; i < allCandles.length; i++) {
+            if (Math.abs(allCandles[i].getHigh()-allCandles[i].getLow()) > minChange)
+                chartCandles[j++] = allCandles[i];
+        }
+        return chartCandles;
     }
 
     public double getRelativeChangeValue(String pair, long timePeriodSeconds, double priceChange) throws NoDataException {
-        Double highLowDiff = relativeChangesInfoMap.get(new CurrencyPairTimePeriod(pair,(int)timePeriodSeconds)).getHighLowDiff();
-        if(highLowDiff!=null)
-            return priceChange/highLowDiff;
+        RelativeChangesInfo relativeChangesInfo = getRelativeChangesInfo(pair, timePeriodSeconds);
+        if(relativeChangesInfo!=null && relativeChangesInfo.getHighLowDiff()!=null)
+            return priceChange/relativeChangesInfo.getHighLowDiff();
         else
             throw new NoDataException();
     }
 
     public double getHighLowDiffRelativeStdDeviation(String pair, long timePeriodSeconds) throws NoDataException {
-        RelativeChangesInfo relativeChangesInfo = relativeChangesInfoMap.get(new CurrencyPairTimePeriod(pair,(int)timePeriodSeconds));
+        RelativeChangesInfo relativeChangesInfo = getRelativeChangesInfo(pair, timePeriodSeconds);
         if(relativeChangesInfo!=null)
             return relativeChangesInfo.getHighLowDiffRelativeStdDeviation();
         else
             throw new NoDataException();
     }
 
+    // returns null if there is no data for pair and period
+    RelativeChangesInfo getRelativeChangesInfo(String pair, long timePeriodSeconds) {
+        int index = index(getPairId(pair), getPeriodIndex(timePeriodSeconds));
+        if (index >= 0)
+            return relativeChangesInfos.get(index);
+        return otherRelativeChangesInfos.get(new CurrencyPairTimePeriod(pair, (int)timePeriodSeconds));
+    }
+
+    // returns null if there is no data for pair and period, or pairId or periodIndex is -1
+    RelativeChangesInfo getRelativeChangesInfo(int pairId, int periodIndex) {
+        int index = index(pairId, periodIndex);
+        return index >= 0 ? relativeChangesInfos.get(index) : null;
+    }
+
+    // true if there is info for all time periods of the pair
+    boolean hasRelativeChangesInfo(String pair) {
+        int pairId = getPairId(pair);
+        if (pairId < 0)
+            return false;
+        for (int i = 0; i < timePeriods.length; i++) {
+            if (relativeChangesInfos.get(index(pairId, i)) == null)
+                return false;
+        }
+        return true;
+    }
+
+    // set info restored from snapshot, if there is no info calculated from candles yet
+    void restoreRelativeChangesInfo(int pairId, int periodIndex, RelativeChangesInfo relativeChangesInfo) {
+        int index = index(pairId, periodIndex);
+        if (index >= 0)
+            relativeChangesInfos.compareAndSet(index, null, relativeChangesInfo);
+    }
+
     public void setRelativeChange(PriceChanges priceChanges) {
-        RelativeChangesInfo relativeChangesInfo=relativeChangesInfoMap.get(new CurrencyPairTimePeriod(priceChanges.getCurrencyPair(),(int)priceChanges.getTimePeriodSeconds()));
+        setRelativeChange(priceChanges, getRelativeChangesInfo(priceChanges.getCurrencyPair(), priceChanges.getTimePeriodSeconds()));
+    }
+
+    void setRelativeChange(PriceChanges priceChanges, RelativeChangesInfo relativeChangesInfo) {
         if(relativeChangesInfo!=null && !relativeChangesInfo.isEmpty()) {
             priceChanges.setRelativePriceChange(priceChanges.getChange() / relativeChangesInfo.getHighLowDiff());
             priceChanges.setRelativeLastPriceChange(priceChanges.getLastChange() / relativeChangesInfo.getHighLowDiff());
@@ -94,13 +226,41 @@ public class RelativeChangesChecker {
             setRelativeChange(priceChange);
     }
 
+    // price changes should be for the pair with given id (see getPairId()), as returned by CryptonoseEngineChangesChecker
+    void setRelativeChanges(PriceChanges[] priceChanges, int pairId) {
+        for(PriceChanges priceChange : priceChanges) {
+            int periodIndex = getPeriodIndex(priceChange.getTimePeriodSeconds());
+            if (pairId >= 0 && periodIndex >= 0)
+                setRelativeChange(priceChange, getRelativeChangesInfo(pairId, periodIndex));
+            else
+                setRelativeChange(priceChange);
+        }
+    }
+
     // call to switch changes checker to use median instead of average high-low differences
     public void setUseMedianHighLowDiff() {
         hiLoDiffIndicator = new MedianHiLo();
+        invalidateStats();
     }
 
     public void setUseWeightedHighLowDiff() {
         hiLoDiffIndicator = new WeightedAvgHiLo();
+        invalidateStats();
+    }
+
+    private void invalidateStats() {
+        for (RollingHiLoDiffStats stats : hiLoDiffStats) {
+            if (stats != null)
+                stats.invalidate();
+        }
+        for (RollingHiLoDiffStats stats : otherHiLoDiffStats.values())
+            stats.invalidate();
+    }
+
+    private int index(int pairId, int periodIndex) {
+        if (pairId < 0 || periodIndex < 0)
+            return -1;
+        return pairId * timePeriods.length + periodIndex;
     }
 
 }
@@ -0,0 +1,192 @@
+/*
+ * Cryptonose
+ *
+ * Copyright © 2019-2022 Dawid Motyka
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package pl.dmotyka.cryptonoseengine;
+
+import pl.dmotyka.exchangeutils.chartinfo.ChartCandle;
+
+// Rolling statistics of high-low differences of the last numCandles candles of a pair and period. When the window is moved
+// by new candles or the last candle (open until closed) is updated, running sums are updated in O(1) per candle, instead
+// of calculating indicators again for the whole window.
+// Values use the same formulas as exchangeutils indicators:
+//  average (AvgHiLo) - sum(diff) / n
+//  weighted average (WeightedAvgHiLo) - weights 1..n from the oldest candle, sum(i * diff_i) / sum(i)
+//  relative standard deviation (RelativeStdDeviation) - population standard deviation / average
+// Differences from calculating indicators for the whole window:
+//  - a candle is skipped when its high-low difference isn't higher than MIN_CANDLE_CHANGE of its own close price (instead
+//    of the close price of the last candle), it matters only for candles with the difference close to the threshold
+//  - rounding errors of running sums, the sums are calculated again from the window every numCandles updates, so relative
+//    error of values stays below 1e-9
+// Not thread safe.
+class RollingHiLoDiffStats {
+
+    private final int numCandles;
+    private final double minCandleChange;
+    // ring buffer of candles in the window, from the oldest, diff is NaN for skipped candles
+    private final long[] timestamps;
+    private final double[] diffs;
+    private int head = 0;
+    private int size = 0;
+    // number of not skipped candles and sums of their differences, weight is position among not skipped candles (from 1)
+    private int count = 0;
+    private double sum = 0;
+    private double sumSquares = 0;
+    private double weightedSum = 0;
+    private int updatesSinceRecalculation = 0;
+    private volatile boolean valid = false;
+
+    RollingHiLoDiffStats(int numCandles, double minCandleChange) {
+        this.numCandles = numCandles;
+        this.minCandleChange = minCandleChange;
+        timestamps = new long[numCandles];
+        diffs = new double[numCandles];
+    }
+
+    // move window to the last numCandles of allCandles (sorted by timestamp), returns true if statistics changed
+    // when allCandles continue the window (the last candle of the window is in allCandles), only the last candle
+    //  and new ones are processed (closed candles don't change), otherwise the window is filled again
+    boolean update(ChartCandle[] allCandles) {
+        if (allCandles.length == 0)
+            return false;
+        int fromIndex = Math.max(0, allCandles.length - numCandles);
+        if (!valid || size == 0)
+            return fill(allCandles, fromIndex);
+        long lastTimestamp = timestamps[ringIndex(size - 1)];
+        int lastIndex = allCandles.length - 1;
+        while (lastIndex >= fromIndex && allCandles[lastIndex].getTimestampSeconds() > lastTimestamp)
+            lastIndex--;
+        if (lastIndex < fromIndex || allCandles[lastIndex].getTimestampSeconds() != lastTimestamp)
+            return fill(allCandles, fromIndex);
+        boolean changed = false;
+        double lastDiff = diff(allCandles[lastIndex]);
+        if (Double.compare(lastDiff, diffs[ringIndex(size - 1)]) != 0) {
+            removeLast();
+            addLast(lastTimestamp, lastDiff);
+            changed = true;
+        }
+        for (int i = lastIndex + 1; i < allCandles.length; i++) {
+            if (size == numCandles)
+                removeFirst();
+            addLast(allCandles[i].getTimestampSeconds(), diff(allCandles[i]));
+            changed = true;
+        }
+        // candles before the last one of the window are different (or window is shorter than candles)
+        if (size != allCandles.length - fromIndex || timestamps[head] != allCandles[fromIndex].getTimestampSeconds())
+            return fill(allCandles, fromIndex);
+        if (changed && ++updatesSinceRecalculation >= numCandles)
+            recalculateSums();
+        return changed;
+    }
+
+    // calculate again on the next update
+    void invalidate() {
+        valid = false;
+    }
+
+    // number of candles used for statistics (not skipped), other methods shouldn't be called when it's 0
+    int count() {
+        return count;
+    }
+
+    double average() {
+        return sum / count;
+    }
+
+    double weightedAverage() {
+        return weightedSum / ((double)count * (count + 1) / 2);
+    }
+
+    double relativeStdDeviation() {
+        double average = average();
+        double variance = Math.max(0, sumSquares / count - average * average);
+        return Math.sqrt(variance) / average;
+    }
+
+    private boolean fill(ChartCandle[] allCandles, int fromIndex) {
+        head = 0;
+        size = 0;
+        for (int i = fromIndex; i < allCandles.length; i++) {
+            timestamps[size] = allCandles[i].getTimestampSeconds();
+            diffs[size] = diff(allCandles[i]);
+            size++;
+        }
+        recalculateSums();
+        valid = true;
+        return true;
+    }
+
+    private void recalculateSums() {
+        count = 0;
+        sum = 0;
+        sumSquares = 0;
+        weightedSum = 0;
+        for (int i = 0; i < size; i++) {
+            double diff = diffs[ringIndex(i)];
+            if (Double.isNaN(diff))
+                continue;
+            count++;
+            sum += diff;
+            sumSquares += diff * diff;
+            weightedSum += count * diff;
+        }
+        updatesSinceRecalculation = 0;
+    }
+
+    // removing the oldest candle lowers weights of other candles by 1
+    private void removeFirst() {
+        double diff = diffs[head];
+        if (!Double.isNaN(diff)) {
+            weightedSum -= sum;
+            sum -= diff;
+            sumSquares -= diff * diff;
+            count--;
+        }
+        head = ringIndex(1);
+        size--;
+    }
+
+    private void removeLast() {
+        double diff = diffs[ringIndex(size - 1)];
+        if (!Double.isNaN(diff)) {
+            weightedSum -= count * diff;
+            sum -= diff;
+            sumSquares -= diff * diff;
+            count--;
+        }
+        size--;
+    }
+
+    private void addLast(long timestamp, double diff) {
+        int index = ringIndex(size);
+        timestamps[index] = timestamp;
+        diffs[index] = diff;
+        size++;
+        if (!Double.isNaN(diff)) {
+            count++;
+            sum += diff;
+            sumSquares += diff * diff;
+            weightedSum += count * diff;
+        }
+    }
+
+    // NaN if candle is skipped
+    private double diff(ChartCandle candle) {
+        double diff = Math.abs(candle.getHigh() - candle.getLow());
+        return diff > candle.getClose() * minCandleChange ? diff : Double.NaN;
+    }
+
+    private int ringIndex(int i) {
+        int index = head + i;
+        return index < numCandles ? index : index - numCandles;
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ * Cryptonose
+ *
+ * Copyright © 2019-2022 Dawid Motyka
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package pl.dmotyka.cryptonoseengine;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import pl.dmotyka.exchangeutils.tickerprovider.Ticker;
+
+// Append-only journal of tickers received by the engine, see CryptonoseGenericEngine.enableTickerJournal() and
+// TickerJournalReader.
+//
+// Journal directory contains:
+//  pairs - pair names (UTF-8), one per line, pair id is the line index (from 0), new pairs are appended,
+//  <segment number>.journal - segments of fixed size, memory mapped when writing (and reading), a new segment is created when
+//   the current one is full and every time the journal is opened (existing segments aren't modified).
+// Segment format (big endian): int magic, int format version, int record size, int number of records (capacity), then
+//  fixed size records: long receive timestamp (millis), long exchange timestamp (seconds), double price, int pair id, int unused.
+// Receive timestamp is written as the last field of record and is never 0, the first record with 0 receive timestamp marks
+// the end of written records.
+// Files are created and written by a background thread, so appending tickers only writes to memory: the next segment is
+// created when the previous one is taken into use, and names of new pairs are appended to pairs file after records with
+// their ids are written (until the journal is closed). The unused next segment is deleted when the journal is closed.
+class TickerJournal implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(TickerJournal.class.getName());
+
+    static final int MAGIC = 0x434E544A;
+    static final int FORMAT_VERSION = 1;
+    static final int HEADER_BYTES = 4 * Integer.BYTES;
+    static final int RECORD_BYTES = 4 * Long.BYTES;
+    static final String PAIRS_FILE_NAME = "pairs";
+    static final String SEGMENT_SUFFIX = ".journal";
+
+    private final Path directory;
+    private final int segmentRecords;
+    private final Map<String, Integer> pairIds = new HashMap<>();
+    private int nextSegmentNumber;
+    private MappedByteBuffer segment;
+    // number of records in the current segment
+    private int numRecords;
+    private boolean closed = false;
+    // creates segments and writes pair names
+    private final ExecutorService ioExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "engine-ticker-journal");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // segment created in background, used when the current one is full
+    private Path nextSegmentFile;
+    private Future<MappedByteBuffer> nextSegment;
+    // error of writing pair names in background, thrown by the next append()
+    private volatile IOException pairsWriteError = null;
+
+    TickerJournal(Path directory, int segmentRecords) throws IOException {
+        if (segmentRecords <= 0 || (long)segmentRecords * RECORD_BYTES > Integer.MAX_VALUE - HEADER_BYTES)
+            throw new IllegalArgumentException("invalid number of records in segment: " + segmentRecords);
+        this.directory = directory;
+        this.segmentRecords = segmentRecords;
+        Files.createDirectories(directory);
+        String[] pairs = readPairs(directory);
+        for (int i = 0; i < pairs.length; i++)
+            pairIds.put(pairs[i], i);
+        List<Path> segments = segments(directory);
+        nextSegmentNumber = segments.isEmpty() ? 0 : segmentNumber(segments.get(segments.size() - 1)) + 1;
+        createNextSegment();
+    }
+
+    synchronized void append(Ticker[] tickers, long receiveTimestampMillis) throws IOException {
+        if (closed)
+            return;
+        if (pairsWriteError != null)
+            throw new IOException("when writing ticker journal pair names", pairsWriteError);
+        for (Ticker ticker : tickers)
+            writeRecord(ticker, receiveTimestampMillis);
+    }
+
+    // waits until pair names are written
+    @Override
+    public synchronized void close() {
+        if (closed)
+            return;
+        closed = true;
+        if (segment != null)
+            segment.force();
+        segment = null;
+        Path unusedSegmentFile = nextSegmentFile;
+        ioExecutor.execute(() -> {
+            try {
+                Files.deleteIfExists(unusedSegmentFile);
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "when deleting unused ticker journal segment", e);
+            }
+        });
+        nextSegment = null;
+        ioExecutor.shutdown();
+        try {
+            if (!ioExecutor.awaitTermination(1, TimeUnit.MINUTES))
+                logger.warning("ticker journal pair names weren't written in 1 minute");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeRecord(Ticker ticker, long receiveTimestampMillis) throws IOException {
+        if (segment == null || numRecords == segmentRecords)
+            newSegment();
+        int pairId = getPairId(ticker.getPair());
+        int offset = HEADER_BYTES + numRecords * RECORD_BYTES;
+        segment.putLong(offset + Long.BYTES, ticker.getTimestampSeconds());
+        segment.putDouble(offset + 2 * Long.BYTES, ticker.getValue());
+        segment.putInt(offset + 3 * Long.BYTES, pairId);
+        // record is complete when receive timestamp is not 0
+        segment.putLong(offset, Math.max(1, receiveTimestampMillis));
+        numRecords++;
+    }
+
+    private int getPairId(String pair) throws IOException {
+        Integer pairId = pairIds.get(pair);
+        if (pairId != null)
+            return pairId;
+        ioExecutor.execute(() -> writePair(pair));
+        pairIds.put(pair, pairIds.size());
+        return pairIds.size() - 1;
+    }
+
+    private void writePair(String pair) {
+        try {
+            Files.write(directory.resolve(PAIRS_FILE_NAME),
+                    Collections.singletonList(pair),
+                    StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            pairsWriteError = e;
+        }
+    }
+
+    // full segment is flushed by the OS, so writing doesn't wait for disk
+    private void newSegment() throws IOException {
+        try {
+            segment = nextSegment.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted when waiting for ticker journal segment", e);
+        } catch (ExecutionException e) {
+            throw new IOException("when creating ticker journal segment", e.getCause());
+        }
+        numRecords = 0;
+        createNextSegment();
+    }
+
+    private void createNextSegment() {
+        Path segmentFile = directory.resolve(String.format("%010d%s", nextSegmentNumber++, SEGMENT_SUFFIX));
+        nextSegmentFile = segmentFile;
+        nextSegment = ioExecutor.submit(() -> createSegment(segmentFile, segmentRecords));
+    }
+
+    private static MappedByteBuffer createSegment(Path segmentFile, int segmentRecords) throws IOException {
+        MappedByteBuffer segment;
+        try (FileChannel fileChannel = FileChannel.open(segmentFile, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            segment = fileChannel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + (long)segmentRecords * RECORD_BYTES);
+        }
+        segment.putInt(0, MAGIC);
+        segment.putInt(Integer.BYTES, FORMAT_VERSION);
+        segment.putInt(2 * Integer.BYTES, RECORD_BYTES);
+        segment.putInt(3 * Integer.BYTES, segmentRecords);
+        return segment;
+    }
+
+    // pair names by pair id
+    static String[] readPairs(Path directory) throws IOException {
+        Path pairsFile = directory.resolve(PAIRS_FILE_NAME);
+        if (!Files.exists(pairsFile))
+            return new String[0];
+        return Files.readAllLines(pairsFile, StandardCharsets.UTF_8).toArray(new String[0]);
+    }
+
+    // segment files sorted by segment number
+    static List<Path> segments(Path directory) throws IOException {
+        if (!Files.isDirectory(directory))
+            return new ArrayList<>();
+        try (Stream<Path> paths = Files.list(directory)) {
+            return paths.filter(path -> path.getFileName().toString().endsWith(SEGMENT_SUFFIX)).
+                    sorted().
+                    collect(Collectors.toList());
+        }
+    }
+
+    private static int segmentNumber(Path segmentFile) {
+        String fileName = segmentFile.getFileName().toString();
+        return Integer.parseInt(fileName.substring(0, fileName.length() - SEGMENT_SUFFIX.length()));
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Cryptonose
+ *
+ * Copyright © 2019-2022 Dawid Motyka
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package pl.dmotyka.cryptonoseengine;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+// Sequential reader of ticker journal written by the engine (see CryptonoseGenericEngine.enableTickerJournal()),
+// segments are memory mapped and no objects are created for records:
+//
+//  try (TickerJournalReader reader = new TickerJournalReader(directory)) {
+//      while (reader.next())
+//          process(reader.getPair(), reader.getPrice(), reader.getExchangeTimestampSeconds());
+//  }
+//
+// Records are read in order of writing, records written after opening the reader to segments not created yet aren't read.
+public class TickerJournalReader implements Closeable {
+
+    private final Path directory;
+    private final List<Path> segments;
+    private String[] pairs;
+    private int nextSegmentIndex = 0;
+    private MappedByteBuffer segment;
+    private int segmentRecords;
+    // index of the current record in the current segment
+    private int recordIndex;
+    private int offset;
+
+    public TickerJournalReader(Path directory) throws IOException {
+        this.directory = directory;
+        segments = TickerJournal.segments(directory);
+        pairs = TickerJournal.readPairs(directory);
+    }
+
+    // move to the next record, returns false if there are no more records
+    public boolean next() throws IOException {
+        while (true) {
+            if (segment != null && recordIndex + 1 < segmentRecords) {
+                int nextOffset = TickerJournal.HEADER_BYTES + (recordIndex + 1) * TickerJournal.RECORD_BYTES;
+                if (segment.getLong(nextOffset) != 0) {
+                    recordIndex++;
+                    offset = nextOffset;
+                    return true;
+                }
+            }
+            if (nextSegmentIndex == segments.size())
+                return false;
+            openSegment(segments.get(nextSegmentIndex++));
+        }
+    }
+
+    public long getReceiveTimestampMillis() {
+        return segment.getLong(offset);
+    }
+
+    public long getExchangeTimestampSeconds() {
+        return segment.getLong(offset + Long.BYTES);
+    }
+
+    public double getPrice() {
+        return segment.getDouble(offset + 2 * Long.BYTES);
+    }
+
+    // id of the pair, the same for all records in journal directory, see getPairs()
+    public int getPairId() {
+        return segment.getInt(offset + 3 * Long.BYTES);
+    }
+
+    public String getPair() throws IOException {
+        int pairId = getPairId();
+        // pair could be added after opening the reader, name of a new pair is written to the journal after its first records
+        //  (it's always written when the journal is closed)
+        if (pairId >= pairs.length)
+            pairs = TickerJournal.readPairs(directory);
+        if (pairId >= pairs.length)
+            throw new IOException("unknown pair id in ticker journal: " + pairId);
+        return pairs[pairId];
+    }
+
+    // pair names by pair id
+    public String[] getPairs() {
+        return pairs.clone();
+    }
+
+    @Override
+    public void close() {
+        segment = null;
+        nextSegmentIndex = segments.size();
+    }
+
+    private void openSegment(Path segmentFile) throws IOException {
+        try (FileChannel fileChannel = FileChannel.open(segmentFile, StandardOpenOption.READ)) {
+            if (fileChannel.size() < TickerJournal.HEADER_BYTES)
+                throw new IOException("invalid ticker journal segment: " + segmentFile);
+            segment = fileChannel.map(FileChannel.MapMode.READ_ONLY, 0, fileChannel.size());
+        }
+        if (segment.getInt(0) != TickerJournal.MAGIC)
+            throw new IOException("not a ticker journal segment: " + segmentFile);
+        if (segment.getInt(Integer.BYTES) != TickerJournal.FORMAT_VERSION || segment.getInt(2 * Integer.BYTES) != TickerJournal.RECORD_BYTES)
+            throw new IOException("unsupported ticker journal segment format: " + segmentFile);
+        segmentRecords = (int)Math.min(segment.getInt(3 * Integer.BYTES), (segment.capacity() - TickerJournal.HEADER_BYTES) / TickerJournal.RECORD_BYTES);
+        recordIndex = -1;
+    }
+}
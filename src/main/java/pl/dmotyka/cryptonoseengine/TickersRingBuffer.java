@@ -0,0 +1,170 @@
+/*
+ * Cryptonose
+ *
+ * Copyright © 2019-2022 Dawid Motyka
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package pl.dmotyka.cryptonoseengine;
+
+// Growable ring buffer of ticker timestamps and prices kept in parallel primitive arrays, sorted by timestamp.
+// Every entry gets a sequence number that doesn't change until the entry is removed (as long as entries are appended),
+// so other structures may refer to entries by sequence numbers.
+// Entries may be downsampled with compactBuckets(), which changes sequence numbers of entries after compacted ones.
+//
+// Memory: 16 bytes per ticker (long timestamp + double price). Capacity is a power of two, grown twice when full
+// and shrunk by half when less than a quarter is used, so the buffer takes 16-64 bytes per stored ticker
+// (32 bytes on average). For comparison LinkedList<Ticker> takes about 56 bytes per ticker (24 bytes list node
+// and 32 bytes Ticker object, with compressed oops).
+// Min and max chains of TickersWindow (LongRingDeque, capacity grown twice when full) add 8 bytes (sequence number) per
+// ticker kept in a chain. Ticker stays in a chain only while it's a min or max candidate, with random prices it's
+// a few tickers per chain, in the worst case (monotonic prices) all tickers are in one of the two chains, which adds
+// up to 16 bytes per ticker (including unused capacity).
+class TickersRingBuffer {
+
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] timestamps = new long[MIN_CAPACITY];
+    private double[] prices = new double[MIN_CAPACITY];
+    private int mask = MIN_CAPACITY - 1;
+    // sequence number of the first entry
+    private long firstSeq = 0;
+    // sequence number after the last entry
+    private long endSeq = 0;
+
+    int size() {
+        return (int)(endSeq - firstSeq);
+    }
+
+    boolean isEmpty() {
+        return endSeq == firstSeq;
+    }
+
+    long firstSeq() {
+        return firstSeq;
+    }
+
+    long endSeq() {
+        return endSeq;
+    }
+
+    long timestampAt(long seq) {
+        return timestamps[(int)seq & mask];
+    }
+
+    double priceAt(long seq) {
+        return prices[(int)seq & mask];
+    }
+
+    long lastTimestamp() {
+        return timestampAt(endSeq - 1);
+    }
+
+    // timestamp should be not lower than timestamp of the last entry
+    long append(long timestamp, double price) {
+        if (size() == timestamps.length)
+            resize(timestamps.length * 2);
+        int index = (int)endSeq & mask;
+        timestamps[index] = timestamp;
+        prices[index] = price;
+        return endSeq++;
+    }
+
+    // inserts entry after all entries with lower or equal timestamp,
+    // sequence numbers of entries with higher timestamp are incremented
+    long insertSorted(long timestamp, double price) {
+        if (size() == timestamps.length)
+            resize(timestamps.length * 2);
+        long seq = endSeq;
+        while (seq > firstSeq && timestampAt(seq - 1) > timestamp) {
+            int index = (int)seq & mask;
+            int prevIndex = (int)(seq - 1) & mask;
+            timestamps[index] = timestamps[prevIndex];
+            prices[index] = prices[prevIndex];
+            seq--;
+        }
+        int index = (int)seq & mask;
+        timestamps[index] = timestamp;
+        prices[index] = price;
+        endSeq++;
+        return seq;
+    }
+
+    // removes entries from the beginning while their timestamps are lower than minTimestamp
+    void removeOlderThan(long minTimestamp) {
+        while (firstSeq < endSeq && timestampAt(firstSeq) < minTimestamp)
+            firstSeq++;
+        if (timestamps.length > MIN_CAPACITY && size() < timestamps.length / 4)
+            resize(timestamps.length / 2);
+    }
+
+    // first sequence number of entry with timestamp higher than given, or endSeq() if there is no such entry
+    long firstSeqAfter(long timestamp) {
+        long low = firstSeq;
+        long high = endSeq;
+        while (low < high) {
+            long mid = (low + high) >>> 1;
+            if (timestampAt(mid) > timestamp)
+                high = mid;
+            else
+                low = mid + 1;
+        }
+        return low;
+    }
+
+    // for every time bucket of entries from fromSeq to toSeq (exclusive), keeps only the entry with the earliest minimum price
+    // and the entry with the earliest maximum price, entries after toSeq are moved back
+    // returns number of removed entries
+    int compactBuckets(long fromSeq, long toSeq, long bucketSeconds) {
+        long writeSeq = fromSeq;
+        long seq = fromSeq;
+        while (seq < toSeq) {
+            long bucket = Math.floorDiv(timestampAt(seq), bucketSeconds);
+            long minSeq = seq;
+            long maxSeq = seq;
+            long nextSeq = seq + 1;
+            while (nextSeq < toSeq && Math.floorDiv(timestampAt(nextSeq), bucketSeconds) == bucket) {
+                if (priceAt(nextSeq) < priceAt(minSeq))
+                    minSeq = nextSeq;
+                if (priceAt(nextSeq) > priceAt(maxSeq))
+                    maxSeq = nextSeq;
+                nextSeq++;
+            }
+            move(Math.min(minSeq, maxSeq), writeSeq++);
+            if (minSeq != maxSeq)
+                move(Math.max(minSeq, maxSeq), writeSeq++);
+            seq = nextSeq;
+        }
+        for (seq = toSeq; seq < endSeq; seq++)
+            move(seq, writeSeq++);
+        int removed = (int)(endSeq - writeSeq);
+        endSeq = writeSeq;
+        return removed;
+    }
+
+    private void move(long fromSeq, long toSeq) {
+        if (fromSeq == toSeq)
+            return;
+        timestamps[(int)toSeq & mask] = timestamps[(int)fromSeq & mask];
+        prices[(int)toSeq & mask] = prices[(int)fromSeq & mask];
+    }
+
+    private void resize(int capacity) {
+        long[] newTimestamps = new long[capacity];
+        double[] newPrices = new double[capacity];
+        int newMask = capacity - 1;
+        for (long seq = firstSeq; seq < endSeq; seq++) {
+            newTimestamps[(int)seq & newMask] = timestamps[(int)seq & mask];
+            newPrices[(int)seq & newMask] = prices[(int)seq & mask];
+        }
+        timestamps = newTimestamps;
+        prices = newPrices;
+        mask = newMask;
+    }
+}
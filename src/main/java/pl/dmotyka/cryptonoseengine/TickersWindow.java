@@ -0,0 +1,309 @@
+/*
+ * Cryptonose
+ *
+ * Copyright © 2019-2022 Dawid Motyka
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package pl.dmotyka.cryptonoseengine;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import pl.dmotyka.exchangeutils.tickerprovider.Ticker;
+
+// Tickers of a single currency pair, sorted by timestamp, with range min/max index answering queries for all time periods.
+//
+// Every query (min, max, max after min, min after max) is for tickers from some point up to the newest ticker,
+// so the index consists of two chains of ring buffer sequence numbers:
+//  - min chain: tickers with price not higher than prices of all following tickers,
+//  - max chain: tickers with price not lower than prices of all following tickers.
+// The earliest min (max) of tickers starting from sequence number s is the first element of min (max) chain not lower than s,
+// found by binary search. Chains are updated in amortized O(1) on insert (like monotonic deques), trimmed on eviction of old
+// tickers, and shared by all time periods, so each query costs O(log n) and adding periods costs only the queries.
+//
+// Optionally tickers older than fullResolutionSeconds (counting from the last ticker) are downsampled: for every bucket of
+// bucketSeconds only the tickers with minimum and maximum price are kept (with their original timestamps), so the number of
+// stored tickers depends on the length of the longest period instead of the number of trades. When a time period starts
+// in the downsampled part, the whole bucket containing its start is used, so timestamp of reported min or max is earlier
+// than the period start by less than bucketSeconds. Max after min (min after max) skips other tickers from the bucket of min (max).
+// Methods are synchronized, ticker insertion and changes checking may be done from different threads.
+class TickersWindow {
+
+    private final long[] timePeriods;
+    private final long maxTimePeriod;
+    // sorted by timestamp, tickers with equal timestamps are kept in order of insertion
+    private final TickersRingBuffer tickers = new TickersRingBuffer();
+    private final LongRingDeque minChain = new LongRingDeque();
+    private final LongRingDeque maxChain = new LongRingDeque();
+    // used by checkChanges()
+    private final PriceExtremes priceExtremes;
+    // the most recently inserted ticker, its timestamp is the reference for time periods
+    private boolean hasLastTicker = false;
+    private double lastPrice;
+    private long lastTimestamp;
+    // chains have to be rebuilt after inserting ticker older than the newest one
+    private boolean chainsValid = true;
+    // downsampling is disabled when bucketSeconds is 0
+    private final long bucketSeconds;
+    private final long fullResolutionSeconds;
+    // tickers with lower timestamps are downsampled
+    private long downsampledUntil = 0;
+    // start of the oldest bucket with ticker inserted into the downsampled part, it's downsampled again on next check
+    private long downsampleAgainFrom = Long.MAX_VALUE;
+    // incremented on every insert, periods are counted from the last ticker so changes depend only on inserted tickers
+    //  and timeframe multiplier (also for pairs which don't receive new tickers)
+    private long version = 0;
+    // returned by checkChangesCached() until version or timeframe multiplier changes
+    private PriceChanges[] cachedChanges;
+    private long cachedChangesVersion;
+    private int cachedChangesTimeframeMultiplier;
+    // id of the pair in RelativeChangesChecker (lower bits) with generation of the checker (upper bits), see
+    //  RelativeChangesChecker.getPairId(String, TickersWindow)
+    volatile long relativeChangesPairId = 0;
+
+    TickersWindow(long[] timePeriods) {
+        this(timePeriods, 0, 0);
+    }
+
+    TickersWindow(long[] timePeriods, long bucketSeconds, long fullResolutionSeconds) {
+        this.timePeriods = timePeriods;
+        this.bucketSeconds = bucketSeconds;
+        this.fullResolutionSeconds = fullResolutionSeconds;
+        long max = timePeriods[0];
+        for (long timePeriod : timePeriods)
+            max = Math.max(max, timePeriod);
+        maxTimePeriod = max;
+        priceExtremes = new PriceExtremes(timePeriods);
+    }
+
+    void insert(Ticker ticker) {
+        insert(ticker.getTimestampSeconds(), ticker.getValue());
+    }
+
+    // tickers of one pair inserted at once
+    synchronized void insert(Ticker[] tickers) {
+        for (Ticker ticker : tickers)
+            insert(ticker.getTimestampSeconds(), ticker.getValue());
+    }
+
+    // tickers from arrays inserted at once, first numTickers elements are used
+    // loaded tickers may be older than tickers inserted before (initial tickers loaded after receiving tickers), the last
+    //  ticker is replaced only by loaded tickers which aren't older than it
+    synchronized void insert(long[] timestamps, double[] prices, int numTickers) {
+        for (int i = 0; i < numTickers; i++)
+            insert(timestamps[i], prices[i], !hasLastTicker || timestamps[i] >= lastTimestamp);
+    }
+
+    // inserted ticker is the last ticker, also when it's older than the previous one (delayed ticker)
+    synchronized void insert(long timestamp, double price) {
+        insert(timestamp, price, true);
+    }
+
+    private void insert(long timestamp, double price, boolean isLastTicker) {
+        version++;
+        if (isLastTicker) {
+            hasLastTicker = true;
+            lastTimestamp = timestamp;
+            lastPrice = price;
+        }
+        if (tickers.isEmpty() || tickers.lastTimestamp() <= timestamp) {
+            long seq = tickers.append(timestamp, price);
+            if (chainsValid)
+                pushToChains(seq);
+            return;
+        }
+        // ticker older than the newest one, sequence numbers of newer tickers change
+        tickers.insertSorted(timestamp, price);
+        chainsValid = false;
+        if (bucketSeconds > 0 && timestamp < downsampledUntil)
+            downsampleAgainFrom = Math.min(downsampleAgainFrom, Math.floorDiv(timestamp, bucketSeconds) * bucketSeconds);
+    }
+
+    // returns price changes for every time period with at least one valid ticker, or null when there are no tickers
+    synchronized PriceChanges[] checkChanges(String pair, int timeframeMultiplier) {
+        if (!checkExtremes(timeframeMultiplier, priceExtremes))
+            return null;
+        List<PriceChanges> priceChangesList = new ArrayList<>(timePeriods.length);
+        for (int i = 0; i < timePeriods.length; i++) {
+            if (priceExtremes.valid[i])
+                priceChangesList.add(priceExtremes.toPriceChanges(pair, i));
+        }
+        return priceChangesList.toArray(new PriceChanges[0]);
+    }
+
+    // the same as checkChanges(), but returns the same array as the last call if no tickers were inserted since then
+    //  and timeframe multiplier is the same, forceNew - always create new PriceChanges (and cache them)
+    synchronized PriceChanges[] checkChangesCached(String pair, int timeframeMultiplier, boolean forceNew) {
+        if (!forceNew && cachedChanges != null && cachedChangesVersion == version && cachedChangesTimeframeMultiplier == timeframeMultiplier)
+            return cachedChanges;
+        cachedChanges = checkChanges(pair, timeframeMultiplier);
+        cachedChangesVersion = version;
+        cachedChangesTimeframeMultiplier = timeframeMultiplier;
+        return cachedChanges;
+    }
+
+    // fills priceExtremes for every time period, returns false when there are no tickers
+    synchronized boolean checkExtremes(int timeframeMultiplier, PriceExtremes priceExtremes) {
+        if (!hasLastTicker)
+            return false;
+        long currentTimeSnapshot = lastTimestamp;
+        tickers.removeOlderThan(periodStart(currentTimeSnapshot - maxTimePeriod * timeframeMultiplier));
+        if (bucketSeconds > 0)
+            downsample(currentTimeSnapshot);
+        if (chainsValid) {
+            while (!minChain.isEmpty() && minChain.peekFirst() < tickers.firstSeq())
+                minChain.pollFirst();
+            while (!maxChain.isEmpty() && maxChain.peekFirst() < tickers.firstSeq())
+                maxChain.pollFirst();
+        } else {
+            rebuildChains();
+        }
+        priceExtremes.lastPrice = lastPrice;
+        priceExtremes.lastPriceTimestampSec = lastTimestamp;
+        for (int i = 0; i < timePeriods.length; i++) {
+            long periodFirstSeq = tickers.firstSeqAfter(periodStart(currentTimeSnapshot - timePeriods[i] * timeframeMultiplier));
+            priceExtremes.valid[i] = periodFirstSeq < tickers.endSeq();
+            if (!priceExtremes.valid[i]) //valid tickers list is empty
+                continue;
+            long minSeq = firstInChain(minChain, periodFirstSeq);
+            long maxSeq = firstInChain(maxChain, periodFirstSeq);
+            long maxAfterMinSeq;
+            if (tickers.timestampAt(maxSeq) >= tickers.timestampAt(minSeq))
+                maxAfterMinSeq = maxSeq;
+            else
+                maxAfterMinSeq = firstAfter(maxChain, minSeq);
+            long minAfterMaxSeq;
+            if (tickers.timestampAt(minSeq) >= tickers.timestampAt(maxSeq))
+                minAfterMaxSeq = minSeq;
+            else
+                minAfterMaxSeq = firstAfter(minChain, maxSeq);
+            priceExtremes.minPrice[i] = tickers.priceAt(minSeq);
+            priceExtremes.minPriceTimestampSec[i] = tickers.timestampAt(minSeq);
+            priceExtremes.maxPrice[i] = tickers.priceAt(maxSeq);
+            priceExtremes.maxPriceTimestampSec[i] = tickers.timestampAt(maxSeq);
+            priceExtremes.maxAfterMinPrice[i] = tickers.priceAt(maxAfterMinSeq);
+            priceExtremes.maxAfterMinTimestampSec[i] = tickers.timestampAt(maxAfterMinSeq);
+            priceExtremes.minAfterMaxPrice[i] = tickers.priceAt(minAfterMaxSeq);
+            // minAfterMax timestamp is set to maxAfterMin timestamp, as it always was
+            priceExtremes.minAfterMaxTimestampSec[i] = tickers.timestampAt(maxAfterMinSeq);
+        }
+        return true;
+    }
+
+    // writes number of tickers and then timestamp and price of every ticker (sorted by timestamp)
+    synchronized void writeTickers(DataOutput out) throws IOException {
+        out.writeInt(tickers.size());
+        for (long seq = tickers.firstSeq(); seq < tickers.endSeq(); seq++) {
+            out.writeLong(tickers.timestampAt(seq));
+            out.writeDouble(tickers.priceAt(seq));
+        }
+    }
+
+    synchronized boolean isEmpty() {
+        return !hasLastTicker;
+    }
+
+    synchronized int size() {
+        return tickers.size();
+    }
+
+    // tickers with timestamps higher than returned value are in the period starting after minValidTimestamp
+    private long periodStart(long minValidTimestamp) {
+        if (bucketSeconds == 0 || minValidTimestamp >= downsampledUntil)
+            return minValidTimestamp;
+        // the whole bucket containing minValidTimestamp
+        return Math.floorDiv(minValidTimestamp, bucketSeconds) * bucketSeconds - 1;
+    }
+
+    // downsample full buckets older than fullResolutionSeconds which weren't downsampled yet, and buckets which received
+    //  out of order tickers after they were downsampled
+    private void downsample(long currentTimeSnapshot) {
+        long downsampleTo = Math.max(Math.floorDiv(currentTimeSnapshot - fullResolutionSeconds, bucketSeconds) * bucketSeconds, downsampledUntil);
+        long downsampleFrom = Math.min(downsampledUntil, downsampleAgainFrom);
+        if (downsampleTo <= downsampleFrom)
+            return;
+        long fromSeq = tickers.firstSeqAfter(downsampleFrom - 1);
+        long toSeq = tickers.firstSeqAfter(downsampleTo - 1);
+        downsampledUntil = downsampleTo;
+        downsampleAgainFrom = Long.MAX_VALUE;
+        int removed = tickers.compactBuckets(fromSeq, toSeq, bucketSeconds);
+        if (removed > 0 && chainsValid)
+            updateChainsAfterCompaction(fromSeq, toSeq, removed);
+    }
+
+    // Updates chains after tickers from fromSeq to toSeq were compacted (removed tickers were from this range).
+    // Compaction keeps min and max of every bucket, so min (max) of tickers following any ticker before the range doesn't
+    // change and chain elements before the range stay. Elements after the range depend only on following tickers, so they
+    // stay with sequence numbers moved by removed tickers. Only the compacted range is added to chains again, it costs
+    // the same as moving tickers after the range in compaction.
+    private void updateChainsAfterCompaction(long fromSeq, long toSeq, int removed) {
+        updateChainAfterCompaction(minChain, fromSeq, toSeq, removed, true);
+        updateChainAfterCompaction(maxChain, fromSeq, toSeq, removed, false);
+    }
+
+    private void updateChainAfterCompaction(LongRingDeque chain, long fromSeq, long toSeq, int removed, boolean isMinChain) {
+        LongRingDeque following = new LongRingDeque();
+        while (!chain.isEmpty() && chain.peekLast() >= toSeq)
+            following.addLast(chain.pollLast() - removed);
+        while (!chain.isEmpty() && chain.peekLast() >= fromSeq)
+            chain.pollLast();
+        // ticker is in the chain if its price isn't higher (lower for max chain) than prices of all following tickers,
+        //  the first element of following chain is the extreme of tickers after the range
+        long compactedEndSeq = toSeq - removed;
+        boolean hasExtreme = !following.isEmpty();
+        double extreme = hasExtreme ? tickers.priceAt(following.peekLast()) : 0;
+        LongRingDeque compacted = new LongRingDeque();
+        for (long seq = compactedEndSeq - 1; seq >= fromSeq; seq--) {
+            double price = tickers.priceAt(seq);
+            if (!hasExtreme || (isMinChain ? price <= extreme : price >= extreme)) {
+                compacted.addLast(seq);
+                extreme = price;
+                hasExtreme = true;
+            }
+        }
+        while (!compacted.isEmpty())
+            chain.addLast(compacted.pollLast());
+        while (!following.isEmpty())
+            chain.addLast(following.pollLast());
+    }
+
+    // the extreme of tickers starting from given sequence number, chain always contains the last ticker
+    private static long firstInChain(LongRingDeque chain, long fromSeq) {
+        return chain.get(chain.firstIndexNotLowerThan(fromSeq));
+    }
+
+    // the extreme of tickers with timestamp higher than reference ticker, or reference ticker if there are no such tickers
+    private long firstAfter(LongRingDeque chain, long referenceSeq) {
+        long fromSeq = tickers.firstSeqAfter(tickers.timestampAt(referenceSeq));
+        if (fromSeq == tickers.endSeq())
+            return referenceSeq;
+        return firstInChain(chain, fromSeq);
+    }
+
+    private void pushToChains(long seq) {
+        double price = tickers.priceAt(seq);
+        while (!minChain.isEmpty() && tickers.priceAt(minChain.peekLast()) > price)
+            minChain.pollLast();
+        minChain.addLast(seq);
+        while (!maxChain.isEmpty() && tickers.priceAt(maxChain.peekLast()) < price)
+            maxChain.pollLast();
+        maxChain.addLast(seq);
+    }
+
+    private void rebuildChains() {
+        minChain.clear();
+        maxChain.clear();
+        for (long seq = tickers.firstSeq(); seq < tickers.endSeq(); seq++)
+            pushToChains(seq);
+        chainsValid = true;
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Cryptonose
+ *
+ * Copyright © 2019-2022 Dawid Motyka
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package pl.dmotyka.cryptonoseengine;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import pl.dmotyka.exchangeutils.chartdataprovider.CurrencyPairTimePeriod;
+import pl.dmotyka.exchangeutils.chartinfo.ChartCandle;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class CandleCacheTest {
+
+    private static final String PAIR = "BTC_ETH";
+    private static final int PERIOD = 300;
+    private static final long[] TIME_PERIODS = new long[] {PERIOD};
+    private static final int NUM_CANDLES = 10;
+    private static final long START_TIMESTAMP = 1_600_000_200;
+
+    private Path directory;
+
+    @BeforeEach
+    public void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("cryptonose-candles");
+    }
+
+    @AfterEach
+    public void deleteDirectory() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toArray(Path[]::new))
+                Files.delete(path);
+        }
+    }
+
+    @Test
+    public void testOnlyNewCandlesFetchedAfterRestart() {
+        var currencyPairTimePeriod = new CurrencyPairTimePeriod(PAIR, PERIOD);
+        var candleCache = new CandleCache(directory, "exchange", TIME_PERIODS, NUM_CANDLES);
+        long currentTime = START_TIMESTAMP + NUM_CANDLES * PERIOD;
+        assertEquals(NUM_CANDLES, candleCache.numCandlesToFetch(new String[] {PAIR}, PERIOD, currentTime));
+        candleCache.mergeAndStore(Map.of(currencyPairTimePeriod, candles(0, NUM_CANDLES)), currentTime);
+
+        // after restart, 3 candles passed
+        var restartedCandleCache = new CandleCache(directory, "exchange", TIME_PERIODS, NUM_CANDLES);
+        currentTime += 3 * PERIOD;
+        int numToFetch = restartedCandleCache.numCandlesToFetch(new String[] {PAIR}, PERIOD, currentTime);
+        assertEquals(5, numToFetch);
+        ChartCandle[] merged = restartedCandleCache.mergeAndStore(Map.of(currencyPairTimePeriod, candles(NUM_CANDLES + 3 - numToFetch, NUM_CANDLES + 3)), currentTime).get(currencyPairTimePeriod);
+        assertEquals(NUM_CANDLES, merged.length);
+        for (int i = 0; i < NUM_CANDLES; i++)
+            assertEquals(START_TIMESTAMP + (i + 3) * PERIOD, merged[i].getTimestampSeconds());
+        // a pair without stored candles requires fetching all candles
+        assertEquals(NUM_CANDLES, restartedCandleCache.numCandlesToFetch(new String[] {PAIR, "BTC_XRP"}, PERIOD, currentTime));
+
+        // new candles were appended
+        var restartedAgainCandleCache = new CandleCache(directory, "exchange", TIME_PERIODS, NUM_CANDLES);
+        assertEquals(2, restartedAgainCandleCache.numCandlesToFetch(new String[] {PAIR}, PERIOD, currentTime));
+    }
+
+    @Test
+    public void testOnlyClosedSubscribedCandlesStored() {
+        var currencyPairTimePeriod = new CurrencyPairTimePeriod(PAIR, PERIOD);
+        var candleCache = new CandleCache(directory, "exchange", TIME_PERIODS, NUM_CANDLES);
+        // the last candle isn't closed
+        long currentTime = START_TIMESTAMP + (NUM_CANDLES - 1) * PERIOD + PERIOD / 2;
+        ChartCandle[] merged = candleCache.mergeAndStore(Map.of(currencyPairTimePeriod, candles(0, NUM_CANDLES)), currentTime).get(currencyPairTimePeriod);
+        assertEquals(NUM_CANDLES, merged.length);
+        // candles merged for other callers aren't stored
+        merged = candleCache.merge(currencyPairTimePeriod, candles(2, NUM_CANDLES + 2));
+        assertEquals(START_TIMESTAMP + (NUM_CANDLES + 1) * PERIOD, merged[merged.length - 1].getTimestampSeconds());
+        var restartedCandleCache = new CandleCache(directory, "exchange", TIME_PERIODS, NUM_CANDLES);
+        // the last stored candle is the one before the open candle
+        assertEquals(3, restartedCandleCache.numCandlesToFetch(new String[] {PAIR}, PERIOD, currentTime + PERIOD));
+    }
+
+    @Test
+    public void testNotCachedPeriodNotMerged() {
+        var candleCache = new CandleCache(directory, "exchange", TIME_PERIODS, NUM_CANDLES);
+        ChartCandle[] candles = candles(0, 2 * NUM_CANDLES);
+        assertSame(candles, candleCache.merge(new CurrencyPairTimePeriod(PAIR, 60), candles));
+    }
+
+    private static ChartCandle[] candles(int from, int to) {
+        ChartCandle[] candles = new ChartCandle[to - from];
+        for (int i = from; i < to; i++)
+            candles[i - from] = new ChartCandle(101 + i, 99 + i, 100 + i, 100.5 + i, START_TIMESTAMP + (long)i * PERIOD);
+        return candles;
+    }
+}
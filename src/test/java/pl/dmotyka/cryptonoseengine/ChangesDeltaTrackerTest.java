@@ -0,0 +1,105 @@
+/*
+ * Cryptonose
+ *
+ * Copyright © 2019-2022 Dawid Motyka
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package pl.dmotyka.cryptonoseengine;
+
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChangesDeltaTrackerTest {
+
+    private static final String PAIR = "BTC_ETH";
+    private static final long[] TIME_PERIODS = new long[] {300, 900};
+
+    // price extremes with rise from 100 to maxPrice and then drop to lastPrice in all periods
+    private static PriceExtremes extremes(double maxPrice, double lastPrice) {
+        var priceExtremes = new PriceExtremes(TIME_PERIODS);
+        for (int i = 0; i < TIME_PERIODS.length; i++) {
+            priceExtremes.valid[i] = true;
+            priceExtremes.minPrice[i] = 100;
+            priceExtremes.minPriceTimestampSec[i] = 1000;
+            priceExtremes.maxPrice[i] = maxPrice;
+            priceExtremes.maxPriceTimestampSec[i] = 1010;
+            priceExtremes.maxAfterMinPrice[i] = maxPrice;
+            priceExtremes.maxAfterMinTimestampSec[i] = 1010;
+            priceExtremes.minAfterMaxPrice[i] = lastPrice;
+            priceExtremes.minAfterMaxTimestampSec[i] = 1020;
+        }
+        priceExtremes.lastPrice = lastPrice;
+        priceExtremes.lastPriceTimestampSec = 1020;
+        return priceExtremes;
+    }
+
+    @Test
+    public void testChangedExtremesSent() {
+        var tracker = new ChangesDeltaTracker(TIME_PERIODS.length, false);
+        assertTrue(tracker.checkChanged(PAIR, 0, extremes(110, 105), null));
+        assertFalse(tracker.checkChanged(PAIR, 0, extremes(110, 105), null));
+        // min after max changes with last price
+        assertTrue(tracker.checkChanged(PAIR, 0, extremes(110, 104), null));
+        assertTrue(tracker.checkChanged(PAIR, 0, extremes(112, 104), null));
+        assertFalse(tracker.checkChanged(PAIR, 0, extremes(112, 104), null));
+    }
+
+    @Test
+    public void testStateByPairAndPeriod() {
+        var tracker = new ChangesDeltaTracker(TIME_PERIODS.length, false);
+        assertTrue(tracker.checkChanged(PAIR, 0, extremes(110, 105), null));
+        // the same changes weren't sent for the other period and pair yet
+        assertTrue(tracker.checkChanged(PAIR, 1, extremes(110, 105), null));
+        assertTrue(tracker.checkChanged("BTC_XRP", 0, extremes(110, 105), null));
+        assertTrue(tracker.checkChanged(PAIR, 1, extremes(120, 105), null));
+        // period 0 still remembers its own sent values
+        assertFalse(tracker.checkChanged(PAIR, 0, extremes(110, 105), null));
+        assertFalse(tracker.checkChanged("BTC_XRP", 0, extremes(110, 105), null));
+    }
+
+    @Test
+    public void testLastPriceUpdates() {
+        var tracker = new ChangesDeltaTracker(TIME_PERIODS.length, false);
+        var lastPriceTracker = new ChangesDeltaTracker(TIME_PERIODS.length, true);
+        PriceExtremes priceExtremes = extremes(110, 105);
+        assertTrue(tracker.checkChanged(PAIR, 0, priceExtremes, null));
+        assertTrue(lastPriceTracker.checkChanged(PAIR, 0, priceExtremes, null));
+        // only last price changes (it's above min after max)
+        priceExtremes.lastPrice = 106;
+        assertFalse(tracker.checkChanged(PAIR, 0, priceExtremes, null));
+        assertTrue(lastPriceTracker.checkChanged(PAIR, 0, priceExtremes, null));
+        assertFalse(lastPriceTracker.checkChanged(PAIR, 0, priceExtremes, null));
+    }
+
+    @Test
+    public void testRelativeChangesInfo() {
+        var tracker = new ChangesDeltaTracker(TIME_PERIODS.length, false);
+        assertTrue(tracker.checkChanged(PAIR, 0, extremes(110, 105), null));
+        assertTrue(tracker.checkChanged(PAIR, 0, extremes(110, 105), new RelativeChangesInfo(10.0, 0.1)));
+        assertFalse(tracker.checkChanged(PAIR, 0, extremes(110, 105), new RelativeChangesInfo(10.0, 0.1)));
+        assertTrue(tracker.checkChanged(PAIR, 0, extremes(110, 105), new RelativeChangesInfo(10.0, 0.2)));
+        assertTrue(tracker.checkChanged(PAIR, 0, extremes(110, 105), null));
+    }
+
+    @Test
+    public void testRetainPairs() {
+        var tracker = new ChangesDeltaTracker(TIME_PERIODS.length, false);
+        assertTrue(tracker.checkChanged(PAIR, 0, extremes(110, 105), null));
+        assertTrue(tracker.checkChanged("BTC_XRP", 0, extremes(110, 105), null));
+        tracker.retainPairs(Set.of(PAIR));
+        assertFalse(tracker.checkChanged(PAIR, 0, extremes(110, 105), null));
+        // state of removed pair was dropped
+        assertTrue(tracker.checkChanged("BTC_XRP", 0, extremes(110, 105), null));
+    }
+}
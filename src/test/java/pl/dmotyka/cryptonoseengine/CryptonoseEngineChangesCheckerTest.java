@@ -0,0 +1,398 @@
+/*
+ * Cryptonose
+ *
+ * Copyright © 2019-2022 Dawid Motyka
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package pl.dmotyka.cryptonoseengine;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import pl.dmotyka.exchangeutils.tickerprovider.Ticker;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CryptonoseEngineChangesCheckerTest {
+
+    private static final String PAIR = "BTC_ETH";
+    private static final long[] TIME_PERIODS = new long[] {60, 300, 900};
+
+    @Test
+    public void testNoTickers() {
+        var changesChecker = new CryptonoseEngineChangesChecker(TIME_PERIODS);
+        assertNull(changesChecker.checkChanges(PAIR));
+    }
+
+    @Test
+    public void testRandomWalkSameAsFullScan() {
+        var random = new Random(1);
+        var changesChecker = new CryptonoseEngineChangesChecker(TIME_PERIODS);
+        var referenceChecker = new FullScanChangesChecker(TIME_PERIODS);
+        long timestamp = 1_600_000_000;
+        int price = 1000;
+        for (int i = 0; i < 20000; i++) {
+            // few distinct prices and many tickers with equal timestamps, to check choosing between equal values
+            timestamp += random.nextInt(4) == 0 ? random.nextInt(20) : 0;
+            price += random.nextInt(3) - 1;
+            var ticker = new Ticker(PAIR, price, timestamp);
+            changesChecker.insertTicker(ticker);
+            referenceChecker.insertTicker(ticker);
+            if (random.nextInt(3) == 0)
+                assertSameChanges(referenceChecker.checkChanges(PAIR), changesChecker.checkChanges(PAIR));
+        }
+    }
+
+    @Test
+    public void testOutOfOrderTickersSameAsFullScan() {
+        var random = new Random(2);
+        var changesChecker = new CryptonoseEngineChangesChecker(TIME_PERIODS);
+        var referenceChecker = new FullScanChangesChecker(TIME_PERIODS);
+        // delayed ticker moves periods back, expired tickers which weren't at the beginning of the list shouldn't be used then
+        referenceChecker.removeAllExpired = true;
+        long timestamp = 1_600_000_000;
+        double price = 1000;
+        for (int i = 0; i < 5000; i++) {
+            timestamp += random.nextInt(10);
+            price += random.nextGaussian();
+            // some tickers are delayed
+            long tickerTimestamp = random.nextInt(20) == 0 ? timestamp - random.nextInt(600) : timestamp;
+            var ticker = new Ticker(PAIR, price, tickerTimestamp);
+            changesChecker.insertTicker(ticker);
+            referenceChecker.insertTicker(ticker);
+            assertSameChanges(referenceChecker.checkChanges(PAIR), changesChecker.checkChanges(PAIR));
+        }
+    }
+
+    @Test
+    public void testTimeframeMultiplierSameAsFullScan() {
+        var random = new Random(3);
+        var changesChecker = new CryptonoseEngineChangesChecker(TIME_PERIODS);
+        var referenceChecker = new FullScanChangesChecker(TIME_PERIODS);
+        long timestamp = 1_600_000_000;
+        double price = 1000;
+        for (int i = 0; i < 3000; i++) {
+            if (i == 1500) {
+                changesChecker.setTimeframeMultipler(2);
+                referenceChecker.timeframeMultiplier = 2;
+            }
+            timestamp += random.nextInt(5);
+            price += random.nextGaussian();
+            var ticker = new Ticker(PAIR, price, timestamp);
+            changesChecker.insertTicker(ticker);
+            referenceChecker.insertTicker(ticker);
+            assertSameChanges(referenceChecker.checkChanges(PAIR), changesChecker.checkChanges(PAIR));
+        }
+    }
+
+    @Test
+    public void testDownsamplingErrorBoundedByBucket() {
+        var random = new Random(4);
+        long[] timePeriods = new long[] {60, 300, 3600};
+        long bucketSeconds = 10;
+        long fullResolutionSeconds = 120;
+        var tickersWindow = new TickersWindow(timePeriods, bucketSeconds, fullResolutionSeconds);
+        var referenceChecker = new FullScanChangesChecker(timePeriods);
+        long timestamp = 1_600_000_000;
+        double price = 1000;
+        for (int i = 0; i < 50000; i++) {
+            timestamp += random.nextInt(3) == 0 ? 1 : 0;
+            price += random.nextGaussian();
+            var ticker = new Ticker(PAIR, price, timestamp);
+            tickersWindow.insert(ticker);
+            referenceChecker.insertTicker(ticker);
+            if (random.nextInt(10) > 0)
+                continue;
+            PriceChanges[] expected = referenceChecker.checkChanges(PAIR);
+            PriceChanges[] actual = tickersWindow.checkChanges(PAIR, 1);
+            assertEquals(expected.length, actual.length);
+            // period shorter than full resolution part is exact
+            assertSameChanges(new PriceChanges[] {expected[0]}, new PriceChanges[] {actual[0]});
+            for (int j = 1; j < expected.length; j++) {
+                long periodStart = timestamp - timePeriods[j];
+                assertEquals(expected[j].getLastPrice(), actual[j].getLastPrice());
+                assertTrue(actual[j].getMinPrice() <= expected[j].getMinPrice());
+                assertTrue(actual[j].getMaxPrice() >= expected[j].getMaxPrice());
+                assertTrue(actual[j].getReferencePriceTimestampSec() > periodStart - bucketSeconds);
+            }
+            int maxDownsampledTickers = 2 * (int)(timePeriods[2] / bucketSeconds + 2);
+            int maxFullResolutionTickers = (int)referenceChecker.tickers.stream().filter(t -> t.getTimestampSeconds() >= ticker.getTimestampSeconds() - fullResolutionSeconds - bucketSeconds).count();
+            assertTrue(tickersWindow.size() <= maxDownsampledTickers + maxFullResolutionTickers);
+        }
+    }
+
+    @Test
+    public void testDownsampledTickersSameAsFullScanOfStoredTickers() throws IOException {
+        var random = new Random(7);
+        // all periods start in the downsampled part
+        long[] timePeriods = new long[] {300, 900, 3600};
+        long bucketSeconds = 10;
+        long fullResolutionSeconds = 120;
+        var tickersWindow = new TickersWindow(timePeriods, bucketSeconds, fullResolutionSeconds);
+        long timestamp = 1_600_000_000;
+        double price = 1000;
+        for (int i = 0; i < 50000; i++) {
+            timestamp += random.nextInt(3) == 0 ? 1 : 0;
+            price += random.nextGaussian();
+            // some tickers are delayed to the downsampled part
+            boolean delayed = random.nextInt(50) == 0;
+            tickersWindow.insert(delayed ? timestamp - random.nextInt(600) : timestamp, price);
+            // when last timestamp is at the beginning of a bucket, every period starts at the beginning of a bucket, so the same
+            //  tickers are in periods as in full scan with periods longer by 1 second
+            if (delayed || timestamp % bucketSeconds != 0 || random.nextInt(10) > 0)
+                continue;
+            PriceChanges[] actual = tickersWindow.checkChanges(PAIR, 1);
+            var referenceChecker = new FullScanChangesChecker(Arrays.stream(timePeriods).map(timePeriod -> timePeriod + 1).toArray());
+            var storedTickersStream = new ByteArrayOutputStream();
+            tickersWindow.writeTickers(new DataOutputStream(storedTickersStream));
+            var storedTickersIn = new DataInputStream(new ByteArrayInputStream(storedTickersStream.toByteArray()));
+            Map<Long,Integer> numTickersInBuckets = new HashMap<>();
+            long downsampledUntil = Math.floorDiv(timestamp - fullResolutionSeconds, bucketSeconds) * bucketSeconds;
+            for (int j = storedTickersIn.readInt(); j > 0; j--) {
+                long storedTimestamp = storedTickersIn.readLong();
+                referenceChecker.insertTicker(new Ticker(PAIR, storedTickersIn.readDouble(), storedTimestamp));
+                if (storedTimestamp < downsampledUntil)
+                    numTickersInBuckets.merge(Math.floorDiv(storedTimestamp, bucketSeconds), 1, Integer::sum);
+            }
+            PriceChanges[] expected = referenceChecker.checkChanges(PAIR);
+            assertEquals(expected.length, actual.length);
+            for (int j = 0; j < expected.length; j++) {
+                assertEquals(expected[j].getLastPrice(), actual[j].getLastPrice());
+                assertEquals(expected[j].getMinPrice(), actual[j].getMinPrice());
+                assertEquals(expected[j].getMaxPrice(), actual[j].getMaxPrice());
+                assertEquals(expected[j].getMaxAfterMinPrice(), actual[j].getMaxAfterMinPrice());
+                assertEquals(expected[j].getMinAfterMaxPrice(), actual[j].getMinAfterMaxPrice());
+                assertEquals(expected[j].getReferencePriceTimestampSec(), actual[j].getReferencePriceTimestampSec());
+            }
+            // also buckets with delayed tickers are downsampled
+            assertTrue(numTickersInBuckets.values().stream().allMatch(numTickers -> numTickers <= 2));
+        }
+    }
+
+    @Test
+    public void testGroupByPair() {
+        Ticker[] onePairTickers = new Ticker[] {new Ticker(PAIR, 1, 1), new Ticker(PAIR, 2, 2)};
+        List<Ticker[]> groups = CryptonoseEngineChangesChecker.groupByPair(onePairTickers);
+        assertEquals(1, groups.size());
+        assertSame(onePairTickers, groups.get(0));
+        Ticker[] tickers = new Ticker[] {new Ticker(PAIR, 1, 1), new Ticker("BTC_XRP", 2, 1), new Ticker(PAIR, 3, 2), new Ticker("BTC_LTC", 4, 2)};
+        groups = CryptonoseEngineChangesChecker.groupByPair(tickers);
+        assertEquals(3, groups.size());
+        assertArrayEquals(new Ticker[] {tickers[0], tickers[2]}, groups.get(0));
+        assertArrayEquals(new Ticker[] {tickers[1]}, groups.get(1));
+        assertArrayEquals(new Ticker[] {tickers[3]}, groups.get(2));
+    }
+
+    @Test
+    public void testInsertPairTickersSameAsInsertTicker() {
+        var random = new Random(5);
+        var changesChecker = new CryptonoseEngineChangesChecker(TIME_PERIODS);
+        var referenceChecker = new FullScanChangesChecker(TIME_PERIODS);
+        long timestamp = 1_600_000_000;
+        double price = 1000;
+        for (int i = 0; i < 500; i++) {
+            Ticker[] tickers = new Ticker[1 + random.nextInt(5)];
+            for (int j = 0; j < tickers.length; j++) {
+                timestamp += random.nextInt(5);
+                price += random.nextGaussian();
+                tickers[j] = new Ticker(PAIR, price, timestamp);
+                referenceChecker.insertTicker(tickers[j]);
+            }
+            changesChecker.insertPairTickers(tickers);
+            assertSameChanges(referenceChecker.checkChanges(PAIR), changesChecker.checkChanges(PAIR));
+        }
+    }
+
+    @Test
+    public void testCachedChangesReturnedUntilModified() {
+        var changesChecker = new CryptonoseEngineChangesChecker(TIME_PERIODS);
+        assertNull(changesChecker.checkChangesCached(PAIR, false));
+        changesChecker.insertTicker(new Ticker(PAIR, 1000, 1_600_000_000));
+        changesChecker.insertTicker(new Ticker(PAIR, 1010, 1_600_000_100));
+        PriceChanges[] priceChanges = changesChecker.checkChangesCached(PAIR, false);
+        assertSame(priceChanges, changesChecker.checkChangesCached(PAIR, false));
+        // checking changes doesn't modify cached changes
+        changesChecker.checkChanges(PAIR);
+        assertSame(priceChanges, changesChecker.checkChangesCached(PAIR, false));
+        PriceChanges[] newPriceChanges = changesChecker.checkChangesCached(PAIR, true);
+        assertNotSame(priceChanges, newPriceChanges);
+        assertSameChanges(priceChanges, newPriceChanges);
+        priceChanges = newPriceChanges;
+        changesChecker.setTimeframeMultipler(2);
+        newPriceChanges = changesChecker.checkChangesCached(PAIR, false);
+        assertNotSame(priceChanges, newPriceChanges);
+        priceChanges = newPriceChanges;
+        changesChecker.insertTicker(new Ticker(PAIR, 1020, 1_600_000_100));
+        newPriceChanges = changesChecker.checkChangesCached(PAIR, false);
+        assertNotSame(priceChanges, newPriceChanges);
+        assertEquals(1020, newPriceChanges[0].getLastPrice());
+    }
+
+    @Test
+    public void testLoadTickersSameAsInsertTicker() {
+        var random = new Random(6);
+        var changesChecker = new CryptonoseEngineChangesChecker(TIME_PERIODS);
+        var referenceChecker = new FullScanChangesChecker(TIME_PERIODS);
+        long[] timestamps = new long[1000];
+        double[] prices = new double[1000];
+        long timestamp = 1_600_000_000;
+        double price = 1000;
+        for (int i = 0; i < 900; i++) {
+            timestamp += random.nextInt(5);
+            price += random.nextGaussian();
+            timestamps[i] = timestamp;
+            prices[i] = price;
+            referenceChecker.insertTicker(new Ticker(PAIR, price, timestamp));
+        }
+        changesChecker.loadTickers(PAIR, timestamps, prices, 900);
+        assertSameChanges(referenceChecker.checkChanges(PAIR), changesChecker.checkChanges(PAIR));
+    }
+
+    @Test
+    public void testLoadOlderTickersKeepsLastTicker() {
+        var random = new Random(7);
+        var changesChecker = new CryptonoseEngineChangesChecker(TIME_PERIODS);
+        var referenceChecker = new FullScanChangesChecker(TIME_PERIODS);
+        long[] timestamps = new long[300];
+        double[] prices = new double[300];
+        long timestamp = 1_600_000_000;
+        double price = 1000;
+        for (int i = 0; i < 300; i++) {
+            timestamp += random.nextInt(3);
+            price += random.nextGaussian();
+            timestamps[i] = timestamp;
+            prices[i] = price;
+            referenceChecker.insertTicker(new Ticker(PAIR, price, timestamp));
+        }
+        // ticker received before initial tickers were loaded
+        var liveTicker = new Ticker(PAIR, 900, timestamp + 10);
+        referenceChecker.insertTicker(liveTicker);
+        changesChecker.insertTicker(liveTicker);
+        changesChecker.loadTickers(PAIR, timestamps, prices, 300);
+        PriceChanges[] priceChanges = changesChecker.checkChanges(PAIR);
+        assertEquals(900, priceChanges[0].getLastPrice());
+        assertEquals(timestamp + 10, priceChanges[0].getLastPriceTimestampSec());
+        assertSameChanges(referenceChecker.checkChanges(PAIR), priceChanges);
+    }
+
+    @Test
+    public void testRetainPairs() {
+        var changesChecker = new CryptonoseEngineChangesChecker(TIME_PERIODS);
+        changesChecker.insertTicker(new Ticker(PAIR, 1000, 1_600_000_000));
+        changesChecker.insertTicker(new Ticker("BTC_XRP", 1, 1_600_000_000));
+        changesChecker.retainPairs(Set.of(PAIR, "BTC_LTC"));
+        assertEquals(1000, changesChecker.checkChanges(PAIR)[0].getLastPrice());
+        assertNull(changesChecker.checkChanges("BTC_XRP"));
+    }
+
+    private static void assertSameChanges(PriceChanges[] expected, PriceChanges[] actual) {
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i].getCurrencyPair(), actual[i].getCurrencyPair());
+            assertEquals(expected[i].getTimePeriodSeconds(), actual[i].getTimePeriodSeconds());
+            assertEquals(expected[i].getLastPrice(), actual[i].getLastPrice());
+            assertEquals(expected[i].getLastPriceTimestampSec(), actual[i].getLastPriceTimestampSec());
+            assertEquals(expected[i].getMinPrice(), actual[i].getMinPrice());
+            assertEquals(expected[i].getMaxPrice(), actual[i].getMaxPrice());
+            assertEquals(expected[i].getMaxAfterMinPrice(), actual[i].getMaxAfterMinPrice());
+            assertEquals(expected[i].getMinAfterMaxPrice(), actual[i].getMinAfterMaxPrice());
+            assertEquals(expected[i].getFinalPriceTimestampSec(), actual[i].getFinalPriceTimestampSec());
+            assertEquals(expected[i].getReferencePriceTimestampSec(), actual[i].getReferencePriceTimestampSec());
+            assertEquals(expected[i].getRiseChangeTimeSeconds(), actual[i].getRiseChangeTimeSeconds());
+            assertEquals(expected[i].getDropChangeTimeSeconds(), actual[i].getDropChangeTimeSeconds());
+        }
+    }
+
+    // changes checking by scanning all tickers, reference for checking results
+    private static class FullScanChangesChecker {
+
+        private final long[] timePeriods;
+        private final List<Ticker> tickers = new LinkedList<>();
+        private int timeframeMultiplier = 1;
+        private boolean removeAllExpired = false;
+
+        FullScanChangesChecker(long[] timePeriods) {
+            this.timePeriods = timePeriods;
+        }
+
+        void insertTicker(Ticker ticker) {
+            tickers.add(ticker);
+        }
+
+        PriceChanges[] checkChanges(String pair) {
+            Ticker lastTicker = tickers.get(tickers.size() - 1);
+            List<PriceChanges> priceChangesList = new ArrayList<>();
+            long currentTimeSnapshot = lastTicker.getTimestampSeconds();
+            long minValidTimestamp = currentTimeSnapshot - timePeriods[timePeriods.length - 1] * timeframeMultiplier;
+            if (removeAllExpired)
+                tickers.removeIf(t -> t.getTimestampSeconds() < minValidTimestamp);
+            Iterator<Ticker> iterator = tickers.iterator();
+            while (iterator.hasNext() && iterator.next().getTimestampSeconds() < minValidTimestamp)
+                iterator.remove();
+            for (long currentTimePeriod : timePeriods) {
+                long minValidTimestampForPeriod = currentTimeSnapshot - currentTimePeriod * timeframeMultiplier;
+                Ticker minTicker = tickers.stream().
+                        filter(t -> t.getTimestampSeconds() > minValidTimestampForPeriod).
+                        min(Comparator.comparingDouble(Ticker::getValue)).orElse(null);
+                if (minTicker == null)
+                    continue;
+                Ticker maxTicker = tickers.stream().
+                        filter(t -> t.getTimestampSeconds() > minValidTimestampForPeriod).
+                        max(Comparator.comparingDouble(Ticker::getValue)).orElse(null);
+                Ticker maxAfterMinTicker;
+                if (maxTicker.getTimestampSeconds() >= minTicker.getTimestampSeconds())
+                    maxAfterMinTicker = maxTicker;
+                else
+                    maxAfterMinTicker = tickers.stream().
+                            filter(t -> t.getTimestampSeconds() > minTicker.getTimestampSeconds()).
+                            max(Comparator.comparingDouble(Ticker::getValue)).orElse(minTicker);
+                Ticker minAfterMaxTicker;
+                if (minTicker.getTimestampSeconds() >= maxTicker.getTimestampSeconds())
+                    minAfterMaxTicker = minTicker;
+                else
+                    minAfterMaxTicker = tickers.stream().
+                            filter(t -> t.getTimestampSeconds() > maxTicker.getTimestampSeconds()).
+                            min(Comparator.comparingDouble(Ticker::getValue)).orElse(maxTicker);
+                priceChangesList.add(new PriceChanges(pair,
+                        currentTimePeriod,
+                        lastTicker.getValue(),
+                        lastTicker.getTimestampSeconds(),
+                        minTicker.getValue(),
+                        minTicker.getTimestampSeconds(),
+                        maxTicker.getValue(),
+                        maxTicker.getTimestampSeconds(),
+                        maxAfterMinTicker.getValue(),
+                        maxAfterMinTicker.getTimestampSeconds(),
+                        minAfterMaxTicker.getValue(),
+                        maxAfterMinTicker.getTimestampSeconds()));
+            }
+            return priceChangesList.toArray(new PriceChanges[0]);
+        }
+    }
+}
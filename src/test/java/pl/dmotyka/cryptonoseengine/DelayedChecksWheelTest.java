@@ -0,0 +1,60 @@
+/*
+ * Cryptonose
+ *
+ * Copyright © 2019-2022 Dawid Motyka
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package pl.dmotyka.cryptonoseengine;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DelayedChecksWheelTest {
+
+    @Test
+    public void testChecksAreCoalesced() throws InterruptedException {
+        List<String> checkedPairs = new CopyOnWriteArrayList<>();
+        var wheel = new DelayedChecksWheel(100, 10, checkedPairs::add);
+        for (int i = 0; i < 1000; i++) {
+            wheel.schedule("BTC_ETH");
+            wheel.schedule("BTC_LTC");
+        }
+        assertEquals(2, wheel.getPendingCount());
+        Thread.sleep(50);
+        assertTrue(checkedPairs.isEmpty());
+        Thread.sleep(200);
+        assertEquals(2, checkedPairs.size());
+        assertEquals(0, wheel.getPendingCount());
+        // can be scheduled again after check
+        wheel.schedule("BTC_ETH");
+        Thread.sleep(250);
+        assertEquals(3, checkedPairs.size());
+        wheel.shutdown();
+    }
+
+    @Test
+    public void testPendingPairsAfterShutdown() throws InterruptedException {
+        List<String> checkedPairs = new CopyOnWriteArrayList<>();
+        var wheel = new DelayedChecksWheel(1000, 10, checkedPairs::add);
+        assertTrue(wheel.schedule("BTC_ETH"));
+        wheel.shutdown();
+        assertFalse(wheel.schedule("BTC_LTC"));
+        assertEquals(List.of("BTC_ETH", "BTC_LTC"), wheel.getPendingPairs().stream().sorted().collect(Collectors.toList()));
+        Thread.sleep(50);
+        assertTrue(checkedPairs.isEmpty());
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Cryptonose
+ *
+ * Copyright © 2019-2022 Dawid Motyka
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package pl.dmotyka.cryptonoseengine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EngineChangesDispatcherTest {
+
+    // receiver blocking the first delivery until released
+    private static class BlockingReceiver implements EngineChangesReceiver {
+
+        private final CountDownLatch firstDeliveryStarted = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+        private final List<List<PriceChanges>> received = new ArrayList<>();
+
+        @Override
+        public void receiveChanges(List<PriceChanges> priceChangesList) {
+            firstDeliveryStarted.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            synchronized (received) {
+                received.add(priceChangesList);
+                received.notifyAll();
+            }
+        }
+
+        @Override
+        public void receiveChanges(PriceChanges priceChanges) {
+            receiveChanges(List.of(priceChanges));
+        }
+
+        private void waitForReceived(int num) throws InterruptedException {
+            synchronized (received) {
+                while (received.size() < num)
+                    received.wait(5000);
+            }
+        }
+    }
+
+    private static List<PriceChanges> changes(String pair, double lastPrice) {
+        return List.of(new PriceChanges(pair, 300, lastPrice, 0, 1, 0, 2, 0, 2, 0, 1, 0),
+                new PriceChanges(pair, 900, lastPrice, 0, 1, 0, 2, 0, 2, 0, 1, 0));
+    }
+
+    @Test
+    public void testLatestPerPair() throws InterruptedException {
+        var receiver = new BlockingReceiver();
+        var dispatcher = new EngineChangesDispatcher(receiver, 10, EngineChangesDispatcher.OverflowPolicy.LATEST_PER_PAIR, 1);
+        dispatcher.receiveChanges(changes("BTC_ETH", 1));
+        assertTrue(receiver.firstDeliveryStarted.await(5, TimeUnit.SECONDS));
+        for (int i = 2; i <= 5; i++)
+            dispatcher.receiveChanges(changes("BTC_ETH", i));
+        dispatcher.receiveChanges(changes("BTC_LTC", 1));
+        assertEquals(3, dispatcher.getCoalescedCount());
+        assertEquals(2, dispatcher.getQueueSize());
+        receiver.release.countDown();
+        receiver.waitForReceived(3);
+        assertEquals(5, receiver.received.get(1).get(0).getLastPrice());
+        assertEquals(2, receiver.received.get(1).size());
+        assertEquals("BTC_LTC", receiver.received.get(2).get(0).getCurrencyPair());
+        dispatcher.shutdown();
+    }
+
+    @Test
+    public void testLatestPerPairMultiplePairsList() throws InterruptedException {
+        var receiver = new BlockingReceiver();
+        var dispatcher = new EngineChangesDispatcher(receiver, 10, EngineChangesDispatcher.OverflowPolicy.LATEST_PER_PAIR, 1);
+        dispatcher.receiveChanges(changes("BTC_XRP", 1));
+        assertTrue(receiver.firstDeliveryStarted.await(5, TimeUnit.SECONDS));
+        for (int i = 2; i <= 3; i++) {
+            List<PriceChanges> changesList = new ArrayList<>(changes("BTC_ETH", i));
+            changesList.addAll(changes("BTC_LTC", i * 10));
+            dispatcher.receiveChanges(changesList);
+        }
+        assertEquals(2, dispatcher.getCoalescedCount());
+        assertEquals(2, dispatcher.getQueueSize());
+        receiver.release.countDown();
+        receiver.waitForReceived(3);
+        List<PriceChanges> ethChanges = receiver.received.get(1);
+        List<PriceChanges> ltcChanges = receiver.received.get(2);
+        assertEquals(2, ethChanges.size());
+        assertTrue(ethChanges.stream().allMatch(pc -> pc.getCurrencyPair().equals("BTC_ETH") && pc.getLastPrice() == 3));
+        assertEquals(2, ltcChanges.size());
+        assertTrue(ltcChanges.stream().allMatch(pc -> pc.getCurrencyPair().equals("BTC_LTC") && pc.getLastPrice() == 30));
+        dispatcher.shutdown();
+    }
+
+    @Test
+    public void testDropOldest() throws InterruptedException {
+        var receiver = new BlockingReceiver();
+        var dispatcher = new EngineChangesDispatcher(receiver, 2, EngineChangesDispatcher.OverflowPolicy.DROP_OLDEST, 1);
+        dispatcher.receiveChanges(changes("BTC_ETH", 1));
+        assertTrue(receiver.firstDeliveryStarted.await(5, TimeUnit.SECONDS));
+        for (int i = 2; i <= 5; i++)
+            dispatcher.receiveChanges(changes("BTC_ETH", i));
+        assertEquals(2, dispatcher.getDroppedCount());
+        receiver.release.countDown();
+        receiver.waitForReceived(3);
+        assertEquals(4, receiver.received.get(1).get(0).getLastPrice());
+        assertEquals(5, receiver.received.get(2).get(0).getLastPrice());
+        dispatcher.shutdown();
+    }
+
+    @Test
+    public void testBlockShutdownReleasesProducer() throws InterruptedException {
+        var receiver = new BlockingReceiver();
+        var dispatcher = new EngineChangesDispatcher(receiver, 1, EngineChangesDispatcher.OverflowPolicy.BLOCK, 1);
+        dispatcher.receiveChanges(changes("BTC_ETH", 1));
+        assertTrue(receiver.firstDeliveryStarted.await(5, TimeUnit.SECONDS));
+        dispatcher.receiveChanges(changes("BTC_ETH", 2));
+        Thread producer = new Thread(() -> dispatcher.receiveChanges(changes("BTC_ETH", 3)));
+        producer.start();
+        while (producer.getState() != Thread.State.WAITING && producer.isAlive())
+            Thread.sleep(1);
+        dispatcher.shutdown();
+        producer.join(5000);
+        assertFalse(producer.isAlive());
+        assertEquals(1, dispatcher.getDroppedCount());
+        receiver.release.countDown();
+    }
+}
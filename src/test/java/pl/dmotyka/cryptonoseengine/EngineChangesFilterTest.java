@@ -0,0 +1,112 @@
+/*
+ * Cryptonose
+ *
+ * Copyright © 2019-2022 Dawid Motyka
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package pl.dmotyka.cryptonoseengine;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EngineChangesFilterTest {
+
+    private static final String PAIR = "BTC_ETH";
+    private static final long[] TIME_PERIODS = new long[] {300, 900};
+
+    // price extremes with rise from 100 to given price in all periods
+    private static PriceExtremes rise(double price) {
+        var priceExtremes = new PriceExtremes(TIME_PERIODS);
+        for (int i = 0; i < TIME_PERIODS.length; i++) {
+            priceExtremes.valid[i] = true;
+            priceExtremes.minPrice[i] = 100;
+            priceExtremes.minPriceTimestampSec[i] = 1000;
+            priceExtremes.maxPrice[i] = price;
+            priceExtremes.maxPriceTimestampSec[i] = 1010;
+            priceExtremes.maxAfterMinPrice[i] = price;
+            priceExtremes.maxAfterMinTimestampSec[i] = 1010;
+            priceExtremes.minAfterMaxPrice[i] = price;
+            priceExtremes.minAfterMaxTimestampSec[i] = 1010;
+        }
+        priceExtremes.lastPrice = price;
+        priceExtremes.lastPriceTimestampSec = 1010;
+        return priceExtremes;
+    }
+
+    @Test
+    public void testCrossingWithHysteresis() {
+        var filter = new EngineChangesFilter(0.5).setThreshold(300, EngineChangesFilter.ChangeType.PERCENT_CHANGE, 4);
+        filter.init(TIME_PERIODS);
+        assertFalse(filter.checkCrossing(PAIR, 0, rise(103), null));
+        assertTrue(filter.checkCrossing(PAIR, 0, rise(105), null));
+        // still above threshold
+        assertFalse(filter.checkCrossing(PAIR, 0, rise(106), null));
+        // below threshold, but not below hysteresis
+        assertFalse(filter.checkCrossing(PAIR, 0, rise(103), null));
+        assertFalse(filter.checkCrossing(PAIR, 0, rise(104), null));
+        // below hysteresis, then above threshold again
+        assertFalse(filter.checkCrossing(PAIR, 0, rise(101), null));
+        assertTrue(filter.checkCrossing(PAIR, 0, rise(104), null));
+        // period without threshold
+        assertFalse(filter.checkCrossing(PAIR, 1, rise(110), null));
+    }
+
+    @Test
+    public void testRelativeChange() {
+        var filter = new EngineChangesFilter(0).setThreshold(900, EngineChangesFilter.ChangeType.RELATIVE_CHANGE, 2);
+        filter.init(TIME_PERIODS);
+        assertFalse(filter.checkCrossing(PAIR, 1, rise(110), null));
+        assertFalse(filter.checkCrossing(PAIR, 1, rise(110), new RelativeChangesInfo(10.0, 0.1)));
+        assertTrue(filter.checkCrossing(PAIR, 1, rise(120), new RelativeChangesInfo(10.0, 0.1)));
+    }
+
+    @Test
+    public void testThresholdsSetAfterSettingFilter() throws Exception {
+        Path tickersFile = Files.createTempFile("cryptonose-tickers", ".csv");
+        try {
+            List<String> tickerLines = new ArrayList<>();
+            for (int i = 0; i < 10; i++)
+                tickerLines.add(String.format("%d,%s,%d", 1_600_000_000 + i * 10, PAIR, 100 + i));
+            Files.write(tickersFile, tickerLines);
+            List<PriceChanges> changes = Collections.synchronizedList(new ArrayList<>());
+            CryptonoseGenericEngine engine = CryptonoseGenericEngine.forReplay(new EngineChangesReceiver() {
+                @Override
+                public void receiveChanges(List<PriceChanges> priceChangesList) {
+                    changes.addAll(priceChangesList);
+                }
+
+                @Override
+                public void receiveChanges(PriceChanges priceChanges) {
+                    changes.add(priceChanges);
+                }
+            }, TIME_PERIODS, 10, new String[] {PAIR});
+            var filter = new EngineChangesFilter(0);
+            engine.setChangesFilter(filter);
+            filter.setThreshold(300, EngineChangesFilter.ChangeType.PERCENT_CHANGE, 4);
+            engine.replay(tickersFile, null, 0);
+            engine.stop();
+            // crossed when price rises from 100 to 104
+            assertEquals(1, changes.size());
+            assertEquals(104, changes.get(0).getLastPrice());
+            assertEquals(300, changes.get(0).getTimePeriodSeconds());
+        } finally {
+            Files.delete(tickersFile);
+        }
+    }
+}
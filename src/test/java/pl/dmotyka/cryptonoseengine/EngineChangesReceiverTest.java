@@ -0,0 +1,89 @@
+/*
+ * Cryptonose
+ *
+ * Copyright © 2019-2022 Dawid Motyka
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package pl.dmotyka.cryptonoseengine;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+import pl.dmotyka.exchangeutils.tickerprovider.Ticker;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class EngineChangesReceiverTest {
+
+    private static final String[] PAIRS = new String[] {"BTC_ETH", "BTC_XRP"};
+    private static final long[] TIME_PERIODS = new long[] {300, 1800};
+
+    @Test
+    public void testBatchChangesInOneList() throws InterruptedException {
+        BlockingQueue<List<PriceChanges>> receivedLists = new LinkedBlockingQueue<>();
+        var exchangeSpecs = new TestExchangeSpecs(PAIRS);
+        CryptonoseGenericEngine engine = createEngine(exchangeSpecs, receivedLists);
+        engine.start();
+        exchangeSpecs.tickerReceiver.receiveTickers(new Ticker[] {new Ticker("BTC_ETH", 100, 1_600_000_000), new Ticker("BTC_XRP", 1, 1_600_000_000)});
+        List<PriceChanges> priceChangesList = receivedLists.poll(5, TimeUnit.SECONDS);
+        engine.stop();
+        assertNotNull(priceChangesList);
+        assertEquals(Set.of("BTC_ETH", "BTC_XRP"), pairs(priceChangesList));
+        assertEquals(PAIRS.length * TIME_PERIODS.length, priceChangesList.size());
+        assertNull(receivedLists.poll());
+    }
+
+    @Test
+    public void testIngestionThreadsChangesListPerPair() throws InterruptedException {
+        BlockingQueue<List<PriceChanges>> receivedLists = new LinkedBlockingQueue<>();
+        var exchangeSpecs = new TestExchangeSpecs(PAIRS);
+        CryptonoseGenericEngine engine = createEngine(exchangeSpecs, receivedLists);
+        engine.setIngestionThreads(2);
+        engine.start();
+        exchangeSpecs.tickerReceiver.receiveTickers(new Ticker[] {new Ticker("BTC_ETH", 100, 1_600_000_000), new Ticker("BTC_XRP", 1, 1_600_000_000)});
+        List<PriceChanges> firstList = receivedLists.poll(5, TimeUnit.SECONDS);
+        List<PriceChanges> secondList = receivedLists.poll(5, TimeUnit.SECONDS);
+        engine.stop();
+        assertNotNull(firstList);
+        assertNotNull(secondList);
+        // every list has all periods of exactly one pair
+        assertEquals(1, pairs(firstList).size());
+        assertEquals(TIME_PERIODS.length, firstList.size());
+        assertEquals(1, pairs(secondList).size());
+        assertEquals(TIME_PERIODS.length, secondList.size());
+        assertEquals(Set.of("BTC_ETH", "BTC_XRP"), Set.of(pairs(firstList).iterator().next(), pairs(secondList).iterator().next()));
+        assertNull(receivedLists.poll());
+    }
+
+    private static CryptonoseGenericEngine createEngine(TestExchangeSpecs exchangeSpecs, BlockingQueue<List<PriceChanges>> receivedLists) {
+        return CryptonoseGenericEngine.withProvidedCurrencyPairs(exchangeSpecs, new EngineChangesReceiver() {
+            @Override
+            public void receiveChanges(List<PriceChanges> priceChangesList) {
+                receivedLists.add(priceChangesList);
+            }
+
+            @Override
+            public void receiveChanges(PriceChanges priceChanges) {
+                receivedLists.add(List.of(priceChanges));
+            }
+        }, TIME_PERIODS, 10, PAIRS);
+    }
+
+    private static Set<String> pairs(List<PriceChanges> priceChangesList) {
+        return priceChangesList.stream().map(priceChanges -> priceChanges.getCurrencyPair()).collect(Collectors.toSet());
+    }
+}
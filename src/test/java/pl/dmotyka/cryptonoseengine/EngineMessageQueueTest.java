@@ -0,0 +1,82 @@
+/*
+ * Cryptonose
+ *
+ * Copyright © 2019-2022 Dawid Motyka
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package pl.dmotyka.cryptonoseengine;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EngineMessageQueueTest {
+
+    @Test
+    public void testProgressMessagesCoalesced() throws InterruptedException {
+        var firstReceived = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        var allReceived = new CountDownLatch(4);
+        List<EngineMessage> received = new CopyOnWriteArrayList<>();
+        var queue = new EngineMessageQueue(msg -> {
+            received.add(msg);
+            firstReceived.countDown();
+            allReceived.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        queue.addMessage(new EngineMessage(EngineMessage.Type.CONNECTING, "connecting"));
+        assertTrue(firstReceived.await(1, TimeUnit.SECONDS));
+        // receiver is blocked, following messages wait in the queue
+        for (int i = 1; i <= 10; i++)
+            queue.addMessage(new EngineMessageConnectionProgress(EngineMessage.Type.CONNECTING, "progress", i / 10.0));
+        queue.addMessage(new EngineMessage(EngineMessage.Type.INFO, "info 1"));
+        queue.addMessage(new EngineMessage(EngineMessage.Type.INFO, "info 2"));
+        queue.addMessage(new EngineMessage(EngineMessage.Type.CONNECTED, "connected"));
+        release.countDown();
+        assertTrue(allReceived.await(1, TimeUnit.SECONDS));
+        queue.shutdown();
+        assertEquals(4, received.size());
+        assertEquals(1.0, ((EngineMessageConnectionProgress)received.get(1)).getProgress());
+        assertEquals("info 2", received.get(2).getMessage());
+        assertEquals(EngineMessage.Type.CONNECTED, received.get(3).getCode());
+    }
+
+    @Test
+    public void testPendingMessagesDeliveredOnShutdown() throws InterruptedException {
+        var firstReceived = new CountDownLatch(1);
+        List<EngineMessage> received = new CopyOnWriteArrayList<>();
+        var queue = new EngineMessageQueue(msg -> {
+            firstReceived.countDown();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            received.add(msg);
+        });
+        queue.addMessage(new EngineMessage(EngineMessage.Type.CONNECTING, "connecting"));
+        assertTrue(firstReceived.await(1, TimeUnit.SECONDS));
+        queue.addMessage(new EngineMessage(EngineMessage.Type.DISCONNECTED, "disconnected"));
+        queue.shutdown();
+        queue.addMessage(new EngineMessage(EngineMessage.Type.INFO, "after shutdown"));
+        assertEquals(2, received.size());
+        assertEquals(EngineMessage.Type.DISCONNECTED, received.get(1).getCode());
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Cryptonose
+ *
+ * Copyright © 2019-2022 Dawid Motyka
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package pl.dmotyka.cryptonoseengine;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Set;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+
+import org.junit.jupiter.api.Test;
+import pl.dmotyka.exchangeutils.tickerprovider.Ticker;
+import pl.dmotyka.exchangeutils.tickerprovider.TickerReceiver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EngineMetricsTest {
+
+    @Test
+    public void testHistogramBuckets() {
+        for (long value : new long[] {0, 1, 3, 4, 5, 7, 8, 100, 1000, 123456789, Long.MAX_VALUE}) {
+            int bucket = LatencyHistogram.bucket(value);
+            assertTrue(value <= LatencyHistogram.bucketUpperBound(bucket));
+            assertTrue(bucket == 0 || value > LatencyHistogram.bucketUpperBound(bucket - 1));
+        }
+        LatencyHistogram latencyHistogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++)
+            latencyHistogram.record(i * 1000L);
+        LatencyStats latencyStats = latencyHistogram.stats();
+        assertEquals(1000, latencyStats.getCount());
+        assertEquals(500.5, latencyStats.getMeanMicros(), 0.001);
+        assertEquals(1000, latencyStats.getMaxMicros(), 0.001);
+        // at most 25% higher
+        assertTrue(latencyStats.getP50Micros() >= 500 && latencyStats.getP50Micros() <= 625);
+        assertTrue(latencyStats.getP99Micros() >= 990 && latencyStats.getP99Micros() <= 1240);
+    }
+
+    @Test
+    public void testMetricsMBean() throws Exception {
+        var exchangeSpecs = new TestExchangeSpecs(new String[] {"BTC_ETH", "BTC_XRP"});
+        CryptonoseGenericEngine engine = CryptonoseGenericEngine.withProvidedCurrencyPairs(exchangeSpecs, new EngineChangesReceiver() {
+            @Override
+            public void receiveChanges(List<PriceChanges> priceChangesList) {
+            }
+
+            @Override
+            public void receiveChanges(PriceChanges priceChanges) {
+            }
+        }, new long[] {300}, 10, new String[] {"BTC_ETH", "BTC_XRP"});
+        engine.enableMetrics();
+        engine.start();
+        TickerReceiver tickerReceiver = exchangeSpecs.tickerReceiver;
+        for (int i = 0; i < 10; i++)
+            tickerReceiver.receiveTicker(new Ticker("BTC_ETH", 100 + i, 1_600_000_000 + i));
+        tickerReceiver.receiveTickers(new Ticker[] {new Ticker("BTC_XRP", 1, 1_600_000_010), new Ticker("BTC_ETH", 90, 1_600_000_010)});
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        Set<ObjectName> names = mBeanServer.queryNames(new ObjectName("pl.dmotyka.cryptonoseengine:type=CryptonoseGenericEngine,*"), null);
+        assertEquals(1, names.size());
+        ObjectName name = names.iterator().next();
+        assertEquals(12L, mBeanServer.getAttribute(name, "TickersCount"));
+        assertEquals(11L, ((CompositeData)mBeanServer.getAttribute(name, "TickerReceiveLatency")).get("count"));
+        assertEquals(12L, ((CompositeData)mBeanServer.getAttribute(name, "InsertTickerLatency")).get("count"));
+        assertEquals(12L, ((CompositeData)mBeanServer.getAttribute(name, "CheckChangesLatency")).get("count"));
+        assertEquals(11L, ((CompositeData)mBeanServer.getAttribute(name, "ReceiverCallbackLatency")).get("count"));
+        assertEquals(2, ((TabularData)mBeanServer.getAttribute(name, "HotPairs")).size());
+        assertEquals(11L, (long)engine.getMetrics().getHotPairs().get("BTC_ETH"));
+        engine.stop();
+        assertTrue(mBeanServer.queryNames(name, null).isEmpty());
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Cryptonose
+ *
+ * Copyright © 2019-2022 Dawid Motyka
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package pl.dmotyka.cryptonoseengine;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import pl.dmotyka.exchangeutils.tickerprovider.Ticker;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EngineReplayTest {
+
+    private static final long[] TIME_PERIODS = new long[] {300, 1800};
+    private static final long START_TIMESTAMP = 1_600_000_200;
+
+    private Path tickersFile;
+    private Path candlesFile;
+
+    @BeforeEach
+    public void createFiles() throws IOException {
+        tickersFile = Files.createTempFile("cryptonose-tickers", ".csv");
+        candlesFile = Files.createTempFile("cryptonose-candles", ".csv");
+        List<String> tickerLines = new ArrayList<>();
+        tickerLines.add("# timestamp,pair,price");
+        for (int i = 0; i < 100; i++) {
+            long timestamp = START_TIMESTAMP + i * 60;
+            tickerLines.add(String.format("%d,BTC_ETH,%s", timestamp, 100 + (i % 7)));
+            tickerLines.add(String.format("%d,BTC_XRP,%s", timestamp, 0.1 + (i % 5) * 0.01));
+        }
+        Files.write(tickersFile, tickerLines);
+        List<String> candleLines = new ArrayList<>();
+        for (long period : TIME_PERIODS) {
+            for (int i = 10; i > 0; i--) {
+                long timestamp = START_TIMESTAMP - i * period + 3000;
+                candleLines.add(String.format("BTC_ETH,%d,%d,100,%d,%d,101", period, timestamp, 102 + i % 3, 98 - i % 2));
+            }
+        }
+        Files.write(candlesFile, candleLines);
+    }
+
+    @AfterEach
+    public void deleteFiles() throws IOException {
+        Files.delete(tickersFile);
+        Files.delete(candlesFile);
+    }
+
+    @Test
+    public void testReplayIsDeterministic() throws Exception {
+        List<String> firstChanges = replay();
+        List<String> secondChanges = replay();
+        // every batch has tickers of both pairs, changes for both pairs are sent together for both periods
+        assertEquals(100 * 2 * TIME_PERIODS.length, firstChanges.size());
+        assertEquals(firstChanges, secondChanges);
+    }
+
+    @Test
+    public void testRelativeChangesFromClosedCandles() throws Exception {
+        List<String> changes = replay();
+        // all 300s candles close after the first ticker
+        assertTrue(changes.get(0).startsWith("BTC_ETH 300") && changes.get(0).endsWith("null"));
+        assertTrue(changes.stream().anyMatch(change -> change.startsWith("BTC_ETH 300") && !change.endsWith("null")));
+        // there are no candles of BTC_XRP
+        assertTrue(changes.stream().filter(change -> change.startsWith("BTC_XRP")).allMatch(change -> change.endsWith("null")));
+    }
+
+    @Test
+    public void testTickerJournalReplaySameAsTickersFile() throws Exception {
+        Path journalDirectory = Files.createTempDirectory("cryptonose-journal");
+        try {
+            // tickers with the same timestamp are received together
+            TickerJournal tickerJournal = new TickerJournal(journalDirectory, 64);
+            for (int i = 0; i < 100; i++) {
+                long timestamp = START_TIMESTAMP + i * 60;
+                tickerJournal.append(new Ticker[] {new Ticker("BTC_ETH", 100 + (i % 7), timestamp), new Ticker("BTC_XRP", 0.1 + (i % 5) * 0.01, timestamp)},
+                        timestamp * 1000);
+            }
+            tickerJournal.close();
+            assertEquals(replay(), replay(journalDirectory));
+        } finally {
+            try (Stream<Path> paths = Files.walk(journalDirectory)) {
+                for (Path path : paths.sorted(Comparator.reverseOrder()).toArray(Path[]::new))
+                    Files.delete(path);
+            }
+        }
+    }
+
+    private List<String> replay() throws Exception {
+        return replay(null);
+    }
+
+    // replays ticker journal from journalDirectory, or tickers file if it's null
+    private List<String> replay(Path journalDirectory) throws Exception {
+        List<String> changes = Collections.synchronizedList(new ArrayList<>());
+        CryptonoseGenericEngine engine = CryptonoseGenericEngine.forReplay(new EngineChangesReceiver() {
+            @Override
+            public void receiveChanges(List<PriceChanges> priceChangesList) {
+                for (PriceChanges priceChanges : priceChangesList)
+                    receiveChanges(priceChanges);
+            }
+
+            @Override
+            public void receiveChanges(PriceChanges priceChanges) {
+                changes.add(String.format("%s %d %s %s %d %s",
+                        priceChanges.getCurrencyPair(),
+                        priceChanges.getTimePeriodSeconds(),
+                        priceChanges.getLastPrice(),
+                        priceChanges.getChange(),
+                        priceChanges.getPriceChangeAgeSeconds(START_TIMESTAMP + 100 * 60),
+                        priceChanges.getRelativePriceChange()));
+            }
+        }, TIME_PERIODS, 10, new String[] {"BTC_XRP", "BTC_ETH"});
+        if (journalDirectory != null)
+            engine.replayTickerJournal(journalDirectory, candlesFile, 0);
+        else
+            engine.replay(tickersFile, candlesFile, 0);
+        engine.stop();
+        return changes;
+    }
+}
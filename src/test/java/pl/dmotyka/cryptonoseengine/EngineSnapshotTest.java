@@ -0,0 +1,124 @@
+/*
+ * Cryptonose
+ *
+ * Copyright © 2019-2022 Dawid Motyka
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package pl.dmotyka.cryptonoseengine;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import pl.dmotyka.exchangeutils.chartdataprovider.CurrencyPairTimePeriod;
+import pl.dmotyka.exchangeutils.chartinfo.ChartCandle;
+import pl.dmotyka.exchangeutils.tickerprovider.Ticker;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EngineSnapshotTest {
+
+    private static final String[] PAIRS = new String[] {"BTC_ETH", "BTC_XRP"};
+    private static final long[] TIME_PERIODS = new long[] {60, 300};
+    private static final long SNAPSHOT_TIMESTAMP = 1_600_001_000;
+
+    private Path file;
+
+    @BeforeEach
+    public void createFile() throws IOException {
+        file = Files.createTempFile("cryptonose-snapshot", null);
+    }
+
+    @AfterEach
+    public void deleteFile() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void testRestoredSameAsSaved() throws IOException {
+        var random = new Random(1);
+        var changesChecker = new CryptonoseEngineChangesChecker(TIME_PERIODS);
+        for (String pair : PAIRS) {
+            long timestamp = 1_600_000_000;
+            double price = 1000;
+            for (int i = 0; i < 500; i++) {
+                timestamp += random.nextInt(3);
+                price += random.nextGaussian();
+                changesChecker.insertTicker(new Ticker(pair, price, timestamp));
+            }
+        }
+        var relativeChangesChecker = new RelativeChangesChecker(PAIRS, TIME_PERIODS, 10);
+        ChartCandle[] candles = new ChartCandle[10];
+        for (int i = 0; i < candles.length; i++)
+            candles[i] = new ChartCandle(101 + random.nextDouble(), 99 - random.nextDouble(), 100, 100, 1_600_000_000L + i * 300);
+        relativeChangesChecker.updateCandles(Map.of(new CurrencyPairTimePeriod(PAIRS[1], 300), candles));
+        EngineSnapshot.write(file, SNAPSHOT_TIMESTAMP, TIME_PERIODS, changesChecker, relativeChangesChecker);
+
+        var restoredChangesChecker = new CryptonoseEngineChangesChecker(TIME_PERIODS);
+        EngineSnapshot snapshot = EngineSnapshot.read(file, TIME_PERIODS, SNAPSHOT_TIMESTAMP, restoredChangesChecker);
+        assertEquals(SNAPSHOT_TIMESTAMP, snapshot.getTimestampSeconds());
+        for (String pair : PAIRS) {
+            PriceChanges[] expected = changesChecker.checkChanges(pair);
+            PriceChanges[] actual = restoredChangesChecker.checkChanges(pair);
+            assertEquals(expected.length, actual.length);
+            for (int i = 0; i < expected.length; i++) {
+                assertEquals(expected[i].getLastPrice(), actual[i].getLastPrice());
+                assertEquals(expected[i].getMinPrice(), actual[i].getMinPrice());
+                assertEquals(expected[i].getMaxPrice(), actual[i].getMaxPrice());
+                assertEquals(expected[i].getReferencePriceTimestampSec(), actual[i].getReferencePriceTimestampSec());
+            }
+        }
+        var restoredRelativeChangesChecker = new RelativeChangesChecker(PAIRS, TIME_PERIODS, 10);
+        snapshot.restoreRelativeChangesInfo(restoredRelativeChangesChecker);
+        assertNull(restoredRelativeChangesChecker.getRelativeChangesInfo(PAIRS[0], 300));
+        RelativeChangesInfo expectedInfo = relativeChangesChecker.getRelativeChangesInfo(PAIRS[1], 300);
+        RelativeChangesInfo restoredInfo = restoredRelativeChangesChecker.getRelativeChangesInfo(PAIRS[1], 300);
+        assertEquals(expectedInfo.getHighLowDiff(), restoredInfo.getHighLowDiff());
+        assertEquals(expectedInfo.getHighLowDiffRelativeStdDeviation(), restoredInfo.getHighLowDiffRelativeStdDeviation());
+    }
+
+    @Test
+    public void testOldOrInvalidSnapshotNotRestored() throws IOException {
+        var changesChecker = new CryptonoseEngineChangesChecker(TIME_PERIODS);
+        changesChecker.insertTicker(new Ticker(PAIRS[0], 1000, 1_600_000_000));
+        EngineSnapshot.write(file, SNAPSHOT_TIMESTAMP, TIME_PERIODS, changesChecker, null);
+        var restoredChangesChecker = new CryptonoseEngineChangesChecker(TIME_PERIODS);
+        assertNull(EngineSnapshot.read(file, TIME_PERIODS, SNAPSHOT_TIMESTAMP + 1, restoredChangesChecker));
+        assertTrue(restoredChangesChecker.hasntReceivedTickersYet());
+        assertThrows(IOException.class, () -> EngineSnapshot.read(file, new long[] {60}, 0, restoredChangesChecker));
+        Files.write(file, new byte[] {1, 2, 3});
+        assertThrows(IOException.class, () -> EngineSnapshot.read(file, TIME_PERIODS, 0, restoredChangesChecker));
+    }
+
+    @Test
+    public void testTruncatedSnapshotNotRestored() throws IOException {
+        var changesChecker = new CryptonoseEngineChangesChecker(TIME_PERIODS);
+        for (String pair : PAIRS) {
+            changesChecker.insertTicker(new Ticker(pair, 1000, 1_600_000_000));
+            changesChecker.insertTicker(new Ticker(pair, 1010, 1_600_000_100));
+        }
+        EngineSnapshot.write(file, SNAPSHOT_TIMESTAMP, TIME_PERIODS, changesChecker, null);
+        byte[] snapshotBytes = Files.readAllBytes(file);
+        // tickers of the first pair are read before the end of file is reached
+        Files.write(file, Arrays.copyOf(snapshotBytes, snapshotBytes.length - 1));
+        var restoredChangesChecker = new CryptonoseEngineChangesChecker(TIME_PERIODS);
+        assertThrows(IOException.class, () -> EngineSnapshot.read(file, TIME_PERIODS, 0, restoredChangesChecker));
+        assertTrue(restoredChangesChecker.hasntReceivedTickersYet());
+    }
+}
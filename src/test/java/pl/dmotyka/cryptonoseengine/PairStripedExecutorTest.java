@@ -0,0 +1,96 @@
+/*
+ * Cryptonose
+ *
+ * Copyright © 2019-2022 Dawid Motyka
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package pl.dmotyka.cryptonoseengine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PairStripedExecutorTest {
+
+    private static final String PAIR = "BTC_ETH";
+
+    @Test
+    public void testDropOldest() throws InterruptedException {
+        var executor = new PairStripedExecutor(1, 2, EngineChangesDispatcher.OverflowPolicy.DROP_OLDEST);
+        var release = new CountDownLatch(1);
+        var started = new CountDownLatch(1);
+        List<Integer> executed = Collections.synchronizedList(new ArrayList<>());
+        executor.execute(PAIR, () -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        var done = new CountDownLatch(1);
+        for (int i = 0; i < 4; i++) {
+            int task = i;
+            executor.execute(PAIR, () -> executed.add(task));
+        }
+        executor.execute(PAIR, done::countDown);
+        assertEquals(3, executor.getDroppedCount());
+        release.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of(3), executed);
+        executor.shutdown();
+    }
+
+    @Test
+    public void testBlockWaitsForSpace() throws InterruptedException {
+        var executor = new PairStripedExecutor(1, 1, EngineChangesDispatcher.OverflowPolicy.BLOCK);
+        var release = new CountDownLatch(1);
+        var started = new CountDownLatch(1);
+        executor.execute(PAIR, () -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        executor.execute(PAIR, () -> {});
+        var submitted = new CountDownLatch(1);
+        var executedLast = new CountDownLatch(1);
+        Thread producer = new Thread(() -> {
+            executor.execute(PAIR, executedLast::countDown);
+            submitted.countDown();
+        });
+        producer.start();
+        assertFalse(submitted.await(200, TimeUnit.MILLISECONDS));
+        release.countDown();
+        assertTrue(submitted.await(5, TimeUnit.SECONDS));
+        assertTrue(executedLast.await(5, TimeUnit.SECONDS));
+        assertEquals(0, executor.getDroppedCount());
+        executor.shutdown();
+    }
+
+    @Test
+    public void testExecuteAfterShutdownIgnored() {
+        var executor = new PairStripedExecutor(2, 1, EngineChangesDispatcher.OverflowPolicy.BLOCK);
+        executor.shutdown();
+        executor.execute(PAIR, () -> {});
+    }
+}
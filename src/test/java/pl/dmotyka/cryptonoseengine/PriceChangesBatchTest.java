@@ -0,0 +1,72 @@
+/*
+ * Cryptonose
+ *
+ * Copyright © 2019-2022 Dawid Motyka
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package pl.dmotyka.cryptonoseengine;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PriceChangesBatchTest {
+
+    private static final String[] PAIRS = new String[] {"BTC_ETH", "BTC_XRP", "BTC_LTC"};
+    private static final long[] TIME_PERIODS = new long[] {60, 300};
+
+    @Test
+    public void testSameValuesAsPriceChanges() {
+        var random = new Random(1);
+        var batch = new PriceChangesBatch(1);
+        var priceExtremes = new PriceExtremes(TIME_PERIODS);
+        var relativeChangesInfo = new RelativeChangesInfo(2.0, 0.5);
+        for (int round = 0; round < 2; round++) {
+            batch.clear(PAIRS);
+            for (int pairId = 0; pairId < PAIRS.length; pairId++) {
+                var tickersWindow = new TickersWindow(TIME_PERIODS);
+                long timestamp = 1_600_000_000;
+                double price = 1000;
+                for (int i = 0; i < 200; i++) {
+                    timestamp += random.nextInt(5);
+                    price += random.nextGaussian();
+                    tickersWindow.insert(timestamp, price);
+                }
+                assertTrue(tickersWindow.checkExtremes(1, priceExtremes));
+                for (int i = 0; i < TIME_PERIODS.length; i++)
+                    batch.add(pairId, priceExtremes, i, pairId == 0 ? null : relativeChangesInfo);
+            }
+            assertEquals(PAIRS.length * TIME_PERIODS.length, batch.size());
+            for (int row = 0; row < batch.size(); row++) {
+                PriceChanges priceChanges = batch.toPriceChanges(row);
+                assertEquals(PAIRS[row / TIME_PERIODS.length], batch.getCurrencyPair(row));
+                assertEquals(TIME_PERIODS[row % TIME_PERIODS.length], batch.getTimePeriodSeconds(row));
+                assertEquals(priceChanges.getPercentChange(), batch.getPercentChange(row));
+                assertEquals(priceChanges.getLastPercentChange(), batch.getLastPercentChange(row));
+                assertEquals(priceChanges.getDropPercentChange(), batch.getDropPercentChange(row));
+                assertEquals(priceChanges.getRisePercentChange(), batch.getRisePercentChange(row));
+                if (batch.getPairId(row) == 0) {
+                    assertTrue(Double.isNaN(batch.getRelativePriceChange(row)));
+                } else {
+                    assertEquals(priceChanges.getChange() / 2.0, batch.getRelativePriceChange(row));
+                    assertEquals(priceChanges.getLastChange() / 2.0, batch.getRelativeLastPriceChange(row));
+                    assertEquals(priceChanges.getDropChange() / 2.0, batch.getRelativeDropPriceChange(row));
+                    assertEquals(priceChanges.getRiseChange() / 2.0, batch.getRelativeRisePriceChange(row));
+                    assertEquals(0.5, batch.getHighLowDiffRelativeStdDev(row));
+                }
+            }
+        }
+        assertThrows(IndexOutOfBoundsException.class, () -> batch.getLastPrice(batch.size()));
+    }
+}
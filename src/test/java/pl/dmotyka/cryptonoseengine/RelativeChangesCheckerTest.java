@@ -0,0 +1,124 @@
+/*
+ * Cryptonose
+ *
+ * Copyright © 2019-2022 Dawid Motyka
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package pl.dmotyka.cryptonoseengine;
+
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import pl.dmotyka.exchangeutils.chartdataprovider.CurrencyPairTimePeriod;
+import pl.dmotyka.exchangeutils.chartinfo.ChartCandle;
+import pl.dmotyka.exchangeutils.chartutils.RelativeStdDeviation;
+import pl.dmotyka.exchangeutils.chartutils.WeightedAvgHiLo;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RelativeChangesCheckerTest {
+
+    private static final String PAIR = "BTC_ETH";
+    private static final int PERIOD = 300;
+    private static final int NUM_CANDLES = 10;
+
+    @Test
+    public void testSameValuesAsIndicators() {
+        var relativeChangesChecker = new RelativeChangesChecker(new String[] {PAIR}, new long[] {60, PERIOD}, NUM_CANDLES);
+        relativeChangesChecker.setUseWeightedHighLowDiff();
+        ChartCandle[] candles = randomCandles(new Random(1), 30);
+        relativeChangesChecker.updateCandles(Map.of(new CurrencyPairTimePeriod(PAIR, PERIOD), candles));
+        RelativeChangesInfo relativeChangesInfo = relativeChangesChecker.getRelativeChangesInfo(PAIR, PERIOD);
+        ChartCandle[] lastCandles = new ChartCandle[NUM_CANDLES];
+        System.arraycopy(candles, candles.length - NUM_CANDLES, lastCandles, 0, NUM_CANDLES);
+        double highLowDiff = new WeightedAvgHiLo().calcValue(lastCandles, NUM_CANDLES);
+        assertEquals(highLowDiff, relativeChangesInfo.getHighLowDiff(), highLowDiff * 1e-9);
+        double relativeStdDeviation = new RelativeStdDeviation().calcValue(lastCandles, NUM_CANDLES);
+        assertEquals(relativeStdDeviation, relativeChangesInfo.getHighLowDiffRelativeStdDeviation(), relativeStdDeviation * 1e-9);
+        assertSame(relativeChangesInfo, relativeChangesChecker.getRelativeChangesInfo(relativeChangesChecker.getPairId(PAIR), 1));
+        assertNull(relativeChangesChecker.getRelativeChangesInfo(PAIR, 60));
+        assertNull(relativeChangesChecker.getRelativeChangesInfo("BTC_XRP", PERIOD));
+        // info for the second period is missing
+        assertFalse(relativeChangesChecker.hasRelativeChangesInfo(PAIR));
+        relativeChangesChecker.updateCandles(Map.of(new CurrencyPairTimePeriod(PAIR, 60), candles));
+        assertTrue(relativeChangesChecker.hasRelativeChangesInfo(PAIR));
+    }
+
+    @Test
+    public void testUnchangedCandlesSkipped() {
+        var relativeChangesChecker = new RelativeChangesChecker(new String[] {PAIR}, new long[] {60, PERIOD}, NUM_CANDLES);
+        ChartCandle[] candles = randomCandles(new Random(2), 20);
+        var currencyPairTimePeriod = new CurrencyPairTimePeriod(PAIR, PERIOD);
+        relativeChangesChecker.updateCandles(Map.of(currencyPairTimePeriod, candles));
+        RelativeChangesInfo relativeChangesInfo = relativeChangesChecker.getRelativeChangesInfo(PAIR, PERIOD);
+        relativeChangesChecker.updateCandles(Map.of(currencyPairTimePeriod, candles.clone()));
+        assertSame(relativeChangesInfo, relativeChangesChecker.getRelativeChangesInfo(PAIR, PERIOD));
+        // the last candle is updated
+        ChartCandle lastCandle = candles[candles.length - 1];
+        candles[candles.length - 1] = new ChartCandle(lastCandle.getHigh() + 1, lastCandle.getLow(), lastCandle.getOpen(), lastCandle.getHigh() + 1, lastCandle.getTimestampSeconds());
+        relativeChangesChecker.updateCandles(Map.of(currencyPairTimePeriod, candles));
+        assertNotSame(relativeChangesInfo, relativeChangesChecker.getRelativeChangesInfo(PAIR, PERIOD));
+        // indicator is changed
+        relativeChangesInfo = relativeChangesChecker.getRelativeChangesInfo(PAIR, PERIOD);
+        relativeChangesChecker.setUseMedianHighLowDiff();
+        relativeChangesChecker.updateCandles(Map.of(currencyPairTimePeriod, candles));
+        assertNotSame(relativeChangesInfo, relativeChangesChecker.getRelativeChangesInfo(PAIR, PERIOD));
+    }
+
+    @Test
+    public void testOtherPairsAndPeriods() throws RelativeChangesChecker.NoDataException {
+        var relativeChangesChecker = new RelativeChangesChecker(new String[] {PAIR}, new long[] {PERIOD}, NUM_CANDLES);
+        ChartCandle[] candles = randomCandles(new Random(3), 20);
+        // period of additional chart data and a pair not given in constructor
+        relativeChangesChecker.updateCandles(Map.of(new CurrencyPairTimePeriod(PAIR, 7200), candles, new CurrencyPairTimePeriod("BTC_XRP", PERIOD), candles));
+        RelativeChangesInfo relativeChangesInfo = relativeChangesChecker.getRelativeChangesInfo(PAIR, 7200);
+        assertNotNull(relativeChangesInfo);
+        assertEquals((double)relativeChangesInfo.getHighLowDiffRelativeStdDeviation(), relativeChangesChecker.getHighLowDiffRelativeStdDeviation(PAIR, 7200));
+        assertEquals(1 / relativeChangesInfo.getHighLowDiff(), relativeChangesChecker.getRelativeChangeValue(PAIR, 7200, 1));
+        assertNotNull(relativeChangesChecker.getRelativeChangesInfo("BTC_XRP", PERIOD));
+        assertThrows(RelativeChangesChecker.NoDataException.class, () -> relativeChangesChecker.getRelativeChangeValue(PAIR, 900, 1));
+        PriceChanges priceChanges = new PriceChanges(PAIR, 7200, 1, 0, 1, 0, 2, 0, 2, 0, 1, 0);
+        relativeChangesChecker.setRelativeChanges(new PriceChanges[] {priceChanges}, relativeChangesChecker.getPairId(PAIR));
+        assertEquals(priceChanges.getChange() / relativeChangesInfo.getHighLowDiff(), (double)priceChanges.getRelativePriceChange());
+    }
+
+    @Test
+    public void testPairIdCachedInTickersWindow() {
+        var tickersWindow = new TickersWindow(new long[] {PERIOD});
+        var relativeChangesChecker = new RelativeChangesChecker(new String[] {"BTC_XRP", PAIR}, new long[] {PERIOD}, NUM_CANDLES);
+        assertEquals(1, relativeChangesChecker.getPairId(PAIR, tickersWindow));
+        assertEquals(1, relativeChangesChecker.getPairId(PAIR, tickersWindow));
+        // window was used with a checker for different pairs
+        var newRelativeChangesChecker = new RelativeChangesChecker(new String[] {PAIR}, new long[] {PERIOD}, NUM_CANDLES);
+        assertEquals(0, newRelativeChangesChecker.getPairId(PAIR, tickersWindow));
+        assertEquals(-1, new RelativeChangesChecker(new String[] {"BTC_XRP"}, new long[] {PERIOD}, NUM_CANDLES).getPairId(PAIR, tickersWindow));
+    }
+
+    private static ChartCandle[] randomCandles(Random random, int numCandles) {
+        ChartCandle[] candles = new ChartCandle[numCandles];
+        double price = 100;
+        for (int i = 0; i < numCandles; i++) {
+            double close = price + random.nextGaussian();
+            double high = Math.max(price, close) + random.nextDouble();
+            double low = Math.min(price, close) - random.nextDouble();
+            candles[i] = new ChartCandle(high, low, price, close, 1_600_000_000L + (long)i * PERIOD);
+            price = close;
+        }
+        return candles;
+    }
+}
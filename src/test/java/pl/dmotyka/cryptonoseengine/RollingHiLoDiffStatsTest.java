@@ -0,0 +1,110 @@
+/*
+ * Cryptonose
+ *
+ * Copyright © 2019-2022 Dawid Motyka
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package pl.dmotyka.cryptonoseengine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import pl.dmotyka.exchangeutils.chartinfo.ChartCandle;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RollingHiLoDiffStatsTest {
+
+    private static final int NUM_CANDLES = 10;
+    // number of candles sent by chart data provider
+    private static final int NUM_SENT_CANDLES = 15;
+    private static final long PERIOD = 300;
+
+    @Test
+    public void testSameValuesAsFullCalculation() {
+        Random random = new Random(1);
+        List<ChartCandle> candles = new ArrayList<>();
+        for (int i = 0; i < NUM_SENT_CANDLES; i++)
+            candles.add(randomCandle(random, i));
+        var stats = new RollingHiLoDiffStats(NUM_CANDLES, RelativeChangesChecker.MIN_CANDLE_CHANGE);
+        assertTrue(stats.update(lastCandles(candles)));
+        assertStats(candles, stats);
+        // the same candles
+        assertFalse(stats.update(lastCandles(candles)));
+        for (int i = NUM_SENT_CANDLES; i < 200; i++) {
+            // the last (open) candle is updated a few times, then new candle is added
+            for (int j = 0; j < 3; j++) {
+                candles.set(candles.size() - 1, randomCandle(random, candles.size() - 1));
+                assertTrue(stats.update(lastCandles(candles)));
+                assertStats(candles, stats);
+            }
+            // candle with too low high-low difference is skipped
+            candles.add(random.nextInt(10) == 0 ? new ChartCandle(100, 100, 100, 100, i * PERIOD) : randomCandle(random, i));
+            assertTrue(stats.update(lastCandles(candles)));
+            assertStats(candles, stats);
+        }
+    }
+
+    @Test
+    public void testNotContinuedCandles() {
+        Random random = new Random(2);
+        List<ChartCandle> candles = new ArrayList<>();
+        for (int i = 0; i < NUM_SENT_CANDLES; i++)
+            candles.add(randomCandle(random, i));
+        var stats = new RollingHiLoDiffStats(NUM_CANDLES, RelativeChangesChecker.MIN_CANDLE_CHANGE);
+        stats.update(lastCandles(candles));
+        // gap longer than the window
+        List<ChartCandle> newCandles = new ArrayList<>();
+        for (int i = 100; i < 100 + NUM_SENT_CANDLES; i++)
+            newCandles.add(randomCandle(random, i));
+        assertTrue(stats.update(lastCandles(newCandles)));
+        assertStats(newCandles, stats);
+        // fewer candles than the window
+        List<ChartCandle> fewCandles = newCandles.subList(newCandles.size() - 3, newCandles.size());
+        assertTrue(stats.update(fewCandles.toArray(new ChartCandle[0])));
+        assertStats(fewCandles, stats);
+    }
+
+    private static ChartCandle[] lastCandles(List<ChartCandle> candles) {
+        return candles.subList(Math.max(0, candles.size() - NUM_SENT_CANDLES), candles.size()).toArray(new ChartCandle[0]);
+    }
+
+    // formulas from RollingHiLoDiffStats calculated for the whole window
+    private static void assertStats(List<ChartCandle> candles, RollingHiLoDiffStats stats) {
+        double[] diffs = candles.subList(Math.max(0, candles.size() - NUM_CANDLES), candles.size()).stream().
+                filter(c -> c.getHigh() - c.getLow() > c.getClose() * RelativeChangesChecker.MIN_CANDLE_CHANGE).
+                mapToDouble(c -> c.getHigh() - c.getLow()).
+                toArray();
+        assertEquals(diffs.length, stats.count());
+        double average = Arrays.stream(diffs).average().getAsDouble();
+        double weightedSum = 0;
+        double variance = 0;
+        for (int i = 0; i < diffs.length; i++) {
+            weightedSum += (i + 1) * diffs[i];
+            variance += (diffs[i] - average) * (diffs[i] - average) / diffs.length;
+        }
+        double weightedAverage = weightedSum / (diffs.length * (diffs.length + 1) / 2.0);
+        double relativeStdDeviation = Math.sqrt(variance) / average;
+        assertEquals(average, stats.average(), average * 1e-9);
+        assertEquals(weightedAverage, stats.weightedAverage(), weightedAverage * 1e-9);
+        assertEquals(relativeStdDeviation, stats.relativeStdDeviation(), relativeStdDeviation * 1e-9);
+    }
+
+    private static ChartCandle randomCandle(Random random, int i) {
+        double open = 100 + random.nextGaussian();
+        double close = open + random.nextGaussian();
+        return new ChartCandle(Math.max(open, close) + random.nextDouble(), Math.min(open, close) - random.nextDouble(), open, close, i * PERIOD);
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Cryptonose
+ *
+ * Copyright © 2019-2022 Dawid Motyka
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package pl.dmotyka.cryptonoseengine;
+
+import pl.dmotyka.exchangeutils.chartinfo.ChartCandle;
+import pl.dmotyka.exchangeutils.chartinfo.ChartTimePeriod;
+import pl.dmotyka.exchangeutils.chartinfo.ExchangeChartInfo;
+import pl.dmotyka.exchangeutils.exchangespecs.ExchangeSpecs;
+import pl.dmotyka.exchangeutils.pairdataprovider.PairDataProvider;
+import pl.dmotyka.exchangeutils.pairdataprovider.PairSelectionCriteria;
+import pl.dmotyka.exchangeutils.pairsymbolconverter.PairSymbolConverter;
+import pl.dmotyka.exchangeutils.tickerprovider.TickerProvider;
+import pl.dmotyka.exchangeutils.tickerprovider.TickerProviderConnectionState;
+import pl.dmotyka.exchangeutils.tickerprovider.TickerProviderConnectionStateReceiver;
+import pl.dmotyka.exchangeutils.tickerprovider.TickerReceiver;
+
+// exchange with given pairs without chart data, tickers are sent to the engine with tickerReceiver after connecting
+class TestExchangeSpecs extends ExchangeSpecs {
+
+    private final String[] pairs;
+    volatile TickerReceiver tickerReceiver;
+
+    TestExchangeSpecs(String[] pairs) {
+        this.pairs = pairs;
+    }
+
+    @Override
+    public PairSymbolConverter getPairSymbolConverter() {
+        return apiSymbol -> apiSymbol;
+    }
+
+    @Override
+    public PairDataProvider getPairDataProvider() {
+        return new PairDataProvider() {
+            @Override
+            public String[] getPairsApiSymbols() {
+                return pairs.clone();
+            }
+
+            @Override
+            public String[] getPairsApiSymbols(PairSelectionCriteria[] pairSelectionCriteria) {
+                return pairs.clone();
+            }
+        };
+    }
+
+    @Override
+    public TickerProvider getTickerProvider(TickerReceiver tickerReceiver, String[] pairs) {
+        return new TickerProvider() {
+            @Override
+            public void connect(TickerProviderConnectionStateReceiver connectionStateReceiver) {
+                TestExchangeSpecs.this.tickerReceiver = tickerReceiver;
+                connectionStateReceiver.connectionState(TickerProviderConnectionState.CONNECTED);
+            }
+
+            @Override
+            public void disconnect() {
+            }
+        };
+    }
+
+    @Override
+    public ExchangeChartInfo getChartInfo() {
+        return new ExchangeChartInfo() {
+            @Override
+            public ChartTimePeriod[] getAvailablePeriods() {
+                return new ChartTimePeriod[0];
+            }
+
+            @Override
+            public ChartCandle[] getCandlestickData(String symbol, long timePeriodSeconds, long beginTimestamp, long endTimestamp) {
+                return new ChartCandle[0];
+            }
+        };
+    }
+}
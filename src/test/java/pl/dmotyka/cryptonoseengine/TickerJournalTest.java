@@ -0,0 +1,91 @@
+/*
+ * Cryptonose
+ *
+ * Copyright © 2019-2022 Dawid Motyka
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package pl.dmotyka.cryptonoseengine;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import pl.dmotyka.exchangeutils.tickerprovider.Ticker;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TickerJournalTest {
+
+    private static final long START_TIMESTAMP = 1_600_000_000;
+
+    private Path directory;
+
+    @BeforeEach
+    public void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("cryptonose-journal");
+    }
+
+    @AfterEach
+    public void deleteDirectory() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toArray(Path[]::new))
+                Files.delete(path);
+        }
+    }
+
+    @Test
+    public void testRecordsReadInOrderAcrossSegmentsAndReopening() throws IOException {
+        TickerJournal tickerJournal = new TickerJournal(directory, 3);
+        for (int i = 0; i < 5; i++)
+            tickerJournal.append(new Ticker[] {ticker("BTC_ETH", i), ticker("BTC_XRP", i)}, START_TIMESTAMP * 1000 + i);
+        tickerJournal.close();
+        tickerJournal = new TickerJournal(directory, 3);
+        tickerJournal.append(new Ticker[] {ticker("BTC_XRP", 5), ticker("BTC_LTC", 5)}, START_TIMESTAMP * 1000 + 5);
+        tickerJournal.close();
+        assertEquals(5, TickerJournal.segments(directory).size());
+        try (TickerJournalReader reader = new TickerJournalReader(directory)) {
+            assertArrayEquals(new String[] {"BTC_ETH", "BTC_XRP", "BTC_LTC"}, reader.getPairs());
+            for (int i = 0; i < 5; i++) {
+                assertRecord(reader, "BTC_ETH", i);
+                assertRecord(reader, "BTC_XRP", i);
+            }
+            assertRecord(reader, "BTC_XRP", 5);
+            assertRecord(reader, "BTC_LTC", 5);
+            assertFalse(reader.next());
+        }
+    }
+
+    @Test
+    public void testEmptyJournal() throws IOException {
+        try (TickerJournalReader reader = new TickerJournalReader(directory.resolve("none"))) {
+            assertFalse(reader.next());
+        }
+    }
+
+    private static Ticker ticker(String pair, int i) {
+        return new Ticker(pair, 100 + i + pair.length(), START_TIMESTAMP + i);
+    }
+
+    private static void assertRecord(TickerJournalReader reader, String pair, int i) throws IOException {
+        assertTrue(reader.next());
+        assertEquals(pair, reader.getPair());
+        assertEquals(100 + i + pair.length(), reader.getPrice());
+        assertEquals(START_TIMESTAMP + i, reader.getExchangeTimestampSeconds());
+        assertEquals(START_TIMESTAMP * 1000 + i, reader.getReceiveTimestampMillis());
+    }
+}